@@ -7,9 +7,12 @@ import pt.isel.pc.utils.TriConsumer;
 
 import java.nio.ByteBuffer;
 import java.nio.channels.CompletionHandler;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 
+import static pt.isel.pc.utils.TimeoutCompletionHandler.withTimeout;
+
 public final class CopyPump {
 
     private static final Logger logger = LoggerFactory.getLogger(CopyPump.class);
@@ -24,6 +27,12 @@ public final class CopyPump {
     private final CompletionHandler<Integer, Object> handler;
     private final AtomicInteger pending = new AtomicInteger();
 
+    // per-operation deadlines
+    private final long readTimeout;
+    private final long writeTimeout;
+    private final TimeUnit timeUnit;
+    private final Runnable onTimeout;
+
     private int readBufferIx = 0;
     private int writePosition = 0;
     private boolean readCompleted = false;
@@ -46,10 +55,18 @@ public final class CopyPump {
     private CopyPump(
       BiConsumer<ByteBuffer, CompletionHandler<Integer, Object>> read,
       TriConsumer<ByteBuffer, Integer, CompletionHandler<Integer, Object>> write,
+      long readTimeout,
+      long writeTimeout,
+      TimeUnit timeUnit,
+      Runnable onTimeout,
       CompletionHandler<Integer, Object> handler) {
 
         this.read = read;
         this.write = write;
+        this.readTimeout = readTimeout;
+        this.writeTimeout = writeTimeout;
+        this.timeUnit = timeUnit;
+        this.onTimeout = onTimeout;
         this.handler = handler;
     }
 
@@ -57,13 +74,28 @@ public final class CopyPump {
       BiConsumer<ByteBuffer, CompletionHandler<Integer, Object>> read,
       TriConsumer<ByteBuffer, Integer, CompletionHandler<Integer, Object>> write,
       CompletionHandler<Integer, Object> handler) {
-        new CopyPump(read, write, handler).start();
+        run(read, write, Long.MAX_VALUE, Long.MAX_VALUE, TimeUnit.MILLISECONDS, () -> { }, handler);
+    }
+
+    // Each read and write must complete within the respective timeout.
+    // When a timeout expires, onTimeout is called and should abort the pending operation
+    // (e.g. by closing the channel). The copy then fails with InterruptedByTimeoutException.
+    public static void run(
+      BiConsumer<ByteBuffer, CompletionHandler<Integer, Object>> read,
+      TriConsumer<ByteBuffer, Integer, CompletionHandler<Integer, Object>> write,
+      long readTimeout,
+      long writeTimeout,
+      TimeUnit timeUnit,
+      Runnable onTimeout,
+      CompletionHandler<Integer, Object> handler) {
+        new CopyPump(read, write, readTimeout, writeTimeout, timeUnit, onTimeout, handler).start();
     }
 
     private void start() {
         pending.set(1);
         logger.info("start read");
-        read.accept(buffers[getReadBufferIx()], readCompletionHandler);
+        read.accept(buffers[getReadBufferIx()],
+          withTimeout(readCompletionHandler, readTimeout, timeUnit, onTimeout));
     }
 
     private void nextStep() {
@@ -100,18 +132,22 @@ public final class CopyPump {
     }
 
     private void startRead() {
+        CompletionHandler<Integer, Object> completionHandler =
+          withTimeout(readCompletionHandler, readTimeout, timeUnit, onTimeout);
         try {
-            read.accept(buffers[getReadBufferIx()], readCompletionHandler);
+            read.accept(buffers[getReadBufferIx()], completionHandler);
         } catch (Throwable e) {
-            readCompletionHandler.failed(e, null);
+            completionHandler.failed(e, null);
         }
     }
 
     private void startWrite() {
+        CompletionHandler<Integer, Object> completionHandler =
+          withTimeout(writeCompletionHandler, writeTimeout, timeUnit, onTimeout);
         try {
-            write.accept(buffers[getWriteBufferIx()], writePosition, writeCompletionHandler);
+            write.accept(buffers[getWriteBufferIx()], writePosition, completionHandler);
         } catch (Throwable e) {
-            writeCompletionHandler.failed(e, null);
+            completionHandler.failed(e, null);
         }
     }
 
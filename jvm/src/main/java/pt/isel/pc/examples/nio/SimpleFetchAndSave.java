@@ -13,10 +13,12 @@ import java.nio.channels.AsynchronousSocketChannel;
 import java.nio.channels.CompletionHandler;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 import static java.nio.file.StandardOpenOption.CREATE;
 import static java.nio.file.StandardOpenOption.WRITE;
+import static pt.isel.pc.utils.TimeoutCompletionHandler.withTimeout;
 
 public final class SimpleFetchAndSave {
 
@@ -26,6 +28,9 @@ public final class SimpleFetchAndSave {
     private final AsynchronousFileChannel file;
     private final String path;
     private final CompletionHandler<Void, Object> handler;
+    // maximum duration of each asynchronous operation, after which the fetch is aborted
+    private final long idleTimeout;
+    private final TimeUnit timeUnit;
 
     private final static ThreadLocal<Integer> reentrancies = ThreadLocal.withInitial(() -> 0);
 
@@ -35,10 +40,14 @@ public final class SimpleFetchAndSave {
       AsynchronousSocketChannel socket,
       AsynchronousFileChannel file,
       String path,
+      long idleTimeout,
+      TimeUnit timeUnit,
       CompletionHandler<Void, Object> handler) {
         this.socket = socket;
         this.file = file;
         this.path = path;
+        this.idleTimeout = idleTimeout;
+        this.timeUnit = timeUnit;
         this.handler = handler;
         this.buffer = ByteBuffer.allocate(1);
     }
@@ -48,19 +57,31 @@ public final class SimpleFetchAndSave {
                            String path,
                            String fileName,
                            CompletionHandler<Void, Object> handler)
+      throws IOException {
+        run(host, port, path, fileName, Long.MAX_VALUE, TimeUnit.MILLISECONDS, handler);
+    }
+
+    public static void run(String host,
+                           int port,
+                           String path,
+                           String fileName,
+                           long idleTimeout,
+                           TimeUnit timeUnit,
+                           CompletionHandler<Void, Object> handler)
       throws IOException {
         AsynchronousSocketChannel socket = AsynchronousSocketChannel.open();
         socket.setOption(StandardSocketOptions.SO_SNDBUF, 16);
         AsynchronousFileChannel file = AsynchronousFileChannel.open(Paths.get(fileName),
           WRITE, CREATE);
-        SimpleFetchAndSave fas = new SimpleFetchAndSave(socket, file, path, handler);
+        SimpleFetchAndSave fas = new SimpleFetchAndSave(socket, file, path, idleTimeout, timeUnit, handler);
         fas.start(host, port);
     }
 
     public void start(String host, int port) throws IOException {
         logger.info("begin connect");
         asyncCall(() ->
-          socket.connect(new InetSocketAddress(host, port), null, onConnectCompletedHandler)
+          socket.connect(new InetSocketAddress(host, port), null,
+            withIdleTimeout(onConnectCompletedHandler))
         );
     }
 
@@ -85,9 +106,9 @@ public final class SimpleFetchAndSave {
         logger.info("begin write request");
         asyncCall(() ->
           socket.write(requestBuffer, null,
-            handler("write socket",
+            withIdleTimeout(handler("write socket",
               res -> onWriteRequestCompleted(requestBuffer),
-              this::onError))
+              this::onError)))
         );
     }
 
@@ -104,7 +125,7 @@ public final class SimpleFetchAndSave {
     private void readResponse() {
         logger.info("begin read");
         asyncCall(() ->
-          socket.read(buffer, null, onReadResponseCompletedHandler)
+          socket.read(buffer, null, withIdleTimeout(onReadResponseCompletedHandler))
         );
     }
 
@@ -129,7 +150,7 @@ public final class SimpleFetchAndSave {
             throw new RuntimeException("I don't like this position");
         }
         asyncCall(() ->
-          file.write(buffer, filePosition, null, onWriteFileCompletedHandler)
+          file.write(buffer, filePosition, null, withIdleTimeout(onWriteFileCompletedHandler))
         );
     }
 
@@ -174,6 +195,15 @@ public final class SimpleFetchAndSave {
         handler.failed(e, null);
     }
 
+    private <T> CompletionHandler<T, Object> withIdleTimeout(CompletionHandler<T, Object> handler) {
+        // closing the channels makes the pending operation complete with an error
+        return withTimeout(handler, idleTimeout, timeUnit, () -> {
+            logger.warn("Operation timed out, closing channels");
+            closeSilently(socket);
+            closeSilently(file);
+        });
+    }
+
     private void asyncCall(Runnable runnable) {
         reentrancies.set(1);
         try {
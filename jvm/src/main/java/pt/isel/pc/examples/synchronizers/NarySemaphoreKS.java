@@ -1,19 +1,132 @@
 package pt.isel.pc.examples.synchronizers;
 
-import pt.isel.pc.utils.NodeLinkedList;
+import pt.isel.pc.utils.IntrusiveLinkedList;
+import pt.isel.pc.utils.MonotonicClock;
+import pt.isel.pc.utils.SynchronizerMetrics;
+import pt.isel.pc.utils.TimerWheel;
 import pt.isel.pc.utils.Timeouts;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
 public class NarySemaphoreKS {
 
-    private static class Request {
-        final int requestedUnits;
+    // Defines which queued request is granted next, when units become available.
+    // Instances are created via the static factory methods.
+    public abstract static class GrantPolicy {
+
+        // Strict FIFO, where a request that doesn't fit blocks all the following ones
+        public static GrantPolicy fifo() {
+            return FIFO;
+        }
+
+        // Grants the largest request that fits the available units (FIFO between equal sizes).
+        // Large requests may starve.
+        public static GrantPolicy bestFit() {
+            return BEST_FIT;
+        }
+
+        // Grants the smallest request that fits the available units (FIFO between equal sizes),
+        // unless the oldest request waited for more than maxAge, in which case strict FIFO is used until it is granted
+        public static GrantPolicy smallestFirstWithAging(long maxAge, TimeUnit timeUnit) {
+            long maxAgeNanos = timeUnit.toNanos(maxAge);
+            return new GrantPolicy() {
+                @Override
+                Request select(IntrusiveLinkedList<Request> q, int availableUnits, long now) {
+                    Request head = q.getHead();
+                    if (now - head.enqueueTime >= maxAgeNanos) {
+                        return head.requestedUnits <= availableUnits ? head : null;
+                    }
+                    Request selected = null;
+                    for (Request request = head; request != null; request = q.getNext(request)) {
+                        if (request.requestedUnits <= availableUnits
+                          && (selected == null || request.requestedUnits < selected.requestedUnits)) {
+                            selected = request;
+                        }
+                    }
+                    return selected;
+                }
+            };
+        }
+
+        // FIFO, however requests that fit may bypass a head request that doesn't, at most maxBypasses times
+        public static GrantPolicy boundedBypass(int maxBypasses) {
+            if (maxBypasses < 0) {
+                throw new IllegalArgumentException("max bypasses must not be negative");
+            }
+            return new GrantPolicy() {
+                @Override
+                Request select(IntrusiveLinkedList<Request> q, int availableUnits, long now) {
+                    Request head = q.getHead();
+                    if (head.requestedUnits <= availableUnits) {
+                        return head;
+                    }
+                    if (head.bypasses >= maxBypasses) {
+                        return null;
+                    }
+                    for (Request request = q.getNext(head); request != null; request = q.getNext(request)) {
+                        if (request.requestedUnits <= availableUnits) {
+                            return request;
+                        }
+                    }
+                    return null;
+                }
+            };
+        }
+
+        private static final GrantPolicy FIFO = new GrantPolicy() {
+            @Override
+            Request select(IntrusiveLinkedList<Request> q, int availableUnits, long now) {
+                Request head = q.getHead();
+                return head.requestedUnits <= availableUnits ? head : null;
+            }
+        };
+
+        private static final GrantPolicy BEST_FIT = new GrantPolicy() {
+            @Override
+            Request select(IntrusiveLinkedList<Request> q, int availableUnits, long now) {
+                Request selected = null;
+                for (Request request = q.getHead(); request != null; request = q.getNext(request)) {
+                    if (request.requestedUnits <= availableUnits
+                      && (selected == null || request.requestedUnits > selected.requestedUnits)) {
+                        selected = request;
+                    }
+                }
+                return selected;
+            }
+        };
+
+        private GrantPolicy() {
+        }
+
+        // Called while holding the monitor, with a non-empty queue.
+        // Returns the request to grant, or null if none should be granted
+        abstract Request select(IntrusiveLinkedList<Request> q, int availableUnits, long now);
+    }
+
+    // Synchronous and asynchronous requests share the same queue
+    // - synchronous requests have a condition, where the requesting thread waits.
+    //   Each thread reuses the same synchronous request, so a blocking acquire doesn't need to allocate
+    // - asynchronous requests have a future, which is completed outside of the monitor
+    private static class Request extends IntrusiveLinkedList.Node {
+        int requestedUnits;
         final Condition condition;
         boolean isDone = false;
+        // used by the grant policies
+        long enqueueTime;
+        int bypasses;
+        // used by the metrics
+        long waitStart;
 
         Request(int requestedUnits, Condition condition) {
             this.requestedUnits = requestedUnits;
@@ -21,93 +134,366 @@ public class NarySemaphoreKS {
         }
     }
 
+    private static class AsyncRequest extends Request {
+        final CompletableFuture<Boolean> future = new CompletableFuture<>();
+        // Ensures that only one thread (releaser, timeout or cancellation) completes the request
+        final AtomicBoolean isClaimed = new AtomicBoolean(false);
+        TimerWheel.Timeout timer;
+
+        AsyncRequest(int requestedUnits) {
+            super(requestedUnits, null);
+        }
+
+        boolean tryClaim() {
+            return !isClaimed.get() && isClaimed.compareAndSet(false, true);
+        }
+    }
+
     // mutable state
-    private int units;
-    private final NodeLinkedList<Request> q = new NodeLinkedList<>();
+    // - units is only changed via CAS, so that the uncontended path doesn't need the monitor
+    // - q is only accessed while holding the monitor
+    // - nOfWaiters is only written while holding the monitor, but is read without it
+    private final AtomicInteger units;
+    private final IntrusiveLinkedList<Request> q = new IntrusiveLinkedList<>();
+    private volatile int nOfWaiters = 0;
 
     private final Lock monitor = new ReentrantLock();
+    private final ThreadLocal<Request> requests =
+      ThreadLocal.withInitial(() -> new Request(0, monitor.newCondition()));
+
+    private final GrantPolicy policy;
+    private final SynchronizerMetrics metrics;
+
+    // utilization accounting, only accessed while holding the monitor
+    // - the time with queued requests (i.e. with demand)
+    // - the integral of the available (i.e. idle) units during that time
+    private final int initialUnits;
+    private long lastSampleTime = MonotonicClock.INSTANCE.nanoTime();
+    private int lastAvailableUnits;
+    private boolean lastHadWaiters = false;
+    private long timeWithWaiters = 0;
+    private double idleUnitsTime = 0;
 
     public NarySemaphoreKS(int initial) {
-        units = initial;
+        this(initial, GrantPolicy.fifo());
+    }
+
+    public NarySemaphoreKS(int initial, GrantPolicy policy) {
+        this(initial, policy, SynchronizerMetrics.disabled());
+    }
+
+    public NarySemaphoreKS(int initial, GrantPolicy policy, SynchronizerMetrics metrics) {
+        units = new AtomicInteger(initial);
+        this.policy = policy;
+        this.metrics = metrics;
+        this.initialUnits = initial;
     }
 
     public boolean acquire(int requestedUnits, long timeout, TimeUnit timeUnit) throws InterruptedException {
 
+        // fast path, without the monitor
+        if (nOfWaiters == 0 && tryAcquire(requestedUnits)) {
+            metrics.onFastPath();
+            return true;
+        }
+
+        // should it wait or not?
+        if (Timeouts.noWait(timeout)) {
+            return false;
+        }
+
+        // asynchronous requests completed by this thread, to be completed outside of the monitor
+        List<AsyncRequest> toComplete = Collections.emptyList();
         try {
             monitor.lock();
 
-            // fast path
-            if (q.isEmpty() && units >= requestedUnits) {
-                units -= requestedUnits;
+            // fast path, retried while holding the monitor
+            if (q.isEmpty() && tryAcquire(requestedUnits)) {
+                metrics.onFastPath();
                 return true;
             }
 
-            // should it wait or not?
-            if (Timeouts.noWait(timeout)) {
-                return false;
-            }
-
             // prepare everything for waiting
-            NodeLinkedList.Node<Request> request = q.push(
-              new Request(requestedUnits, monitor.newCondition()));
+            Request request = requests.get();
+            request.requestedUnits = requestedUnits;
+            request.isDone = false;
+            enqueue(request);
+            // a release may have missed this new waiter
+            toComplete = completeRequests();
+            if (!toComplete.isEmpty()) {
+                // the granted asynchronous requests are completed now, and not only after this thread stops waiting
+                monitor.unlock();
+                try {
+                    completeAll(toComplete);
+                } finally {
+                    toComplete = Collections.emptyList();
+                    monitor.lock();
+                }
+            }
+            // either completed by completeRequests or by a release while the monitor wasn't held
+            if (request.isDone) {
+                metrics.onWaitHandOff(request.waitStart);
+                return true;
+            }
             long deadline = Timeouts.start(timeout, timeUnit);
-            long remainingInMs = Timeouts.remaining(deadline);
+            long remaining = Timeouts.remaining(deadline);
 
             while (true) {
                 try {
-                    request.value.condition.await(remainingInMs, TimeUnit.MILLISECONDS);
+                    request.condition.awaitNanos(remaining);
                 } catch (InterruptedException e) {
-                    if (request.value.isDone) {
+                    if (request.isDone) {
                         // unable to give up
                         Thread.currentThread().interrupt();
+                        metrics.onWaitHandOff(request.waitStart);
                         return true;
                     }
                     // giving up
-                    q.remove(request);
-                    completeRequests();
+                    removeRequest(request);
+                    toComplete = completeRequests();
+                    metrics.onWaitInterrupted(request.waitStart);
                     throw e;
                 }
 
                 // is request fulfilled (i.e. isDone)
-                if (request.value.isDone) {
+                if (request.isDone) {
                     // if isDone is true, then all the leave processing is already done
+                    metrics.onWaitHandOff(request.waitStart);
                     return true;
                 }
 
                 // should it wait
-                remainingInMs = Timeouts.remaining(deadline);
-                if (Timeouts.isTimeout(remainingInMs)) {
+                remaining = Timeouts.remaining(deadline);
+                if (Timeouts.isTimeout(remaining)) {
                     // giving up
-                    q.remove(request);
-                    completeRequests();
+                    removeRequest(request);
+                    toComplete = completeRequests();
+                    metrics.onWaitTimeout(request.waitStart);
                     return false;
                 }
             }
         } finally {
             monitor.unlock();
+            completeAll(toComplete);
         }
     }
 
+    // The returned future is completed with
+    // - true, if the units were acquired
+    // - false, if the timeout expired before the units were acquired
+    // Cancelling the returned future gives up on the request
+    public CompletableFuture<Boolean> acquireAsync(int requestedUnits, long timeout, TimeUnit timeUnit) {
+
+        // fast path, without the monitor
+        if (nOfWaiters == 0 && tryAcquire(requestedUnits)) {
+            metrics.onFastPath();
+            return CompletableFuture.completedFuture(true);
+        }
+
+        // should it wait or not?
+        if (Timeouts.noWait(timeout)) {
+            return CompletableFuture.completedFuture(false);
+        }
+
+        AsyncRequest request;
+        List<AsyncRequest> toComplete;
+        try {
+            monitor.lock();
+
+            // fast path, retried while holding the monitor
+            if (q.isEmpty() && tryAcquire(requestedUnits)) {
+                metrics.onFastPath();
+                return CompletableFuture.completedFuture(true);
+            }
+
+            request = new AsyncRequest(requestedUnits);
+            enqueue(request);
+            // a release may have missed this new request, which may even complete it
+            toComplete = completeRequests();
+            if (!request.isDone) {
+                // the timeout takes the monitor and completes the future, so it doesn't run on the wheel's thread
+                request.timer = TimerWheel.getShared().schedule(
+                  () -> cancelDueToTimeout(request), timeout, timeUnit, ForkJoinPool.commonPool());
+            }
+        } finally {
+            monitor.unlock();
+        }
+
+        request.future.whenComplete((result, throwable) -> {
+            if (throwable instanceof CancellationException) {
+                cancelDueToCancellation(request);
+            }
+        });
+        completeAll(toComplete);
+        return request.future;
+    }
+
     public void release(int releasedUnits) {
+        units.addAndGet(releasedUnits);
+        // only take the monitor if someone may be waiting for the released units
+        if (nOfWaiters == 0) {
+            return;
+        }
+        List<AsyncRequest> toComplete;
+        try {
+            monitor.lock();
+            toComplete = completeRequests();
+        } finally {
+            monitor.unlock();
+        }
+        completeAll(toComplete);
+    }
+
+    private void cancelDueToTimeout(AsyncRequest request) {
+        if (!request.tryClaim()) {
+            // bailing out, some other thread is already dealing with this request
+            return;
+        }
+        List<AsyncRequest> toComplete;
         try {
             monitor.lock();
-            units += releasedUnits;
-            completeRequests();
+            removeRequest(request);
+            // removing a request may allow the completion of the following ones
+            toComplete = completeRequests();
         } finally {
             monitor.unlock();
         }
+        metrics.onWaitTimeout(request.waitStart);
+        request.future.complete(false);
+        completeAll(toComplete);
     }
 
-    private void completeRequests() {
-        while (!q.isEmpty() && units >= q.getHeadValue().requestedUnits) {
+    private void cancelDueToCancellation(AsyncRequest request) {
+        if (!request.tryClaim()) {
+            // bailing out, some other thread is already dealing with this request
+            return;
+        }
+        List<AsyncRequest> toComplete;
+        try {
+            monitor.lock();
+            request.timer.cancel();
+            removeRequest(request);
+            // removing a request may allow the completion of the following ones
+            toComplete = completeRequests();
+        } finally {
+            monitor.unlock();
+        }
+        // the request's future is already completed (cancelled)
+        metrics.onWaitInterrupted(request.waitStart);
+        completeAll(toComplete);
+    }
+
+    // Fraction of the initial units in use while there were queued requests, weighted by time.
+    // A value below 1 means that units were idle while requests were waiting for them
+    // (e.g. due to head-of-line blocking), which allows comparing the grant policies.
+    // Returns NaN if there were never queued requests.
+    public double getUtilization() {
+        try {
+            monitor.lock();
+            sampleUtilization();
+            if (timeWithWaiters == 0 || initialUnits == 0) {
+                return Double.NaN;
+            }
+            return 1.0 - idleUnitsTime / ((double) timeWithWaiters * initialUnits);
+        } finally {
+            monitor.unlock();
+        }
+    }
+
+    private boolean tryAcquire(int requestedUnits) {
+        while (true) {
+            int observedUnits = units.get();
+            if (observedUnits < requestedUnits) {
+                return false;
+            }
+            if (units.compareAndSet(observedUnits, observedUnits - requestedUnits)) {
+                return true;
+            }
+        }
+    }
+
+    private void enqueue(Request request) {
+        request.enqueueTime = MonotonicClock.INSTANCE.nanoTime();
+        request.bypasses = 0;
+        request.waitStart = metrics.onWaitStart();
+        q.push(request);
+        nOfWaiters += 1;
+    }
+
+    private void removeRequest(Request request) {
+        q.remove(request);
+        nOfWaiters -= 1;
+    }
+
+    // Must be called while holding the monitor.
+    // Returns the asynchronous requests that need to be completed *outside* the monitor
+    private List<AsyncRequest> completeRequests() {
+        List<AsyncRequest> toComplete = null;
+        long now = MonotonicClock.INSTANCE.nanoTime();
+        while (!q.isEmpty()) {
+            Request selected = policy.select(q, units.get(), now);
+            if (selected == null || !tryAcquire(selected.requestedUnits)) {
+                break;
+            }
+            if (selected instanceof AsyncRequest) {
+                AsyncRequest asyncSelected = (AsyncRequest) selected;
+                if (!asyncSelected.tryClaim()) {
+                    // Some other thread (timeout or cancellation) is already dealing with this request,
+                    // and that thread will remove it and complete the following ones
+                    units.addAndGet(selected.requestedUnits);
+                    break;
+                }
+                if (asyncSelected.timer != null) {
+                    asyncSelected.timer.cancel();
+                }
+                if (toComplete == null) {
+                    toComplete = new ArrayList<>();
+                }
+                toComplete.add(asyncSelected);
+            }
+            if (!q.isHeadNode(selected)) {
+                q.getHead().bypasses += 1;
+            }
             // The signaling thread does the processing
             // - acquire the units
             // - and remove from queue
             // on behalf of the signaled thread
-            NodeLinkedList.Node<Request> node = q.pull();
-            node.value.isDone = true;
-            units -= node.value.requestedUnits;
-            node.value.condition.signal();
+            q.remove(selected);
+            nOfWaiters -= 1;
+            selected.isDone = true;
+            if (selected.condition != null) {
+                selected.condition.signal();
+            }
+        }
+        sampleUtilization();
+        return toComplete != null ? toComplete : Collections.emptyList();
+    }
+
+    // Must be called while holding the monitor, after any change to the queue.
+    // Units only change without the monitor when there are no queued requests,
+    // or on release, which is followed by a call to completeRequests
+    private void sampleUtilization() {
+        long now = MonotonicClock.INSTANCE.nanoTime();
+        if (lastHadWaiters) {
+            long elapsed = now - lastSampleTime;
+            timeWithWaiters += elapsed;
+            idleUnitsTime += (double) Math.max(lastAvailableUnits, 0) * elapsed;
+        }
+        lastSampleTime = now;
+        lastAvailableUnits = units.get();
+        lastHadWaiters = q.isNotEmpty();
+    }
+
+    private void completeAll(List<AsyncRequest> requests) {
+        for (AsyncRequest request : requests) {
+            if (request.future.complete(true)) {
+                metrics.onWaitHandOff(request.waitStart);
+            } else {
+                // the future was cancelled after the units were acquired on its behalf,
+                // so the units need to be given back
+                metrics.onWaitInterrupted(request.waitStart);
+                release(request.requestedUnits);
+            }
         }
     }
 }
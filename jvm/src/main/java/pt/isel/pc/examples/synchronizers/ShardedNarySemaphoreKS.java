@@ -0,0 +1,274 @@
+package pt.isel.pc.examples.synchronizers;
+
+import pt.isel.pc.utils.IntrusiveLinkedList;
+import pt.isel.pc.utils.Timeouts;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+// N-ary semaphore where the units are split across multiple shards (thread stripes),
+// trading strict global FIFO ordering for scalability.
+// - acquire is served from the thread's shard and, if needed, by stealing from the sibling shards
+// - only when the shards are exhausted does the thread fall back to the global queue (kernel-style)
+// - while there are queued requests, all shards are drained to the global pool and
+//   released units go directly to that pool, so that queued requests aren't starved
+// - when the queue becomes empty, the global pool is redistributed across the shards
+// The total number of units is always exact: units are only moved between shards and the global pool,
+// never created or destroyed.
+public class ShardedNarySemaphoreKS {
+
+    // number of ints in a cache line, so that each shard is in a different cache line
+    private static final int STRIDE = 16;
+
+    private static class Request extends IntrusiveLinkedList.Node {
+        int requestedUnits;
+        final Condition condition;
+        boolean isDone = false;
+
+        Request(Condition condition) {
+            this.condition = condition;
+        }
+    }
+
+    private final int nOfShards;
+    private final AtomicIntegerArray shards;
+
+    // mutable state guarded by the monitor, except nOfWaiters that is also read without it
+    private int units = 0;
+    private final IntrusiveLinkedList<Request> q = new IntrusiveLinkedList<>();
+    private volatile int nOfWaiters = 0;
+
+    private final Lock monitor = new ReentrantLock();
+    private final ThreadLocal<Request> requests =
+      ThreadLocal.withInitial(() -> new Request(monitor.newCondition()));
+
+    public ShardedNarySemaphoreKS(int initial) {
+        this(initial, Runtime.getRuntime().availableProcessors());
+    }
+
+    public ShardedNarySemaphoreKS(int initial, int nOfShards) {
+        if (initial < 0) {
+            throw new IllegalArgumentException("initial units must not be negative");
+        }
+        if (nOfShards <= 0) {
+            throw new IllegalArgumentException("number of shards must be positive");
+        }
+        this.nOfShards = nOfShards;
+        this.shards = new AtomicIntegerArray(nOfShards * STRIDE);
+        distribute(initial);
+    }
+
+    public boolean acquire(int requestedUnits, long timeout, TimeUnit timeUnit) throws InterruptedException {
+
+        // fast path, only using the shards
+        if (nOfWaiters == 0 && tryAcquireFromShards(requestedUnits)) {
+            return true;
+        }
+
+        try {
+            monitor.lock();
+
+            // gather all the units into the global pool, since the fast path may have failed only because
+            // a concurrent gather was holding some of the units
+            units += drainShards();
+            if (q.isEmpty() && units >= requestedUnits) {
+                units -= requestedUnits;
+                redistributeIfIdle();
+                return true;
+            }
+
+            // should it wait or not?
+            if (Timeouts.noWait(timeout)) {
+                redistributeIfIdle();
+                return false;
+            }
+
+            // prepare everything for waiting
+            Request request = requests.get();
+            request.requestedUnits = requestedUnits;
+            request.isDone = false;
+            q.push(request);
+            nOfWaiters += 1;
+            // units may have been released to the shards before nOfWaiters was incremented
+            units += drainShards();
+            completeRequests();
+            if (request.isDone) {
+                return true;
+            }
+            long deadline = Timeouts.start(timeout, timeUnit);
+            long remaining = Timeouts.remaining(deadline);
+
+            while (true) {
+                try {
+                    request.condition.awaitNanos(remaining);
+                } catch (InterruptedException e) {
+                    if (request.isDone) {
+                        // unable to give up
+                        Thread.currentThread().interrupt();
+                        return true;
+                    }
+                    // giving up
+                    removeRequest(request);
+                    completeRequests();
+                    throw e;
+                }
+
+                // is request fulfilled (i.e. isDone)
+                if (request.isDone) {
+                    return true;
+                }
+
+                // should it wait
+                remaining = Timeouts.remaining(deadline);
+                if (Timeouts.isTimeout(remaining)) {
+                    // giving up
+                    removeRequest(request);
+                    completeRequests();
+                    return false;
+                }
+            }
+        } finally {
+            monitor.unlock();
+        }
+    }
+
+    public void release(int releasedUnits) {
+        if (nOfWaiters == 0) {
+            addToShard(shardIndex(), releasedUnits);
+            // Either this thread observes the new waiter, or the waiter will observe the units in the shard
+            if (nOfWaiters == 0) {
+                return;
+            }
+            releasedUnits = 0;
+        }
+        try {
+            monitor.lock();
+            units += releasedUnits + drainShards();
+            completeRequests();
+        } finally {
+            monitor.unlock();
+        }
+    }
+
+    // Approximate number of available units, since the shards are not read atomically
+    public int availableUnits() {
+        int sum = 0;
+        for (int i = 0; i < nOfShards; ++i) {
+            sum += shards.get(i * STRIDE);
+        }
+        try {
+            monitor.lock();
+            return sum + units;
+        } finally {
+            monitor.unlock();
+        }
+    }
+
+    private int shardIndex() {
+        // spreads the thread identifiers across the shards
+        long h = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+        return (int) ((h >>> 32) % nOfShards);
+    }
+
+    private boolean tryAcquireFromShards(int requestedUnits) {
+        int home = shardIndex();
+        // first try the thread's own shard
+        if (tryTakeFromShard(home, requestedUnits)) {
+            return true;
+        }
+        // then gather units from all the shards, starting at the thread's own
+        int gathered = 0;
+        for (int i = 0; i < nOfShards && gathered < requestedUnits; ++i) {
+            gathered += takeFromShard((home + i) % nOfShards, requestedUnits - gathered);
+        }
+        if (gathered == requestedUnits) {
+            return true;
+        }
+        // not enough units, so the gathered ones are given back
+        if (gathered > 0) {
+            release(gathered);
+        }
+        return false;
+    }
+
+    private boolean tryTakeFromShard(int shard, int requestedUnits) {
+        int ix = shard * STRIDE;
+        while (true) {
+            int observed = shards.get(ix);
+            if (observed < requestedUnits) {
+                return false;
+            }
+            if (shards.compareAndSet(ix, observed, observed - requestedUnits)) {
+                return true;
+            }
+        }
+    }
+
+    // takes up to maxUnits from the shard, returning the number of units taken
+    private int takeFromShard(int shard, int maxUnits) {
+        int ix = shard * STRIDE;
+        while (true) {
+            int observed = shards.get(ix);
+            if (observed <= 0) {
+                return 0;
+            }
+            int taken = Math.min(observed, maxUnits);
+            if (shards.compareAndSet(ix, observed, observed - taken)) {
+                return taken;
+            }
+        }
+    }
+
+    private void addToShard(int shard, int addedUnits) {
+        shards.addAndGet(shard * STRIDE, addedUnits);
+    }
+
+    private int drainShards() {
+        int drained = 0;
+        for (int i = 0; i < nOfShards; ++i) {
+            drained += shards.getAndSet(i * STRIDE, 0);
+        }
+        return drained;
+    }
+
+    private void distribute(int unitsToDistribute) {
+        int perShard = unitsToDistribute / nOfShards;
+        int remainder = unitsToDistribute % nOfShards;
+        for (int i = 0; i < nOfShards; ++i) {
+            int shardUnits = perShard + (i < remainder ? 1 : 0);
+            if (shardUnits > 0) {
+                addToShard(i, shardUnits);
+            }
+        }
+    }
+
+    // Must be called while holding the monitor
+    // When there are no waiters, the global units go back to the shards, so that the fast path can use them
+    private void redistributeIfIdle() {
+        if (q.isEmpty() && units > 0) {
+            distribute(units);
+            units = 0;
+        }
+    }
+
+    private void removeRequest(Request request) {
+        q.remove(request);
+        nOfWaiters -= 1;
+    }
+
+    // Must be called while holding the monitor
+    private void completeRequests() {
+        while (q.isNotEmpty() && units >= q.getHead().requestedUnits) {
+            // The signaling thread does the processing on behalf of the signaled thread
+            Request request = q.pull();
+            nOfWaiters -= 1;
+            units -= request.requestedUnits;
+            request.isDone = true;
+            request.condition.signal();
+        }
+        redistributeIfIdle();
+    }
+}
@@ -1,5 +1,6 @@
 package pt.isel.pc.examples.synchronizers;
 
+import pt.isel.pc.utils.SynchronizerMetrics;
 import pt.isel.pc.utils.Timeouts;
 
 import java.util.concurrent.TimeUnit;
@@ -15,11 +16,18 @@ public class SimpleUnarySemaphoreWithLocks implements UnarySemaphore {
     // mutable state
     private long units;
 
+    private final SynchronizerMetrics metrics;
+
     public SimpleUnarySemaphoreWithLocks(long initial) {
+        this(initial, SynchronizerMetrics.disabled());
+    }
+
+    public SimpleUnarySemaphoreWithLocks(long initial, SynchronizerMetrics metrics) {
         if (initial < 0) {
             throw new IllegalArgumentException("initial units must not be negative");
         }
         units = initial;
+        this.metrics = metrics;
     }
 
     public boolean acquire(long timeout, TimeUnit timeUnit) throws InterruptedException {
@@ -29,6 +37,7 @@ public class SimpleUnarySemaphoreWithLocks implements UnarySemaphore {
             // happy-path
             if (units > 0) {
                 units -= 1;
+                metrics.onFastPath();
                 return true;
             }
 
@@ -40,25 +49,29 @@ public class SimpleUnarySemaphoreWithLocks implements UnarySemaphore {
             // prepare to wait
             long deadline = Timeouts.start(timeout, timeUnit);
             long remaining = Timeouts.remaining(deadline);
+            long waitStart = metrics.onWaitStart();
             while (true) {
                 try {
-                    cond.await(remaining, TimeUnit.MILLISECONDS);
+                    cond.awaitNanos(remaining);
                 } catch (InterruptedException e) {
                     if (units > 0) {
                         // Ensure signal is not lost if the selected thread from the wait set
                         // is interrupted while waiting for the mutual-exclusion
                         mon.notify();
                     }
+                    metrics.onWaitInterrupted(waitStart);
                     throw e;
                 }
                 // Evaluate condition
                 if (units > 0) {
                     units -= 1;
+                    metrics.onWaitHandOff(waitStart);
                     return true;
                 }
                 remaining = Timeouts.remaining(deadline);
                 if (Timeouts.isTimeout(remaining)) {
                     // Give-up. No additional processing is required because units == 0
+                    metrics.onWaitTimeout(waitStart);
                     return false;
                 }
             }
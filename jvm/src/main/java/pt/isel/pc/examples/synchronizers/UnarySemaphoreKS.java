@@ -1,71 +1,144 @@
 package pt.isel.pc.examples.synchronizers;
 
-import pt.isel.pc.utils.NodeLinkedList;
+import pt.isel.pc.utils.AdaptiveSpinWait;
+import pt.isel.pc.utils.IntrusiveLinkedList;
+import pt.isel.pc.utils.SynchronizerMetrics;
 import pt.isel.pc.utils.Timeouts;
 
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
 
 public class UnarySemaphoreKS implements UnarySemaphore {
 
-    // Represents a request in the queue
-    private static class Request {
+    // Represents a request in the queue.
+    // Each thread reuses the same request (and condition) every time it needs to wait on this semaphore,
+    // and the request carries the queue links, so a blocking acquire doesn't need to allocate
+    // isDone is volatile because it is also observed without the monitor, while spinning
+    private static class Request extends IntrusiveLinkedList.Node implements BooleanSupplier {
         final Condition condition;
-        boolean isDone = false;
+        volatile boolean isDone = false;
 
         Request(Lock monitor) {
             condition = monitor.newCondition();
         }
+
+        @Override
+        public boolean getAsBoolean() {
+            return isDone;
+        }
     }
 
     private final Lock monitor = new ReentrantLock();
+    private final ThreadLocal<Request> requests = ThreadLocal.withInitial(() -> new Request(monitor));
 
     // mutable state
-    private int availableUnits;
-    private final NodeLinkedList<Request> queue = new NodeLinkedList<>();
+    // - availableUnits is only changed via CAS, so that the uncontended path doesn't need the monitor
+    // - queue is only accessed while holding the monitor
+    // - nOfWaiters mirrors the queue size and is only written while holding the monitor,
+    //   however it is read without the monitor to decide if the fast path can be used
+    private final AtomicInteger availableUnits;
+    private final IntrusiveLinkedList<Request> queue = new IntrusiveLinkedList<>();
+    private volatile int nOfWaiters = 0;
+
+    // optional spinning before parking, null if waiters always park right away
+    private final AdaptiveSpinWait spinWait;
+
+    private final SynchronizerMetrics metrics;
 
     public UnarySemaphoreKS(int initialUnits) {
+        this(initialUnits, null);
+    }
 
-        availableUnits = initialUnits;
+    public UnarySemaphoreKS(int initialUnits, AdaptiveSpinWait spinWait) {
+        this(initialUnits, spinWait, SynchronizerMetrics.disabled());
+    }
+
+    public UnarySemaphoreKS(int initialUnits, AdaptiveSpinWait spinWait, SynchronizerMetrics metrics) {
+        availableUnits = new AtomicInteger(initialUnits);
+        this.spinWait = spinWait;
+        this.metrics = metrics;
     }
 
     public boolean acquire(long timeout, TimeUnit timeUnit) throws InterruptedException {
+        // fast path, without the monitor
+        // only allowed when there aren't waiters, to preserve FIFO ordering
+        if (nOfWaiters == 0 && tryAcquire()) {
+            metrics.onFastPath();
+            return true;
+        }
+
+        // should it wait or not
+        if (Timeouts.noWait(timeout)) {
+            return false;
+        }
+
         monitor.lock();
         try {
-            // happy path
-            if (queue.isEmpty() && availableUnits > 0) {
-                availableUnits -= 1;
+            // happy path, retried while holding the monitor
+            if (queue.isEmpty() && tryAcquire()) {
+                metrics.onFastPath();
                 return true;
             }
 
-            // should it wait or not
-            if (Timeouts.noWait(timeout)) {
-                return false;
-            }
-
             // prepare to wait
-            NodeLinkedList.Node<Request> requestNode = queue.push(new Request(monitor));
+            Request request = requests.get();
+            request.isDone = false;
+            queue.push(request);
+            nOfWaiters += 1;
+            long waitStart = metrics.onWaitStart();
+            // A release may have happened before nOfWaiters was incremented,
+            // without observing the new waiter, so we need to check again
+            completeRequests();
+            if (request.isDone) {
+                metrics.onWaitHandOff(waitStart);
+                return true;
+            }
             long deadline = Timeouts.start(timeout, timeUnit);
+            long start = 0;
+            if (spinWait != null) {
+                // spin without the monitor, so that the releasing thread can complete the request.
+                // The request remains in the queue, so the hand-off via isDone is still done by the releaser
+                start = spinWait.start();
+                monitor.unlock();
+                try {
+                    spinWait.spinUntil(request, Timeouts.remaining(deadline));
+                } finally {
+                    monitor.lock();
+                }
+                if (request.isDone) {
+                    spinWait.recordHandOff(start);
+                    metrics.onWaitHandOff(waitStart);
+                    return true;
+                }
+            }
             long remaining = Timeouts.remaining(deadline);
             while (true) {
                 try {
-                    requestNode.value.condition.await(remaining, TimeUnit.MILLISECONDS);
+                    request.condition.awaitNanos(remaining);
                 } catch (InterruptedException e) {
-                    if (requestNode.value.isDone) {
+                    if (request.isDone) {
                         // cannot give-up
                         Thread.currentThread().interrupt();
+                        metrics.onWaitHandOff(waitStart);
                         return true;
                     }
                     // giving-up
-                    queue.remove(requestNode);
+                    removeRequest(request);
                     completeRequests();
+                    metrics.onWaitInterrupted(waitStart);
                     throw e;
                 }
 
                 // is request fulfilled (i.e. isDone)
-                if (requestNode.value.isDone) {
+                if (request.isDone) {
+                    if (spinWait != null) {
+                        spinWait.recordHandOff(start);
+                    }
+                    metrics.onWaitHandOff(waitStart);
                     return true;
                 }
 
@@ -73,8 +146,9 @@ public class UnarySemaphoreKS implements UnarySemaphore {
                 // should it continue to wait
                 if (Timeouts.isTimeout(remaining)) {
                     // giving up
-                    queue.remove(requestNode);
+                    removeRequest(request);
                     completeRequests();
+                    metrics.onWaitTimeout(waitStart);
                     return false;
                 }
             }
@@ -84,21 +158,46 @@ public class UnarySemaphoreKS implements UnarySemaphore {
     }
 
     public void release() {
+        availableUnits.incrementAndGet();
+        // The monitor is only needed if there are waiters.
+        // Since both availableUnits and nOfWaiters are volatile, either this thread observes the
+        // new waiter or the waiter observes the released unit
+        if (nOfWaiters == 0) {
+            return;
+        }
         monitor.lock();
         try {
-            availableUnits += 1;
             completeRequests();
         } finally {
             monitor.unlock();
         }
     }
 
+    private boolean tryAcquire() {
+        while (true) {
+            int observedUnits = availableUnits.get();
+            if (observedUnits <= 0) {
+                return false;
+            }
+            if (availableUnits.compareAndSet(observedUnits, observedUnits - 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void removeRequest(Request request) {
+        queue.remove(request);
+        nOfWaiters -= 1;
+    }
+
     private void completeRequests() {
-        while (availableUnits > 0 && queue.isNotEmpty()) {
-            NodeLinkedList.Node<Request> head = queue.pull();
-            head.value.isDone = true;
-            availableUnits -= 1;
-            head.value.condition.signal();
+        // A CAS is still required because fast path acquirers may have observed nOfWaiters == 0
+        // just before the first request was added to the queue
+        while (queue.isNotEmpty() && tryAcquire()) {
+            Request head = queue.pull();
+            nOfWaiters -= 1;
+            head.isDone = true;
+            head.condition.signal();
         }
     }
 }
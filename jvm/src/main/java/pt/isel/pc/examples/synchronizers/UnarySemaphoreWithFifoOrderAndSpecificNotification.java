@@ -1,12 +1,15 @@
 package pt.isel.pc.examples.synchronizers;
 
+import pt.isel.pc.utils.AdaptiveSpinWait;
 import pt.isel.pc.utils.NodeLinkedList;
+import pt.isel.pc.utils.SynchronizerMetrics;
 import pt.isel.pc.utils.Timeouts;
 
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
 
 public class UnarySemaphoreWithFifoOrderAndSpecificNotification implements UnarySemaphore {
 
@@ -22,11 +25,30 @@ public class UnarySemaphoreWithFifoOrderAndSpecificNotification implements Unary
     private final Lock monitor = new ReentrantLock();
 
     // mutable state
-    private int availableUnits;
+    // availableUnits is only changed while holding the monitor,
+    // however it is volatile because it is also observed without the monitor, while spinning
+    private volatile int availableUnits;
     private final NodeLinkedList<Request> queue = new NodeLinkedList<>();
 
+    // optional spinning before parking, null if waiters always park right away
+    private final AdaptiveSpinWait spinWait;
+    private final BooleanSupplier hasAvailableUnits = () -> availableUnits > 0;
+
+    private final SynchronizerMetrics metrics;
+
     public UnarySemaphoreWithFifoOrderAndSpecificNotification(int initialUnits) {
+        this(initialUnits, null);
+    }
+
+    public UnarySemaphoreWithFifoOrderAndSpecificNotification(int initialUnits, AdaptiveSpinWait spinWait) {
+        this(initialUnits, spinWait, SynchronizerMetrics.disabled());
+    }
+
+    public UnarySemaphoreWithFifoOrderAndSpecificNotification(
+      int initialUnits, AdaptiveSpinWait spinWait, SynchronizerMetrics metrics) {
         this.availableUnits = initialUnits;
+        this.spinWait = spinWait;
+        this.metrics = metrics;
     }
 
     public boolean acquire(long timeout, TimeUnit timeUnit) throws InterruptedException {
@@ -36,6 +58,7 @@ public class UnarySemaphoreWithFifoOrderAndSpecificNotification implements Unary
             // happy path
             if (queue.isEmpty() && availableUnits > 0) {
                 availableUnits -= 1;
+                metrics.onFastPath();
                 return true;
             }
             // should it wait or not
@@ -44,15 +67,37 @@ public class UnarySemaphoreWithFifoOrderAndSpecificNotification implements Unary
             }
             // prepare to wait
             NodeLinkedList.Node<Request> requestNode = queue.push(new Request(monitor));
+            long waitStart = metrics.onWaitStart();
             long deadline = Timeouts.start(timeout, timeUnit);
+            long start = spinWait != null ? spinWait.start() : 0;
+            // only the head request can acquire, so only it spins
+            if (spinWait != null && queue.isHeadNode(requestNode)) {
+                // spin without the monitor, so that the releasing thread can change availableUnits
+                monitor.unlock();
+                try {
+                    spinWait.spinUntil(hasAvailableUnits, Timeouts.remaining(deadline));
+                } finally {
+                    monitor.lock();
+                }
+                // a signal sent while spinning is not lost, since the condition is always re-evaluated
+                if (queue.isHeadNode(requestNode) && availableUnits > 0) {
+                    availableUnits -= 1;
+                    queue.pull();
+                    spinWait.recordHandOff(start);
+                    metrics.onWaitHandOff(waitStart);
+                    signalIfNeeded();
+                    return true;
+                }
+            }
             long remaining = Timeouts.remaining(deadline);
             while (true) {
                 try {
-                    requestNode.value.condition.await(remaining, TimeUnit.MILLISECONDS);
+                    requestNode.value.condition.awaitNanos(remaining);
                 } catch (InterruptedException e) {
                     // giving up
                     queue.remove(requestNode);
                     signalIfNeeded();
+                    metrics.onWaitInterrupted(waitStart);
                     throw e;
                 }
 
@@ -60,6 +105,10 @@ public class UnarySemaphoreWithFifoOrderAndSpecificNotification implements Unary
                 if (queue.isHeadNode(requestNode) && availableUnits > 0) {
                     availableUnits -= 1;
                     queue.pull();
+                    if (spinWait != null) {
+                        spinWait.recordHandOff(start);
+                    }
+                    metrics.onWaitHandOff(waitStart);
                     signalIfNeeded();
                     return true;
                 }
@@ -70,6 +119,7 @@ public class UnarySemaphoreWithFifoOrderAndSpecificNotification implements Unary
                     // giving up
                     queue.remove(requestNode);
                     signalIfNeeded();
+                    metrics.onWaitTimeout(waitStart);
                     return false;
                 }
             }
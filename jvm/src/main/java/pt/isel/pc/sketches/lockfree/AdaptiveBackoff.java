@@ -0,0 +1,58 @@
+package pt.isel.pc.sketches.lockfree;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+// Backoff adapting to the observed contention.
+// - an exponentially weighted moving average (EWMA) of the CAS failure rate is maintained,
+//   from a sample of the operations, so that updating it doesn't become a contention point
+// - while the average is low, a failure is only followed by a spin-wait hint
+// - otherwise, it uses exponential backoff with jitter, with an upper bound proportional to the average
+// The average is updated without synchronization, since a lost update only affects the tuning.
+// An instance is meant to be used by a single structure, since contention differs between structures.
+class AdaptiveBackoff implements BackoffStrategy {
+
+    // failure rates are fractions of SCALE
+    private static final int SCALE = 1 << 10;
+    private static final int LOW_FAILURE_RATE = SCALE / 10;
+    // EWMA weight is 1/2^AVERAGE_SHIFT
+    private static final int AVERAGE_SHIFT = 4;
+    // one in SAMPLING_MASK + 1 operations is sampled
+    private static final int SAMPLING_MASK = 15;
+
+    private final int maxSpins;
+    private volatile int averageFailureRate;
+
+    AdaptiveBackoff(int maxSpins) {
+        if (maxSpins <= 0) {
+            throw new IllegalArgumentException("maximum spins must be positive");
+        }
+        this.maxSpins = maxSpins;
+    }
+
+    @Override
+    public void onFailure(int failures) {
+        int rate = averageFailureRate;
+        if (rate < LOW_FAILURE_RATE) {
+            Thread.onSpinWait();
+            return;
+        }
+        int bound = Math.max(1, (int) ((long) maxSpins * rate / SCALE));
+        ExponentialBackoff.spin(1, bound, failures);
+    }
+
+    @Override
+    public void onSuccess(int failures) {
+        if ((ThreadLocalRandom.current().nextInt() & SAMPLING_MASK) != 0) {
+            return;
+        }
+        // fraction of the operation's CASes that failed
+        int sample = (int) ((long) failures * SCALE / (failures + 1));
+        int average = averageFailureRate;
+        averageFailureRate = average + ((sample - average) >> AVERAGE_SHIFT);
+    }
+
+    // The current average failure rate, between 0 and 1
+    double getFailureRate() {
+        return (double) averageFailureRate / SCALE;
+    }
+}
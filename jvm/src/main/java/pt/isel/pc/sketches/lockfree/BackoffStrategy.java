@@ -0,0 +1,37 @@
+package pt.isel.pc.sketches.lockfree;
+
+// What a thread does between a failed CAS and the next attempt, in the retry loops of the lock-free structures.
+// Under contention, retrying right away makes most CASes fail, with all threads competing for the same cache line.
+public interface BackoffStrategy {
+
+    // Called after a failed CAS, where failures is the number of failed CASes of the current operation,
+    // starting at 1
+    void onFailure(int failures);
+
+    // Called after the successful CAS of an operation, with the number of CASes that failed before it
+    default void onSuccess(int failures) {
+    }
+
+    // Retries right away
+    static BackoffStrategy none() {
+        return failures -> {
+        };
+    }
+
+    // Retries after a single spin-wait hint
+    static BackoffStrategy spinWait() {
+        return failures -> Thread.onSpinWait();
+    }
+
+    // Retries after a random number of spins, with an upper bound doubling on each failure (jitter),
+    // starting at minSpins and up to maxSpins
+    static BackoffStrategy exponential(int minSpins, int maxSpins) {
+        return new ExponentialBackoff(minSpins, maxSpins);
+    }
+
+    // Exponential backoff, with an upper bound proportional to the recently observed CAS failure rate,
+    // and just a spin-wait hint while that rate is low
+    static BackoffStrategy adaptive(int maxSpins) {
+        return new AdaptiveBackoff(maxSpins);
+    }
+}
@@ -0,0 +1,81 @@
+package pt.isel.pc.sketches.lockfree;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Elimination array used by LockFreeStack after a failed CAS on head, so that a push and a concurrent pop
+// can cancel each other without touching head.
+// - a push offers its element on a random slot and waits a bit for a pop to take it
+// - a pop takes the element offered on a random slot, if any, without waiting
+// - the pusher withdraws its offer with a CAS, so the element is either taken by exactly one pop
+//   or withdrawn by the pusher, which then retries on head
+// - the push and the pop are linearized at the moment the pop takes the element, when both are in progress
+// The number of used slots (the width) adapts to the observed contention:
+// it grows when a push finds its slot occupied and shrinks when an offer isn't taken.
+class EliminationArray<T> {
+
+    // number of spin iterations a push waits for a pop
+    private static final int SPIN_ITERATIONS = 64;
+
+    private final AtomicReferenceArray<T> slots;
+    // only a hint, so the races between threads adapting it are benign
+    private volatile int width = 1;
+
+    EliminationArray(int maxWidth) {
+        if (maxWidth <= 0) {
+            throw new IllegalArgumentException("maximum width must be positive");
+        }
+        slots = new AtomicReferenceArray<>(maxWidth);
+    }
+
+    // Returns true if the offer was taken by a pop
+    boolean tryPush(T offer) {
+        int slot = randomSlot();
+        if (!slots.compareAndSet(slot, null, offer)) {
+            // collision with another push, so more slots are needed
+            grow();
+            return false;
+        }
+        for (int i = 0; i < SPIN_ITERATIONS; ++i) {
+            if (slots.get(slot) != offer) {
+                return true;
+            }
+            Thread.onSpinWait();
+        }
+        if (slots.compareAndSet(slot, offer, null)) {
+            // no pop came, so there are too many slots for the current contention
+            shrink();
+            return false;
+        }
+        // a pop took it just before the withdraw
+        return true;
+    }
+
+    // Returns an offer taken from a push, or null if there wasn't one
+    T tryPop() {
+        int slot = randomSlot();
+        T offer = slots.get(slot);
+        if (offer != null && slots.compareAndSet(slot, offer, null)) {
+            return offer;
+        }
+        return null;
+    }
+
+    private int randomSlot() {
+        return ThreadLocalRandom.current().nextInt(width);
+    }
+
+    private void grow() {
+        int observed = width;
+        if (observed < slots.length()) {
+            width = observed + 1;
+        }
+    }
+
+    private void shrink() {
+        int observed = width;
+        if (observed > 1) {
+            width = observed - 1;
+        }
+    }
+}
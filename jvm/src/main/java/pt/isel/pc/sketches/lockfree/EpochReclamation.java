@@ -0,0 +1,206 @@
+package pt.isel.pc.sketches.lockfree;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+// Epoch-based reclamation of the nodes of a lock-free data structure, so that nodes can be reused
+// without the ABA problem, i.e., without a thread observing a node that was removed and then reused.
+// - threads access the data structure inside critical sections (enter/exit), where they publish the global epoch
+//   they observed when entering
+// - the global epoch only advances when all the threads inside critical sections observed it, so
+//   after it advances twice, no thread entered before the advances is still inside a critical section
+// - a removed node is retired with the global epoch at that moment, and is only reused after the global epoch
+//   advances twice, i.e., when all the threads that could have observed the node before its removal
+//   already left their critical sections
+// - each thread has three bags of retired nodes, one per epoch modulo 3, and a pool with the nodes ready for reuse
+// Nodes are only reused by the thread that retired them, so a data structure is only garbage free
+// when the threads both add and remove nodes; the other threads fall back to the factory.
+// A thread that stays inside a critical section doesn't block the other threads, it only delays the reuse of nodes.
+// Critical sections can't be nested.
+// Participants only hold a weak reference to their thread, and the ones whose thread terminated are removed
+// while trying to advance the epoch, dropping their pooled and retired nodes to the GC.
+// - removals are done by a single thread at a time, so they only race with registrations, which only change the head
+public class EpochReclamation<T> {
+
+    private static final long INACTIVE = -1;
+    private static final int N_OF_BAGS = 3;
+    // number of retires after which a thread tries to advance the global epoch
+    private static final int RETIRES_PER_ADVANCE = 64;
+
+    private final AtomicLong globalEpoch = new AtomicLong(0);
+    // registered threads, added to the head and removed after their thread terminates
+    private final AtomicReference<Participant<T>> participants = new AtomicReference<>(null);
+    private final AtomicBoolean isPruning = new AtomicBoolean(false);
+    private final ThreadLocal<Participant<T>> participant = ThreadLocal.withInitial(this::register);
+    private final Supplier<T> factory;
+    private final int maxPooledPerThread;
+
+    public EpochReclamation(Supplier<T> factory, int maxPooledPerThread) {
+        if (maxPooledPerThread < 0) {
+            throw new IllegalArgumentException("maximum number of pooled nodes must not be negative");
+        }
+        this.factory = factory;
+        this.maxPooledPerThread = maxPooledPerThread;
+    }
+
+    public void enter() {
+        Participant<T> p = participant.get();
+        if (p.epoch != INACTIVE) {
+            throw new IllegalStateException("critical sections can't be nested");
+        }
+        // volatile write, so that it is visible before any read of the data structure
+        p.epoch = globalEpoch.get();
+    }
+
+    public void exit() {
+        participant.get().epoch = INACTIVE;
+    }
+
+    // Returns a reused node, if there is one ready, or a new one
+    public T allocate() {
+        Participant<T> p = participant.get();
+        T node = p.pool.pollLast();
+        if (node != null) {
+            return node;
+        }
+        tryAdvance();
+        long observedEpoch = globalEpoch.get();
+        for (int i = 0; i < N_OF_BAGS; ++i) {
+            if (p.bagEpochs[i] <= observedEpoch - 2) {
+                recycle(p, i);
+            }
+        }
+        node = p.pool.pollLast();
+        return node != null ? node : factory.get();
+    }
+
+    // Must be called after the node is removed from the data structure
+    public void retire(T node) {
+        Participant<T> p = participant.get();
+        long observedEpoch = globalEpoch.get();
+        int i = (int) (observedEpoch % N_OF_BAGS);
+        if (p.bagEpochs[i] != observedEpoch) {
+            // the bag has nodes retired at least 3 epochs ago, which can already be reused
+            recycle(p, i);
+            p.bagEpochs[i] = observedEpoch;
+        }
+        p.bags[i].addLast(node);
+        p.retires += 1;
+        if (p.retires == RETIRES_PER_ADVANCE) {
+            p.retires = 0;
+            tryAdvance();
+        }
+    }
+
+    private void tryAdvance() {
+        long observedEpoch = globalEpoch.get();
+        boolean hasTerminated = false;
+        for (Participant<T> p = participants.get(); p != null; p = p.next) {
+            if (!p.isOwnerAlive()) {
+                // its thread will never exit the critical section, if it was inside one
+                hasTerminated = true;
+                continue;
+            }
+            long epoch = p.epoch;
+            if (epoch != INACTIVE && epoch != observedEpoch) {
+                // still inside a critical section entered on a previous epoch
+                return;
+            }
+        }
+        if (hasTerminated) {
+            prune();
+        }
+        // fails if some other thread already advanced it, which is fine
+        globalEpoch.compareAndSet(observedEpoch, observedEpoch + 1);
+    }
+
+    private void prune() {
+        if (!isPruning.compareAndSet(false, true)) {
+            // some other thread is already pruning
+            return;
+        }
+        try {
+            // the head races with registrations, so it is only removed via CAS
+            Participant<T> head;
+            while ((head = participants.get()) != null && !head.isOwnerAlive()) {
+                participants.compareAndSet(head, head.next);
+            }
+            if (head == null) {
+                return;
+            }
+            // after the head, the list is only changed by the pruning thread
+            // concurrent scans may still traverse a removed participant, whose next remains valid
+            Participant<T> prev = head;
+            for (Participant<T> p = head.next; p != null; p = p.next) {
+                if (p.isOwnerAlive()) {
+                    prev = p;
+                } else {
+                    prev.next = p.next;
+                }
+            }
+        } finally {
+            isPruning.set(false);
+        }
+    }
+
+    // Number of registered participants, including the ones not yet removed after their thread terminated
+    int nOfParticipants() {
+        int count = 0;
+        for (Participant<T> p = participants.get(); p != null; p = p.next) {
+            count += 1;
+        }
+        return count;
+    }
+
+    private void recycle(Participant<T> p, int i) {
+        ArrayDeque<T> bag = p.bags[i];
+        T node;
+        while ((node = bag.pollFirst()) != null) {
+            if (p.pool.size() < maxPooledPerThread) {
+                p.pool.addLast(node);
+            }
+            // otherwise the node is left to the GC
+        }
+    }
+
+    private Participant<T> register() {
+        Participant<T> p = new Participant<>(Thread.currentThread());
+        while (true) {
+            Participant<T> observedHead = participants.get();
+            p.next = observedHead;
+            if (participants.compareAndSet(observedHead, p)) {
+                return p;
+            }
+        }
+    }
+
+    private static class Participant<T> {
+        volatile long epoch = INACTIVE;
+        volatile Participant<T> next;
+        // weak, so that a participant doesn't keep its terminated thread reachable
+        final WeakReference<Thread> owner;
+        // only accessed by the owner thread
+        @SuppressWarnings("unchecked")
+        final ArrayDeque<T>[] bags = (ArrayDeque<T>[]) new ArrayDeque<?>[N_OF_BAGS];
+        final long[] bagEpochs = new long[N_OF_BAGS];
+        final ArrayDeque<T> pool = new ArrayDeque<>();
+        int retires;
+
+        Participant(Thread owner) {
+            this.owner = new WeakReference<>(owner);
+            for (int i = 0; i < N_OF_BAGS; ++i) {
+                bags[i] = new ArrayDeque<>();
+                bagEpochs[i] = INACTIVE;
+            }
+        }
+
+        boolean isOwnerAlive() {
+            Thread thread = owner.get();
+            return thread != null && thread.isAlive();
+        }
+    }
+}
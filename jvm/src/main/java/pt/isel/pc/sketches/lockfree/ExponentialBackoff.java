@@ -0,0 +1,41 @@
+package pt.isel.pc.sketches.lockfree;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+// Exponential backoff with jitter: after the n-th failure of an operation, spins a random number of iterations
+// between zero and min(maxSpins, minSpins * 2^(n-1)), so that the threads that collided retry at different moments.
+// Has no state, so a single instance can be shared by multiple structures.
+class ExponentialBackoff implements BackoffStrategy {
+
+    // spinning is useless with a single processor, since the thread that would change the observed value isn't running
+    private static final boolean IS_MULTIPROCESSOR = Runtime.getRuntime().availableProcessors() > 1;
+
+    private final int minSpins;
+    private final int maxSpins;
+
+    ExponentialBackoff(int minSpins, int maxSpins) {
+        if (minSpins <= 0 || maxSpins < minSpins) {
+            throw new IllegalArgumentException("spins must be positive and minSpins must not exceed maxSpins");
+        }
+        this.minSpins = minSpins;
+        this.maxSpins = maxSpins;
+    }
+
+    @Override
+    public void onFailure(int failures) {
+        spin(minSpins, maxSpins, failures);
+    }
+
+    static void spin(int minSpins, int maxSpins, int failures) {
+        if (!IS_MULTIPROCESSOR) {
+            Thread.yield();
+            return;
+        }
+        int shift = Math.min(Math.max(failures - 1, 0), 30);
+        int bound = (int) Math.min(maxSpins, (long) minSpins << shift);
+        int spins = ThreadLocalRandom.current().nextInt(bound + 1);
+        for (int i = 0; i < spins; ++i) {
+            Thread.onSpinWait();
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package pt.isel.pc.sketches.lockfree;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+// Bounded multi-producer multi-consumer queue over a circular array (Vyukov-style), without allocation per element.
+// - each slot has a sequence number, which tells who can use the slot next, for a position p of the slot:
+//   sequence == p means the slot is free for the producer of position p,
+//   sequence == p + 1 means the slot holds the element for the consumer of position p
+// - producers and consumers claim positions with a CAS on the enqueue and dequeue indices,
+//   and then publish the slot by setting its sequence (a volatile write), after writing or clearing the element
+// - the indices are padded, so that producers and consumers don't share cache lines
+// - the batch operations claim several consecutive positions with a single CAS
+// - drainTo frees all the claimed slots before calling the consumer, so that a slow or failing consumer
+//   doesn't prevent the producers from reusing them
+// - fill always publishes all the claimed slots, even if the supplier fails, since a claimed slot that is never
+//   published blocks the queue forever; the slots left without element are skipped by the consumers
+// Elements must not be null, since poll returns null when the queue is empty.
+// A backoff strategy defines what happens after losing a position to another thread and the next attempt.
+public class LockFreeBoundedQueue<E> {
+
+    // number of longs in a cache line, so that each index is in a different cache line
+    private static final int STRIDE = 8;
+    private static final int ENQUEUE_INDEX = STRIDE;
+    private static final int DEQUEUE_INDEX = 2 * STRIDE;
+    // element of the slots claimed by a fill whose supplier failed
+    private static final Object SKIPPED = new Object();
+
+    private final int mask;
+    private final Object[] elements;
+    private final AtomicLongArray sequences;
+    private final AtomicLongArray indices = new AtomicLongArray(3 * STRIDE);
+    private final BackoffStrategy backoff;
+
+    // The capacity is rounded up to a power of two, and is at least 2
+    public LockFreeBoundedQueue(int capacity) {
+        this(capacity, BackoffStrategy.none());
+    }
+
+    public LockFreeBoundedQueue(int capacity, BackoffStrategy backoff) {
+        if (capacity <= 0 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("capacity must be positive and at most 2^30");
+        }
+        int actualCapacity = Integer.highestOneBit(capacity - 1) << 1;
+        // with a single slot, the sequence of a full slot would be the same as the one of the next lap's free slot
+        actualCapacity = Math.max(2, actualCapacity);
+        mask = actualCapacity - 1;
+        elements = new Object[actualCapacity];
+        sequences = new AtomicLongArray(actualCapacity);
+        for (int i = 0; i < actualCapacity; ++i) {
+            sequences.set(i, i);
+        }
+        this.backoff = backoff;
+    }
+
+    public int capacity() {
+        return elements.length;
+    }
+
+    // Approximate if there are concurrent operations
+    public int size() {
+        long size = indices.get(ENQUEUE_INDEX) - indices.get(DEQUEUE_INDEX);
+        return (int) Math.max(0, Math.min(size, elements.length));
+    }
+
+    // Returns false if the queue is full
+    public boolean offer(E e) {
+        if (e == null) {
+            throw new IllegalArgumentException("element must not be null");
+        }
+        long pos = indices.get(ENQUEUE_INDEX);
+        int failures = 0;
+        while (true) {
+            int index = (int) (pos & mask);
+            long difference = sequences.get(index) - pos;
+            if (difference == 0 && indices.compareAndSet(ENQUEUE_INDEX, pos, pos + 1)) {
+                publish(index, pos, e);
+                backoff.onSuccess(failures);
+                return true;
+            } else if (difference < 0) {
+                // the slot still holds the element from the previous lap
+                return false;
+            }
+            // another producer already claimed this position
+            failures += 1;
+            backoff.onFailure(failures);
+            pos = indices.get(ENQUEUE_INDEX);
+        }
+    }
+
+    // Returns null if the queue is empty
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        long pos = indices.get(DEQUEUE_INDEX);
+        int failures = 0;
+        while (true) {
+            int index = (int) (pos & mask);
+            long difference = sequences.get(index) - (pos + 1);
+            if (difference == 0 && indices.compareAndSet(DEQUEUE_INDEX, pos, pos + 1)) {
+                Object e = take(index, pos);
+                if (e != SKIPPED) {
+                    backoff.onSuccess(failures);
+                    return (E) e;
+                }
+                // the slot has no element, so try the next one
+                pos = indices.get(DEQUEUE_INDEX);
+                continue;
+            } else if (difference < 0) {
+                // the slot doesn't have an element yet
+                return null;
+            }
+            // another consumer already claimed this position
+            failures += 1;
+            backoff.onFailure(failures);
+            pos = indices.get(DEQUEUE_INDEX);
+        }
+    }
+
+    // Polls up to maxElements, passing them to the consumer, and returns the number of polled elements
+    // If the consumer throws, the polled elements not yet passed to it are lost
+    @SuppressWarnings("unchecked")
+    public int drainTo(Consumer<? super E> consumer, int maxElements) {
+        int failures = 0;
+        while (true) {
+            long pos = indices.get(DEQUEUE_INDEX);
+            int n = 0;
+            while (n < maxElements && sequences.get((int) ((pos + n) & mask)) == pos + n + 1) {
+                n += 1;
+            }
+            if (n == 0) {
+                return 0;
+            }
+            if (indices.compareAndSet(DEQUEUE_INDEX, pos, pos + n)) {
+                backoff.onSuccess(failures);
+                Object[] drained = new Object[n];
+                for (int i = 0; i < n; ++i) {
+                    drained[i] = take((int) ((pos + i) & mask), pos + i);
+                }
+                int polled = 0;
+                for (Object e : drained) {
+                    if (e != SKIPPED) {
+                        consumer.accept((E) e);
+                        polled += 1;
+                    }
+                }
+                return polled;
+            }
+            failures += 1;
+            backoff.onFailure(failures);
+        }
+    }
+
+    // Offers up to maxElements obtained from the supplier, which is called once per free slot
+    // and must not return null, and returns the number of offered elements
+    // If the supplier throws or returns null, the elements already obtained remain offered
+    public int fill(Supplier<? extends E> supplier, int maxElements) {
+        int failures = 0;
+        while (true) {
+            long pos = indices.get(ENQUEUE_INDEX);
+            int n = 0;
+            while (n < maxElements && sequences.get((int) ((pos + n) & mask)) == pos + n) {
+                n += 1;
+            }
+            if (n == 0) {
+                return 0;
+            }
+            if (indices.compareAndSet(ENQUEUE_INDEX, pos, pos + n)) {
+                backoff.onSuccess(failures);
+                int i = 0;
+                try {
+                    for (; i < n; ++i) {
+                        E e = supplier.get();
+                        if (e == null) {
+                            throw new IllegalArgumentException("supplied element must not be null");
+                        }
+                        publish((int) ((pos + i) & mask), pos + i, e);
+                    }
+                } finally {
+                    // the remaining claimed slots, if the supplier failed
+                    for (; i < n; ++i) {
+                        publish((int) ((pos + i) & mask), pos + i, SKIPPED);
+                    }
+                }
+                return n;
+            }
+            failures += 1;
+            backoff.onFailure(failures);
+        }
+    }
+
+    private void publish(int index, long pos, Object e) {
+        elements[index] = e;
+        // makes the element available to the consumer of this position
+        sequences.set(index, pos + 1);
+    }
+
+    private Object take(int index, long pos) {
+        Object e = elements[index];
+        elements[index] = null;
+        // frees the slot for the producer of the next lap
+        sequences.set(index, pos + elements.length);
+        return e;
+    }
+}
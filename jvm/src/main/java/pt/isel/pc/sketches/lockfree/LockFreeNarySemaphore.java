@@ -0,0 +1,181 @@
+package pt.isel.pc.sketches.lockfree;
+
+import pt.isel.pc.utils.SynchronizerMetrics;
+import pt.isel.pc.utils.Timeouts;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+// N-ary semaphore with FIFO granting (see NarySemaphoreKS), where both the units and the waiter queue
+// are managed with CAS, without a monitor.
+// - units is an AtomicInteger and the waiters are on a LockFreeQueue
+// - each waiter has a state, changed via CAS from WAITING to either GRANTED, by the dispatcher,
+//   or CANCELLED, by the waiter itself on timeout or interrupt, so that only one of both happens
+// - waiters are granted by a single thread at a time, the dispatcher, elected with a work-in-progress counter:
+//   the thread that increments it from zero becomes the dispatcher, and the other threads just leave
+//   their increment, which makes the dispatcher repeat the dispatch before leaving
+// - the dispatcher acquires the units on behalf of the head waiter and then grants them (direct hand-off),
+//   giving them back if the waiter was cancelled meanwhile
+// - cancelled waiters stay in the queue until they reach its head, where the dispatcher removes them,
+//   and a waiter that gives up dispatches, so that the following waiters are granted if the units allow it
+// Release is wait-free: it only increments the units and unparks the head waiter, if any.
+// The dispatching is done by the waiters, after being woken up, so the releasing threads never do
+// granting work on behalf of others.
+// - a head removed between the increment and the peek doesn't lose the release, since the dispatcher
+//   that removed it reads the units after removing it and then handles the new head
+public class LockFreeNarySemaphore {
+
+    private static final int WAITING = 0;
+    private static final int GRANTED = 1;
+    private static final int CANCELLED = 2;
+
+    private static class Waiter {
+        final Thread thread;
+        final int requestedUnits;
+        final AtomicInteger state = new AtomicInteger(WAITING);
+
+        Waiter(Thread thread, int requestedUnits) {
+            this.thread = thread;
+            this.requestedUnits = requestedUnits;
+        }
+    }
+
+    private final AtomicInteger units;
+    private final LockFreeQueue<Waiter> waiters = new LockFreeQueue<>();
+    private final AtomicInteger dispatchRequests = new AtomicInteger(0);
+    private final SynchronizerMetrics metrics;
+
+    public LockFreeNarySemaphore(int initial) {
+        this(initial, SynchronizerMetrics.disabled());
+    }
+
+    public LockFreeNarySemaphore(int initial, SynchronizerMetrics metrics) {
+        units = new AtomicInteger(initial);
+        this.metrics = metrics;
+    }
+
+    public boolean acquire(int requestedUnits, long timeout, TimeUnit timeUnit) throws InterruptedException {
+
+        // fast path, only if there are no waiters, to preserve FIFO
+        if (waiters.isEmpty() && tryAcquire(requestedUnits)) {
+            metrics.onFastPath();
+            return true;
+        }
+
+        // should it wait or not?
+        if (Timeouts.noWait(timeout)) {
+            return false;
+        }
+
+        Waiter waiter = new Waiter(Thread.currentThread(), requestedUnits);
+        long waitStart = metrics.onWaitStart();
+        waiters.offer(waiter);
+        // a release may have missed this new waiter
+        dispatch();
+        long deadline = Timeouts.start(timeout, timeUnit);
+
+        while (true) {
+            if (waiter.state.get() == GRANTED) {
+                metrics.onWaitHandOff(waitStart);
+                return true;
+            }
+            long remaining = Timeouts.remaining(deadline);
+            if (Timeouts.isTimeout(remaining)) {
+                if (giveUp(waiter)) {
+                    metrics.onWaitTimeout(waitStart);
+                    return false;
+                }
+                // granted meanwhile
+                continue;
+            }
+            LockSupport.parkNanos(this, remaining);
+            if (Thread.interrupted()) {
+                if (giveUp(waiter)) {
+                    metrics.onWaitInterrupted(waitStart);
+                    throw new InterruptedException();
+                }
+                // unable to give up
+                Thread.currentThread().interrupt();
+                metrics.onWaitHandOff(waitStart);
+                return true;
+            }
+            // maybe woken up by a release, which leaves the dispatching to the head waiter
+            dispatch();
+        }
+    }
+
+    public void release(int releasedUnits) {
+        units.getAndAdd(releasedUnits);
+        // only the head waiter may be granted the released units, and it dispatches by itself
+        Optional<Waiter> maybeHead = waiters.peek();
+        if (maybeHead.isPresent()) {
+            LockSupport.unpark(maybeHead.get().thread);
+        }
+    }
+
+    public int availableUnits() {
+        return units.get();
+    }
+
+    // Returns false if the waiter was already granted
+    private boolean giveUp(Waiter waiter) {
+        if (!waiter.state.compareAndSet(WAITING, CANCELLED)) {
+            return false;
+        }
+        // if the waiter was at the head, the following ones may now be granted
+        dispatch();
+        return true;
+    }
+
+    private void dispatch() {
+        if (dispatchRequests.getAndIncrement() != 0) {
+            // the current dispatcher will observe this request and dispatch again
+            return;
+        }
+        int observedRequests = 1;
+        do {
+            grantWaiters();
+            observedRequests = dispatchRequests.addAndGet(-observedRequests);
+        } while (observedRequests != 0);
+    }
+
+    // Only called by the dispatcher, which is the only thread removing from the queue
+    private void grantWaiters() {
+        while (true) {
+            Optional<Waiter> maybeHead = waiters.peek();
+            if (!maybeHead.isPresent()) {
+                return;
+            }
+            Waiter head = maybeHead.get();
+            if (head.state.get() == CANCELLED) {
+                waiters.poll();
+                continue;
+            }
+            if (!tryAcquire(head.requestedUnits)) {
+                // strict FIFO, so a head that doesn't fit blocks all the following ones
+                return;
+            }
+            waiters.poll();
+            if (head.state.compareAndSet(WAITING, GRANTED)) {
+                LockSupport.unpark(head.thread);
+            } else {
+                // cancelled after acquiring the units on its behalf, so the units need to be given back
+                units.getAndAdd(head.requestedUnits);
+            }
+        }
+    }
+
+    private boolean tryAcquire(int requestedUnits) {
+        while (true) {
+            int observedUnits = units.get();
+            if (observedUnits < requestedUnits) {
+                return false;
+            }
+            if (units.compareAndSet(observedUnits, observedUnits - requestedUnits)) {
+                return true;
+            }
+        }
+    }
+}
@@ -1,12 +1,93 @@
 package pt.isel.pc.sketches.lockfree;
 
-public class LockFreeQueue {
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
 
-    // TODO
+// Michael-Scott unbounded multi-producer multi-consumer queue.
+// - head always points to a dummy node, whose next is the first element
+// - an element is added in two steps: linking the new node to the last node (the linearization point)
+//   and then advancing tail, so tail may lag behind the last node by one
+// - any thread that observes a lagging tail helps advancing it, before retrying its own operation,
+//   so an offer interrupted between both steps never blocks the other threads
+// - head never moves past tail, so the dequeued nodes are never reachable from tail
+// The dummy node keeps a reference to the last polled element, until the next poll.
+// A backoff strategy defines what happens between a failed CAS, or a help to a lagging tail, and the next attempt.
+public class LockFreeQueue<E> {
+
+    private final AtomicReference<Node<E>> head;
+    private final AtomicReference<Node<E>> tail;
+    private final BackoffStrategy backoff;
+
+    public LockFreeQueue() {
+        this(BackoffStrategy.none());
+    }
+
+    public LockFreeQueue(BackoffStrategy backoff) {
+        this.backoff = backoff;
+        Node<E> dummy = new Node<>(null);
+        head = new AtomicReference<>(dummy);
+        tail = new AtomicReference<>(dummy);
+    }
+
+    public void offer(E e) {
+        if (e == null) {
+            throw new IllegalArgumentException("element must not be null");
+        }
+        Node<E> mynode = new Node<>(e);
+        int failures = 0;
+        while (true) {
+            Node<E> observedTail = tail.get();
+            Node<E> observedNext = observedTail.next.get();
+            if (observedNext == null) {
+                if (observedTail.next.compareAndSet(null, mynode)) {
+                    // fails if some other thread already helped, which is fine
+                    tail.compareAndSet(observedTail, mynode);
+                    backoff.onSuccess(failures);
+                    return;
+                }
+            } else {
+                // tail is lagging behind, help advancing it
+                tail.compareAndSet(observedTail, observedNext);
+            }
+            failures += 1;
+            backoff.onFailure(failures);
+        }
+    }
+
+    public Optional<E> poll() {
+        int failures = 0;
+        while (true) {
+            Node<E> observedHead = head.get();
+            Node<E> observedTail = tail.get();
+            Node<E> observedNext = observedHead.next.get();
+            if (observedNext == null) {
+                return Optional.empty();
+            }
+            if (observedHead == observedTail) {
+                // tail is lagging behind, help advancing it before moving head past it
+                tail.compareAndSet(observedTail, observedNext);
+            } else if (head.compareAndSet(observedHead, observedNext)) {
+                // the next node becomes the new dummy node
+                backoff.onSuccess(failures);
+                return Optional.of(observedNext.value);
+            }
+            failures += 1;
+            backoff.onFailure(failures);
+        }
+    }
+
+    public Optional<E> peek() {
+        Node<E> first = head.get().next.get();
+        return first == null ? Optional.empty() : Optional.of(first.value);
+    }
+
+    public boolean isEmpty() {
+        return head.get().next.get() == null;
+    }
 
     private static class Node<E> {
         final E value;
-        Node<E> next;
+        final AtomicReference<Node<E>> next = new AtomicReference<>(null);
         Node(E value) {
             this.value = value;
         }
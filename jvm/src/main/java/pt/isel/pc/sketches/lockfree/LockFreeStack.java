@@ -3,36 +3,90 @@ package pt.isel.pc.sketches.lockfree;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicReference;
 
+// Treiber stack, optionally with elimination backoff:
+// after a failed CAS on head, a push and a pop try to cancel each other on an elimination array,
+// before retrying on head.
+// A backoff strategy defines what happens between a failed CAS on head and the next attempt,
+// after the elimination attempt, if any.
 public class LockFreeStack<E> {
 
     private final AtomicReference<Node<E>> head = new AtomicReference<>(null);
+    // null if elimination is disabled
+    private final EliminationArray<Node<E>> elimination;
+    private final BackoffStrategy backoff;
+
+    public LockFreeStack() {
+        this(BackoffStrategy.none());
+    }
+
+    public LockFreeStack(BackoffStrategy backoff) {
+        this.elimination = null;
+        this.backoff = backoff;
+    }
+
+    // Uses elimination backoff, with at most maxEliminationWidth slots
+    public LockFreeStack(int maxEliminationWidth) {
+        this(maxEliminationWidth, BackoffStrategy.none());
+    }
+
+    public LockFreeStack(int maxEliminationWidth, BackoffStrategy backoff) {
+        this.elimination = new EliminationArray<>(maxEliminationWidth);
+        this.backoff = backoff;
+    }
 
     public void push(E e) {
         Node<E> mynode = new Node<>(e);
         Node<E> observedHead;
-        do {
+        int failures = 0;
+        while (true) {
             observedHead = head.get();
             mynode.next = observedHead;
-        } while (!head.compareAndSet(observedHead, mynode));
-        // exits the while when the CAS was successful
+            if (head.compareAndSet(observedHead, mynode)) {
+                backoff.onSuccess(failures);
+                return;
+            }
+            failures += 1;
+            // contention on head, try to meet a pop instead
+            if (elimination != null && elimination.tryPush(mynode)) {
+                return;
+            }
+            backoff.onFailure(failures);
+        }
     }
 
     public Optional<E> pop() {
+        return Optional.ofNullable(pollOrNull());
+    }
+
+    // Same as pop, without allocating an Optional, returning null if the stack is empty
+    public E pollOrNull() {
         Node<E> observedHead;
         Node<E> observedNext;
-        do {
+        int failures = 0;
+        while (true) {
             observedHead = head.get();
             if (observedHead == null) {
-                return Optional.empty();
+                return null;
             }
             // observedHead is not null
             observedNext = observedHead.next;
-        } while (!head.compareAndSet(observedHead, observedNext));
-        // Is this use of observedHead safe?
-        return Optional.of(observedHead.value);
+            if (head.compareAndSet(observedHead, observedNext)) {
+                backoff.onSuccess(failures);
+                // Is this use of observedHead safe?
+                return observedHead.value;
+            }
+            failures += 1;
+            // contention on head, try to meet a push instead
+            if (elimination != null) {
+                Node<E> eliminated = elimination.tryPop();
+                if (eliminated != null) {
+                    return eliminated.value;
+                }
+            }
+            backoff.onFailure(failures);
+        }
     }
 
-
     private static class Node<E> {
         final E value;
         Node<E> next;
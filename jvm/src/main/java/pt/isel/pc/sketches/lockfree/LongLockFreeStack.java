@@ -0,0 +1,117 @@
+package pt.isel.pc.sketches.lockfree;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Bounded Treiber stack of long values, without allocation after construction, e.g. to be used as a free-list of ids.
+// - the nodes are the indexes of preallocated arrays with the values and the next links
+// - the unused nodes are kept on a second Treiber stack, the free-list, from where push takes its node
+//   and to where pop returns it
+// - since nodes are reused, a head observed by a thread can be popped and pushed again before that thread's CAS (ABA),
+//   so each head has a tag incremented on every change, and the CAS compares both the tag and the node
+//   (the 32 bit tag wraps around, which is only a problem if a thread is delayed during 2^32 changes)
+// A backoff strategy defines what happens between a failed CAS on a head and the next attempt.
+public class LongLockFreeStack {
+
+    private static final int NIL = -1;
+
+    private final long[] values;
+    // next[i] is only changed by the thread owning node i, i.e., that removed it from one of the stacks.
+    // Other threads may read it while it is being changed, but then their CAS fails due to the tag.
+    private final int[] next;
+    private final AtomicLong head = new AtomicLong(tagged(0, NIL));
+    private final AtomicLong freeHead;
+    private final BackoffStrategy backoff;
+
+    public LongLockFreeStack(int capacity) {
+        this(capacity, BackoffStrategy.none());
+    }
+
+    public LongLockFreeStack(int capacity, BackoffStrategy backoff) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        values = new long[capacity];
+        next = new int[capacity];
+        for (int i = 0; i < capacity; ++i) {
+            next[i] = i + 1 < capacity ? i + 1 : NIL;
+        }
+        freeHead = new AtomicLong(tagged(0, 0));
+        this.backoff = backoff;
+    }
+
+    public int capacity() {
+        return values.length;
+    }
+
+    public boolean isEmpty() {
+        return index(head.get()) == NIL;
+    }
+
+    // Returns false if the stack is full
+    public boolean push(long value) {
+        int node = removeFrom(freeHead);
+        if (node == NIL) {
+            return false;
+        }
+        values[node] = value;
+        // the CAS on head publishes the value
+        addTo(head, node);
+        return true;
+    }
+
+    // Returns valueIfEmpty if the stack is empty
+    public long pollOrElse(long valueIfEmpty) {
+        int node = removeFrom(head);
+        if (node == NIL) {
+            return valueIfEmpty;
+        }
+        long value = values[node];
+        addTo(freeHead, node);
+        return value;
+    }
+
+    private void addTo(AtomicLong stackHead, int node) {
+        int failures = 0;
+        while (true) {
+            long observedHead = stackHead.get();
+            next[node] = index(observedHead);
+            if (stackHead.compareAndSet(observedHead, tagged(tag(observedHead) + 1, node))) {
+                backoff.onSuccess(failures);
+                return;
+            }
+            failures += 1;
+            backoff.onFailure(failures);
+        }
+    }
+
+    private int removeFrom(AtomicLong stackHead) {
+        int failures = 0;
+        while (true) {
+            long observedHead = stackHead.get();
+            int node = index(observedHead);
+            if (node == NIL) {
+                return NIL;
+            }
+            // may be stale, if node was meanwhile removed, but then the tag changed and the CAS fails
+            int observedNext = next[node];
+            if (stackHead.compareAndSet(observedHead, tagged(tag(observedHead) + 1, observedNext))) {
+                backoff.onSuccess(failures);
+                return node;
+            }
+            failures += 1;
+            backoff.onFailure(failures);
+        }
+    }
+
+    private static long tagged(int tag, int index) {
+        return ((long) tag << 32) | (index & 0xFFFF_FFFFL);
+    }
+
+    private static int tag(long taggedIndex) {
+        return (int) (taggedIndex >>> 32);
+    }
+
+    private static int index(long taggedIndex) {
+        return (int) taggedIndex;
+    }
+}
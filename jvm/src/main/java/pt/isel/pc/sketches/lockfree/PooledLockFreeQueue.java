@@ -0,0 +1,120 @@
+package pt.isel.pc.sketches.lockfree;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+// Michael-Scott queue that reuses its nodes, using epoch-based reclamation (see LockFreeQueue).
+// - both offer and poll run inside critical sections, since both read the next of nodes observed on head or tail,
+//   which would be wrong if those nodes were reused meanwhile, e.g., linking a new node to a reused node
+//   that is no longer in the queue
+// - the old dummy node is retired after head moves past it, and head never moves past tail,
+//   so retired nodes are not reachable from head nor tail
+// - poll reads the value before the CAS on head, since after it the node becomes the dummy node,
+//   which can be retired by a concurrent poll
+// A backoff strategy defines what happens between a failed CAS, or a help to a lagging tail, and the next attempt.
+public class PooledLockFreeQueue<E> {
+
+    private static final int DEFAULT_MAX_POOLED_PER_THREAD = 1024;
+
+    private final AtomicReference<Node<E>> head;
+    private final AtomicReference<Node<E>> tail;
+    private final EpochReclamation<Node<E>> reclamation;
+    private final BackoffStrategy backoff;
+
+    public PooledLockFreeQueue() {
+        this(DEFAULT_MAX_POOLED_PER_THREAD);
+    }
+
+    public PooledLockFreeQueue(int maxPooledPerThread) {
+        this(maxPooledPerThread, BackoffStrategy.none());
+    }
+
+    public PooledLockFreeQueue(int maxPooledPerThread, BackoffStrategy backoff) {
+        this.backoff = backoff;
+        reclamation = new EpochReclamation<>(Node::new, maxPooledPerThread);
+        Node<E> dummy = new Node<>();
+        head = new AtomicReference<>(dummy);
+        tail = new AtomicReference<>(dummy);
+    }
+
+    public void offer(E e) {
+        if (e == null) {
+            throw new IllegalArgumentException("element must not be null");
+        }
+        Node<E> mynode = reclamation.allocate();
+        mynode.value = e;
+        mynode.next.set(null);
+        reclamation.enter();
+        try {
+            int failures = 0;
+            while (true) {
+                Node<E> observedTail = tail.get();
+                Node<E> observedNext = observedTail.next.get();
+                if (observedNext == null) {
+                    if (observedTail.next.compareAndSet(null, mynode)) {
+                        // fails if some other thread already helped, which is fine
+                        tail.compareAndSet(observedTail, mynode);
+                        backoff.onSuccess(failures);
+                        return;
+                    }
+                } else {
+                    // tail is lagging behind, help advancing it
+                    tail.compareAndSet(observedTail, observedNext);
+                }
+                failures += 1;
+                backoff.onFailure(failures);
+            }
+        } finally {
+            reclamation.exit();
+        }
+    }
+
+    // Returns null if the queue is empty
+    public E pollOrNull() {
+        reclamation.enter();
+        try {
+            int failures = 0;
+            while (true) {
+                Node<E> observedHead = head.get();
+                Node<E> observedTail = tail.get();
+                Node<E> observedNext = observedHead.next.get();
+                if (observedNext == null) {
+                    return null;
+                }
+                if (observedHead == observedTail) {
+                    // tail is lagging behind, help advancing it before moving head past it
+                    tail.compareAndSet(observedTail, observedNext);
+                    failures += 1;
+                    backoff.onFailure(failures);
+                    continue;
+                }
+                E value = observedNext.value;
+                // the next node becomes the new dummy node
+                if (head.compareAndSet(observedHead, observedNext)) {
+                    backoff.onSuccess(failures);
+                    // only this thread moved head to observedNext, so no other poll uses its value
+                    observedNext.value = null;
+                    reclamation.retire(observedHead);
+                    return value;
+                }
+                failures += 1;
+                backoff.onFailure(failures);
+            }
+        } finally {
+            reclamation.exit();
+        }
+    }
+
+    public boolean isEmpty() {
+        reclamation.enter();
+        try {
+            return head.get().next.get() == null;
+        } finally {
+            reclamation.exit();
+        }
+    }
+
+    private static class Node<E> {
+        E value;
+        final AtomicReference<Node<E>> next = new AtomicReference<>(null);
+    }
+}
@@ -0,0 +1,88 @@
+package pt.isel.pc.sketches.lockfree;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+// Treiber stack that reuses its nodes, using epoch-based reclamation.
+// In LockFreeStack, the use of observedHead after the CAS is only safe because a node is never reused
+// while some thread still references it (the GC guarantees that).
+// Here, pop runs inside a critical section, so observedHead can't be reused until pop ends,
+// and a successful CAS on head means that observedHead.next is still the next node (no ABA).
+// Push doesn't need a critical section: if observedHead was popped and pushed again in the meanwhile,
+// it is still a correct next for the new node.
+// A backoff strategy defines what happens between a failed CAS on head and the next attempt.
+public class PooledLockFreeStack<E> {
+
+    private static final int DEFAULT_MAX_POOLED_PER_THREAD = 1024;
+
+    private final AtomicReference<Node<E>> head = new AtomicReference<>(null);
+    private final EpochReclamation<Node<E>> reclamation;
+    private final BackoffStrategy backoff;
+
+    public PooledLockFreeStack() {
+        this(DEFAULT_MAX_POOLED_PER_THREAD);
+    }
+
+    public PooledLockFreeStack(int maxPooledPerThread) {
+        this(maxPooledPerThread, BackoffStrategy.none());
+    }
+
+    public PooledLockFreeStack(int maxPooledPerThread, BackoffStrategy backoff) {
+        reclamation = new EpochReclamation<>(Node::new, maxPooledPerThread);
+        this.backoff = backoff;
+    }
+
+    public void push(E e) {
+        if (e == null) {
+            throw new IllegalArgumentException("element must not be null");
+        }
+        Node<E> mynode = reclamation.allocate();
+        mynode.value = e;
+        int failures = 0;
+        while (true) {
+            Node<E> observedHead = head.get();
+            mynode.next = observedHead;
+            if (head.compareAndSet(observedHead, mynode)) {
+                backoff.onSuccess(failures);
+                return;
+            }
+            failures += 1;
+            backoff.onFailure(failures);
+        }
+    }
+
+    // Returns null if the stack is empty
+    public E pollOrNull() {
+        reclamation.enter();
+        try {
+            int failures = 0;
+            while (true) {
+                Node<E> observedHead = head.get();
+                if (observedHead == null) {
+                    return null;
+                }
+                Node<E> observedNext = observedHead.next;
+                if (head.compareAndSet(observedHead, observedNext)) {
+                    backoff.onSuccess(failures);
+                    E value = observedHead.value;
+                    observedHead.value = null;
+                    observedHead.next = null;
+                    reclamation.retire(observedHead);
+                    return value;
+                }
+                failures += 1;
+                backoff.onFailure(failures);
+            }
+        } finally {
+            reclamation.exit();
+        }
+    }
+
+    public boolean isEmpty() {
+        return head.get() == null;
+    }
+
+    private static class Node<E> {
+        E value;
+        Node<E> next;
+    }
+}
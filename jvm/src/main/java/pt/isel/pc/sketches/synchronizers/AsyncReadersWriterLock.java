@@ -0,0 +1,270 @@
+package pt.isel.pc.sketches.synchronizers;
+
+import pt.isel.pc.utils.NodeLinkedList;
+import pt.isel.pc.utils.SynchronizerMetrics;
+import pt.isel.pc.utils.TimerWheel;
+import pt.isel.pc.utils.Timeouts;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Asynchronous readers-writer lock, with the same phase-fair policy as ReadersWriterLock2's default:
+// new readers wait while there is an active or waiting writer, and a writer ending releases all waiting readers.
+// - the start methods return futures that complete with true when the lock is acquired or false on timeout.
+//   Cancelling a future gives up on the request
+// - waiting readers are grouped in a batch, which is completed in constant time while holding the monitor,
+//   and whose futures are completed after releasing it. A completed batch never changes again.
+// - a request is only removed due to timeout or cancellation if it isn't done yet, which is decided while
+//   holding the monitor. A request that was cancelled after being done (i.e., after the lock was acquired
+//   on its behalf) releases the lock.
+// - futures are always completed without holding the monitor, so continuations never run inside it.
+//   Timeouts are handled on the common pool, so their continuations don't run on the shared timer wheel's thread
+public class AsyncReadersWriterLock {
+
+    private static class ReadBatch {
+        boolean isDone = false;
+        int nOfReaders = 0;
+        final NodeLinkedList<ReadRequest> requests = new NodeLinkedList<>();
+    }
+
+    private static class Request {
+        final CompletableFuture<Boolean> future = new CompletableFuture<>();
+        TimerWheel.Timeout timer;
+        // used by the metrics
+        long waitStart;
+    }
+
+    private static class ReadRequest extends Request {
+        final ReadBatch batch;
+        NodeLinkedList.Node<ReadRequest> node;
+
+        ReadRequest(ReadBatch batch) {
+            this.batch = batch;
+        }
+    }
+
+    private static class WriteRequest extends Request {
+        boolean isDone = false;
+        NodeLinkedList.Node<WriteRequest> node;
+    }
+
+    // mutable state, guarded by the monitor
+    private boolean isWriting = false;
+    private int nOfReaders = 0;
+    private final NodeLinkedList<WriteRequest> wrQueue = new NodeLinkedList<>();
+    private ReadBatch currentReadBatch = new ReadBatch();
+
+    private final Lock monitor = new ReentrantLock();
+    private final SynchronizerMetrics metrics;
+
+    public AsyncReadersWriterLock() {
+        this(SynchronizerMetrics.disabled());
+    }
+
+    public AsyncReadersWriterLock(SynchronizerMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public CompletableFuture<Boolean> startReadAsync(long timeout, TimeUnit timeoutUnit) {
+        ReadRequest request;
+        try {
+            monitor.lock();
+            //fast-path
+            if (!isWriting && wrQueue.isEmpty()) {
+                nOfReaders += 1;
+                metrics.onFastPath();
+                return CompletableFuture.completedFuture(true);
+            }
+            if (Timeouts.noWait(timeout)) {
+                return CompletableFuture.completedFuture(false);
+            }
+            request = new ReadRequest(currentReadBatch);
+            request.node = currentReadBatch.requests.push(request);
+            currentReadBatch.nOfReaders += 1;
+            request.waitStart = metrics.onWaitStart();
+            request.timer = TimerWheel.getShared().schedule(
+              () -> cancelRead(request, false), timeout, timeoutUnit, ForkJoinPool.commonPool());
+        } finally {
+            monitor.unlock();
+        }
+        request.future.whenComplete((result, throwable) -> {
+            if (throwable instanceof CancellationException) {
+                cancelRead(request, true);
+            }
+        });
+        return request.future;
+    }
+
+    public CompletableFuture<Boolean> startWriteAsync(long timeout, TimeUnit timeoutUnit) {
+        WriteRequest request;
+        try {
+            monitor.lock();
+            //fast-path
+            if (!isWriting && nOfReaders == 0) {
+                isWriting = true;
+                metrics.onFastPath();
+                return CompletableFuture.completedFuture(true);
+            }
+            if (Timeouts.noWait(timeout)) {
+                return CompletableFuture.completedFuture(false);
+            }
+            request = new WriteRequest();
+            request.node = wrQueue.push(request);
+            request.waitStart = metrics.onWaitStart();
+            request.timer = TimerWheel.getShared().schedule(
+              () -> cancelWrite(request, false), timeout, timeoutUnit, ForkJoinPool.commonPool());
+        } finally {
+            monitor.unlock();
+        }
+        request.future.whenComplete((result, throwable) -> {
+            if (throwable instanceof CancellationException) {
+                cancelWrite(request, true);
+            }
+        });
+        return request.future;
+    }
+
+    public void endRead() {
+        WriteRequest writer = null;
+        try {
+            monitor.lock();
+            nOfReaders -= 1;
+            if (nOfReaders == 0 && wrQueue.isNotEmpty()) {
+                writer = grantWriter();
+            }
+        } finally {
+            monitor.unlock();
+        }
+        if (writer != null) {
+            completeWriter(writer);
+        }
+    }
+
+    public void endWrite() {
+        ReadBatch batch = null;
+        WriteRequest writer = null;
+        try {
+            monitor.lock();
+            isWriting = false;
+            if (currentReadBatch.nOfReaders > 0) {
+                batch = grantReaders();
+            } else if (wrQueue.isNotEmpty()) {
+                writer = grantWriter();
+            }
+        } finally {
+            monitor.unlock();
+        }
+        if (batch != null) {
+            completeReaders(batch);
+        }
+        if (writer != null) {
+            completeWriter(writer);
+        }
+    }
+
+    private void cancelRead(ReadRequest request, boolean isCancellation) {
+        try {
+            monitor.lock();
+            if (request.batch.isDone || request.node == null) {
+                // too late, the batch completion (or the other cancellation cause) deals with it
+                return;
+            }
+            request.batch.requests.remove(request.node);
+            request.batch.nOfReaders -= 1;
+            request.node = null;
+        } finally {
+            monitor.unlock();
+        }
+        onCancelled(request, isCancellation);
+    }
+
+    private void cancelWrite(WriteRequest request, boolean isCancellation) {
+        ReadBatch batch = null;
+        try {
+            monitor.lock();
+            if (request.isDone || request.node == null) {
+                // too late, the grant (or the other cancellation cause) deals with it
+                return;
+            }
+            wrQueue.remove(request.node);
+            request.node = null;
+            // the readers that were waiting for this writer may now read
+            if (!isWriting && wrQueue.isEmpty() && currentReadBatch.nOfReaders > 0) {
+                batch = grantReaders();
+            }
+        } finally {
+            monitor.unlock();
+        }
+        onCancelled(request, isCancellation);
+        if (batch != null) {
+            completeReaders(batch);
+        }
+    }
+
+    private void onCancelled(Request request, boolean isCancellation) {
+        if (isCancellation) {
+            // the request's future is already completed (cancelled)
+            request.timer.cancel();
+            metrics.onWaitInterrupted(request.waitStart);
+        } else if (request.future.complete(false)) {
+            metrics.onWaitTimeout(request.waitStart);
+        } else {
+            // cancelled after the timeout removed it
+            metrics.onWaitInterrupted(request.waitStart);
+        }
+    }
+
+    // Must be called while holding the monitor
+    private ReadBatch grantReaders() {
+        ReadBatch batch = currentReadBatch;
+        nOfReaders += batch.nOfReaders;
+        batch.isDone = true;
+        // readers that arrive after this point belong to a new batch
+        currentReadBatch = new ReadBatch();
+        return batch;
+    }
+
+    // Must be called while holding the monitor
+    private WriteRequest grantWriter() {
+        WriteRequest writer = wrQueue.pull().value;
+        writer.isDone = true;
+        isWriting = true;
+        return writer;
+    }
+
+    // Must be called without holding the monitor
+    private void completeReaders(ReadBatch batch) {
+        int nOfCancelled = 0;
+        NodeLinkedList<ReadRequest> requests = batch.requests;
+        while (requests.isNotEmpty()) {
+            ReadRequest request = requests.pull().value;
+            request.timer.cancel();
+            if (request.future.complete(true)) {
+                metrics.onWaitHandOff(request.waitStart);
+            } else {
+                // cancelled after the lock was acquired on its behalf
+                metrics.onWaitInterrupted(request.waitStart);
+                nOfCancelled += 1;
+            }
+        }
+        for (int i = 0; i < nOfCancelled; ++i) {
+            endRead();
+        }
+    }
+
+    // Must be called without holding the monitor
+    private void completeWriter(WriteRequest writer) {
+        writer.timer.cancel();
+        if (writer.future.complete(true)) {
+            metrics.onWaitHandOff(writer.waitStart);
+        } else {
+            // cancelled after the lock was acquired on its behalf
+            metrics.onWaitInterrupted(writer.waitStart);
+            endWrite();
+        }
+    }
+}
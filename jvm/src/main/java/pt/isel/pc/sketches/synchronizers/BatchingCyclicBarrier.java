@@ -0,0 +1,236 @@
+package pt.isel.pc.sketches.synchronizers;
+
+import pt.isel.pc.utils.Timeouts;
+
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Cyclic barrier using the same batching technique as ManualResetEventWithBatching, where each
+// barrier generation is a batch that is completed, in constant time, by the last arrival.
+// - arrivals are counted by a combining tree, so there isn't a single contended arrival counter
+//   and arriving never uses the monitor, except for the last arrival
+// - waiting parties first spin briefly and then push themselves to the lock-free waiter stack of the generation,
+//   so only tripping or breaking the barrier uses the monitor
+// - a generation is done when the barrier trips or breaks, and a completed generation never changes again,
+//   so its waiters are unparked after releasing the monitor
+// - the barrier breaks if a waiting party times out or is interrupted, or if the barrier action fails.
+//   The broken generation stays current, so all following waits fail, until reset is called
+// - the last arrival may have observed the generation before it was broken, so it checks it again, while holding
+//   the monitor, before running the barrier action, which never runs for a broken generation.
+//   After that check the generation is tripping and only a failing barrier action breaks it, so a party that
+//   times out or is interrupted meanwhile waits for the action to end and observes the trip,
+//   as with java.util.concurrent.CyclicBarrier
+// - reset while parties are arriving (and not just waiting) is a race, as with java.util.concurrent.CyclicBarrier
+public class BatchingCyclicBarrier {
+
+    private static class Generation {
+        volatile boolean isDone = false;
+        volatile boolean isBroken = false;
+        // true after the last party arrived and before the generation is done, guarded by the monitor
+        boolean isTripping = false;
+        final WaiterStack waiters = new WaiterStack();
+    }
+
+    private final CombiningTree arrivals;
+    private final Runnable barrierAction;
+    private final Lock monitor = new ReentrantLock();
+    // only changed while holding the monitor
+    private volatile Generation currentGeneration = new Generation();
+
+    public BatchingCyclicBarrier(int parties) {
+        this(parties, null);
+    }
+
+    public BatchingCyclicBarrier(int parties, Runnable barrierAction) {
+        this(parties, CombiningTree.DEFAULT_FAN_IN, barrierAction);
+    }
+
+    // The barrier action, if not null, is run by the last arrival before the other parties are released
+    public BatchingCyclicBarrier(int parties, int fanIn, Runnable barrierAction) {
+        this.arrivals = new CombiningTree(parties, fanIn);
+        this.barrierAction = barrierAction;
+    }
+
+    public int getParties() {
+        return arrivals.getNOfParties();
+    }
+
+    public boolean isBroken() {
+        return currentGeneration.isBroken;
+    }
+
+    // Returns true if the barrier tripped or false if the timeout expired, in which case the barrier is broken
+    public boolean await(long timeout, TimeUnit timeoutUnit) throws InterruptedException, BrokenBarrierException {
+        // read before arriving, so that it is the generation of this arrival
+        Generation myGeneration = currentGeneration;
+        if (myGeneration.isBroken) {
+            throw new BrokenBarrierException();
+        }
+        if (Thread.interrupted()) {
+            breakBarrier(myGeneration, null);
+            throw new InterruptedException();
+        }
+        if (arrivals.arrive()) {
+            trip(myGeneration);
+            return true;
+        }
+        if (Timeouts.noWait(timeout)) {
+            if (breakBarrier(myGeneration, null)) {
+                return false;
+            }
+            awaitTrip(myGeneration, null);
+            return completed(myGeneration);
+        }
+        long limit = Timeouts.start(timeout, timeoutUnit);
+        for (int i = 0; i < WaiterStack.SPINS; ++i) {
+            if (myGeneration.isDone) {
+                return completed(myGeneration);
+            }
+            Thread.onSpinWait();
+        }
+        WaiterStack.Node node = myGeneration.waiters.push(Thread.currentThread());
+        if (node == null) {
+            // the stack is only closed after the generation is done
+            return completed(myGeneration);
+        }
+        while (true) {
+            if (myGeneration.isDone) {
+                return completed(myGeneration);
+            }
+
+            long remaining = Timeouts.remaining(limit);
+            if (Timeouts.isTimeout(remaining)) {
+                if (breakBarrier(myGeneration, node)) {
+                    return false;
+                }
+                awaitTrip(myGeneration, node);
+                return completed(myGeneration);
+            }
+
+            LockSupport.parkNanos(this, remaining);
+            if (Thread.interrupted()) {
+                if (breakBarrier(myGeneration, node)) {
+                    throw new InterruptedException();
+                }
+                awaitTrip(myGeneration, node);
+                Thread.currentThread().interrupt();
+                return completed(myGeneration);
+            }
+        }
+    }
+
+    // Breaks the current generation, if any party is waiting, and starts a new one
+    public void reset() {
+        WaiterStack waiters = null;
+        monitor.lock();
+        try {
+            Generation generation = currentGeneration;
+            // a tripping generation is completed by its last party
+            if (!generation.isDone && !generation.isTripping) {
+                generation.isBroken = true;
+                generation.isDone = true;
+                waiters = generation.waiters;
+            }
+            arrivals.reset();
+            currentGeneration = new Generation();
+        } finally {
+            monitor.unlock();
+        }
+        if (waiters != null) {
+            wakeAll(waiters);
+        }
+    }
+
+    private void trip(Generation generation) throws BrokenBarrierException {
+        monitor.lock();
+        try {
+            if (generation.isBroken) {
+                // broken by a waiting party, before this arrival observed it, so the action must not run
+                throw new BrokenBarrierException();
+            }
+            generation.isTripping = true;
+        } finally {
+            monitor.unlock();
+        }
+        if (barrierAction != null) {
+            try {
+                barrierAction.run();
+            } catch (RuntimeException | Error e) {
+                monitor.lock();
+                try {
+                    generation.isBroken = true;
+                    generation.isDone = true;
+                } finally {
+                    monitor.unlock();
+                }
+                wakeAll(generation.waiters);
+                throw e;
+            }
+        }
+        monitor.lock();
+        try {
+            // a reset while the action was running already started a new generation
+            if (currentGeneration == generation) {
+                // there are no arrivals in progress, since all the parties arrived and none was released yet
+                arrivals.reset();
+                currentGeneration = new Generation();
+            }
+            generation.isDone = true;
+        } finally {
+            monitor.unlock();
+        }
+        wakeAll(generation.waiters);
+    }
+
+    // Returns true if the generation was broken by this call, i.e., if it wasn't already done or tripping.
+    // The node, if not null, is the caller's own node, which doesn't need to be woken.
+    private boolean breakBarrier(Generation generation, WaiterStack.Node node) {
+        monitor.lock();
+        try {
+            if (generation.isDone || generation.isTripping) {
+                return false;
+            }
+            if (node != null) {
+                WaiterStack.cancel(node);
+            }
+            generation.isBroken = true;
+            generation.isDone = true;
+        } finally {
+            monitor.unlock();
+        }
+        wakeAll(generation.waiters);
+        return true;
+    }
+
+    // Waits, ignoring timeouts and interrupts, until a generation that can no longer be broken by the caller is done,
+    // which only takes as long as the barrier action. The node, if not null, is the caller's own node.
+    private void awaitTrip(Generation generation, WaiterStack.Node node) {
+        if (node == null) {
+            node = generation.waiters.push(Thread.currentThread());
+        }
+        boolean isInterrupted = false;
+        // a null node means the stack is closed, i.e., the generation is done
+        while (node != null && !generation.isDone) {
+            LockSupport.park(this);
+            isInterrupted |= Thread.interrupted();
+        }
+        if (isInterrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static boolean completed(Generation generation) throws BrokenBarrierException {
+        if (generation.isBroken) {
+            throw new BrokenBarrierException();
+        }
+        return true;
+    }
+
+    // Must be called after the generation is done, and without holding the monitor
+    private static void wakeAll(WaiterStack waiters) {
+        waiters.closeAndWakeAll();
+    }
+}
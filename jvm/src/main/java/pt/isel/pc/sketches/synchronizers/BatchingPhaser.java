@@ -0,0 +1,265 @@
+package pt.isel.pc.sketches.synchronizers;
+
+import pt.isel.pc.utils.Timeouts;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Phaser using the same batching technique as ManualResetEventWithBatching, where each phase is a batch
+// that is completed, in constant time, by the last arrival.
+// - arrivals are counted by a combining tree, so there isn't a single contended arrival counter
+//   and arriving never uses the monitor, except for the last arrival of a phase
+// - as with java.util.concurrent.Phaser, registrations take effect on the current phase, unless all its parties
+//   already arrived, in which case they take effect on the next one.
+//   The combining tree of a phase is built for a fixed number of parties, so the parties registered during
+//   the phase are counted apart: the phase ends when the tree is full and all those parties also arrived,
+//   and an arrival that finds the tree full is one of them, since arrivals are anonymous.
+// - each phase has a new tree, for all its parties, so that a late arrival that still observes a previous
+//   generation never counts on the tree of another phase
+// - an arrival that finds its generation done (i.e., all its parties arrived) belongs to the next phase,
+//   so it waits for the advance, which is short, and arrives again on the next generation
+// - deregistrations are counted on the generation where they arrive, and the advancing thread seals that
+//   counter, so a deregistration either takes effect on the next phase or is retried on it.
+//   A deregistration counted before the generation was done but whose arrival found it done is equivalent to
+//   an arrival and deregistration on the next phase, so it doesn't arrive again
+// - waiting for an advance doesn't change the phaser, so a timeout or interruption only affects the waiter
+// - waiting parties first spin briefly and then push themselves to the lock-free waiter stack of the generation,
+//   so they never use the monitor
+// - the phaser terminates when there are no parties after an advance
+public class BatchingPhaser {
+
+    // value of unarrived after all the parties of the phase arrived
+    private static final int DONE = -1;
+    // value of nOfDeregistrations after the advancing thread read it
+    private static final int SEALED = Integer.MIN_VALUE;
+
+    private static class Generation {
+        final int phase;
+        final boolean isTerminated;
+        // null if the phase has no parties, besides the ones registered during the phase
+        final CombiningTree arrivals;
+        // parties registered during the phase that didn't arrive yet, plus one for the tree, or DONE
+        final AtomicInteger unarrived;
+        // parties registered during the phase, guarded by the monitor
+        int nOfRegistered = 0;
+        // deregistrations of the phase, incremented before arriving, or SEALED
+        final AtomicInteger nOfDeregistrations = new AtomicInteger(0);
+        volatile boolean isDone = false;
+        final WaiterStack waiters = new WaiterStack();
+
+        Generation(int phase, CombiningTree arrivals, boolean isTerminated) {
+            this.phase = phase;
+            this.arrivals = arrivals;
+            this.isTerminated = isTerminated;
+            this.unarrived = new AtomicInteger(arrivals != null ? 1 : 0);
+        }
+    }
+
+    private final int fanIn;
+    private final Lock monitor = new ReentrantLock();
+    // only changed while holding the monitor
+    private volatile Generation currentGeneration;
+    // registrations for the next phase, done after all the parties of the current one arrived, guarded by the monitor
+    private int nOfRegistrations = 0;
+
+    public BatchingPhaser(int parties) {
+        this(parties, CombiningTree.DEFAULT_FAN_IN);
+    }
+
+    // With zero parties, the phaser only advances after parties are registered and arrive
+    public BatchingPhaser(int parties, int fanIn) {
+        if (parties < 0) {
+            throw new IllegalArgumentException("number of parties must not be negative");
+        }
+        this.fanIn = fanIn;
+        this.currentGeneration = new Generation(0, parties > 0 ? new CombiningTree(parties, fanIn) : null, false);
+    }
+
+    public int getPhase() {
+        return currentGeneration.phase;
+    }
+
+    public boolean isTerminated() {
+        return currentGeneration.isTerminated;
+    }
+
+    // Registers a new party, returning the phase where it starts to participate
+    public int register() {
+        monitor.lock();
+        try {
+            Generation generation = currentGeneration;
+            if (generation.isTerminated) {
+                throw new IllegalStateException("phaser is terminated");
+            }
+            if (incrementIfNot(generation.unarrived, DONE)) {
+                generation.nOfRegistered += 1;
+                return generation.phase;
+            }
+            // the phase is advancing
+            nOfRegistrations += 1;
+            return nextPhase(generation.phase);
+        } finally {
+            monitor.unlock();
+        }
+    }
+
+    // Arrives without waiting, returning the arrival phase
+    public int arrive() {
+        return arrive(false);
+    }
+
+    // Arrives without waiting and deregisters from the following phases, returning the arrival phase
+    public int arriveAndDeregister() {
+        return arrive(true);
+    }
+
+    // Returns true if the phaser advanced or false if the timeout expired
+    public boolean arriveAndAwaitAdvance(long timeout, TimeUnit timeoutUnit) throws InterruptedException {
+        return awaitAdvance(arrive(), timeout, timeoutUnit);
+    }
+
+    // Waits for the given phase to end, returning true if it ended or false if the timeout expired.
+    // Returns immediately if the current phase is not the given one.
+    public boolean awaitAdvance(int phase, long timeout, TimeUnit timeoutUnit) throws InterruptedException {
+        Generation generation = currentGeneration;
+        if (generation.phase != phase || generation.isTerminated) {
+            return true;
+        }
+        if (Timeouts.noWait(timeout)) {
+            return false;
+        }
+        long limit = Timeouts.start(timeout, timeoutUnit);
+        for (int i = 0; i < WaiterStack.SPINS; ++i) {
+            if (generation.isDone) {
+                return true;
+            }
+            Thread.onSpinWait();
+        }
+        WaiterStack.Node node = generation.waiters.push(Thread.currentThread());
+        if (node == null) {
+            // the stack is only closed after the generation is done
+            return true;
+        }
+        while (true) {
+            if (generation.isDone) {
+                return true;
+            }
+
+            long remaining = Timeouts.remaining(limit);
+            if (Timeouts.isTimeout(remaining)) {
+                return !giveUp(generation, node);
+            }
+
+            LockSupport.parkNanos(this, remaining);
+            if (Thread.interrupted()) {
+                if (giveUp(generation, node)) {
+                    throw new InterruptedException();
+                }
+                Thread.currentThread().interrupt();
+                return true;
+            }
+        }
+    }
+
+    private int arrive(boolean deregister) {
+        Generation generation = currentGeneration;
+        while (true) {
+            if (generation.isTerminated) {
+                throw new IllegalStateException("phaser is terminated");
+            }
+            // before arriving, so that the last arrival observes it
+            if (deregister && !incrementIfNot(generation.nOfDeregistrations, SEALED)) {
+                // the generation is already done, so this arrival belongs to the next one
+                generation = awaitNextGeneration(generation);
+                continue;
+            }
+            int result = generation.arrivals != null ? generation.arrivals.tryArrive() : CombiningTree.FULL;
+            if (result == CombiningTree.NOT_LAST) {
+                return generation.phase;
+            }
+            int observed = decrementUnarrived(generation);
+            if (observed == DONE) {
+                if (deregister) {
+                    // the advancing thread observes the deregistration, which takes effect on the next phase
+                    return nextPhase(generation.phase);
+                }
+                generation = awaitNextGeneration(generation);
+                continue;
+            }
+            if (observed == 1) {
+                advance(generation);
+            }
+            return generation.phase;
+        }
+    }
+
+    // Returns the value before decrementing, or DONE if all the parties of the phase already arrived
+    private static int decrementUnarrived(Generation generation) {
+        while (true) {
+            int observed = generation.unarrived.get();
+            if (observed == DONE) {
+                return DONE;
+            }
+            if (observed == 0) {
+                // a phase without parties
+                throw new IllegalStateException("more arrivals than parties");
+            }
+            if (generation.unarrived.compareAndSet(observed, observed == 1 ? DONE : observed - 1)) {
+                return observed;
+            }
+        }
+    }
+
+    private static boolean incrementIfNot(AtomicInteger counter, int value) {
+        while (true) {
+            int observed = counter.get();
+            if (observed == value) {
+                return false;
+            }
+            if (counter.compareAndSet(observed, observed + 1)) {
+                return true;
+            }
+        }
+    }
+
+    // Waits for the advance of a done generation, which doesn't take long since the advancing thread
+    // only needs the monitor to create the next generation
+    private Generation awaitNextGeneration(Generation generation) {
+        Generation next;
+        while ((next = currentGeneration) == generation) {
+            Thread.yield();
+        }
+        return next;
+    }
+
+    private void advance(Generation generation) {
+        monitor.lock();
+        try {
+            int nOfParties = (generation.arrivals != null ? generation.arrivals.getNOfParties() : 0)
+              + generation.nOfRegistered + nOfRegistrations - generation.nOfDeregistrations.getAndSet(SEALED);
+            nOfRegistrations = 0;
+            int phase = nextPhase(generation.phase);
+            currentGeneration = nOfParties == 0
+              ? new Generation(phase, null, true)
+              : new Generation(phase, new CombiningTree(nOfParties, fanIn), false);
+            generation.isDone = true;
+        } finally {
+            monitor.unlock();
+        }
+        // a completed generation never changes, so its waiters can be woken without the monitor
+        generation.waiters.closeAndWakeAll();
+    }
+
+    // Returns true if the generation wasn't completed before the waiter gave up
+    private static boolean giveUp(Generation generation, WaiterStack.Node node) {
+        WaiterStack.cancel(node);
+        return !generation.isDone;
+    }
+
+    private static int nextPhase(int phase) {
+        return (phase + 1) & Integer.MAX_VALUE;
+    }
+}
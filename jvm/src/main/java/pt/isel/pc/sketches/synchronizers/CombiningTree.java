@@ -0,0 +1,129 @@
+package pt.isel.pc.sketches.synchronizers;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+// Counts the arrivals of a fixed number of parties without a single contended counter.
+// - the parties are split across leaf nodes, each one counting at most fanIn arrivals
+// - the arrival that fills a node arrives at its parent, so the arrival that fills the root is the last one
+// - an arrival starts at the leaf selected by the thread identifier and moves to the next leaf if that one is full,
+//   so the leaves don't need to be statically assigned to threads
+// - reset must only be called when there aren't arrivals in progress, e.g. by the last arrival
+class CombiningTree {
+
+    static final int DEFAULT_FAN_IN = 8;
+
+    // results of tryArrive
+    static final int NOT_LAST = 0;
+    static final int LAST = 1;
+    static final int FULL = 2;
+
+    // number of ints in a cache line, so that each node counter is in a different cache line
+    private static final int STRIDE = 16;
+
+    private final int nOfParties;
+    private final int nOfLeaves;
+    // nodes are stored level by level, starting with the leaves, so the root is the last node
+    private final int[] capacities;
+    private final int[] parents;
+    private final AtomicIntegerArray counters;
+
+    CombiningTree(int nOfParties, int fanIn) {
+        if (nOfParties <= 0) {
+            throw new IllegalArgumentException("number of parties must be positive");
+        }
+        if (fanIn < 2) {
+            throw new IllegalArgumentException("fan-in must be at least 2");
+        }
+        this.nOfParties = nOfParties;
+        this.nOfLeaves = (nOfParties + fanIn - 1) / fanIn;
+
+        int nOfNodes = 0;
+        for (int levelSize = nOfLeaves; ; levelSize = (levelSize + fanIn - 1) / fanIn) {
+            nOfNodes += levelSize;
+            if (levelSize == 1) {
+                break;
+            }
+        }
+        capacities = new int[nOfNodes];
+        parents = new int[nOfNodes];
+        counters = new AtomicIntegerArray(nOfNodes * STRIDE);
+
+        // the capacity of a leaf is the number of parties it counts,
+        // and the capacity of any other node is its number of children
+        int levelStart = 0;
+        int levelSize = nOfLeaves;
+        int remaining = nOfParties;
+        for (int i = 0; i < nOfLeaves; ++i) {
+            capacities[i] = Math.min(fanIn, remaining);
+            remaining -= capacities[i];
+        }
+        while (levelSize > 1) {
+            int nextLevelStart = levelStart + levelSize;
+            for (int i = 0; i < levelSize; ++i) {
+                int parent = nextLevelStart + i / fanIn;
+                parents[levelStart + i] = parent;
+                capacities[parent] += 1;
+            }
+            levelStart = nextLevelStart;
+            levelSize = (levelSize + fanIn - 1) / fanIn;
+        }
+        parents[nOfNodes - 1] = -1;
+    }
+
+    int getNOfParties() {
+        return nOfParties;
+    }
+
+    // Returns true if this was the last arrival
+    boolean arrive() {
+        int result = tryArrive();
+        if (result == FULL) {
+            throw new IllegalStateException("more arrivals than parties");
+        }
+        return result == LAST;
+    }
+
+    // Like arrive, but returns FULL instead of throwing if all the parties already arrived
+    int tryArrive() {
+        int start = leafIndex();
+        for (int i = 0; i < nOfLeaves; ++i) {
+            int leaf = (start + i) % nOfLeaves;
+            while (true) {
+                int observed = counters.get(leaf * STRIDE);
+                if (observed == capacities[leaf]) {
+                    // full leaf, try the next one
+                    break;
+                }
+                if (counters.compareAndSet(leaf * STRIDE, observed, observed + 1)) {
+                    return observed + 1 == capacities[leaf] && arriveAtParents(leaf) ? LAST : NOT_LAST;
+                }
+            }
+        }
+        return FULL;
+    }
+
+    void reset() {
+        for (int i = 0; i < capacities.length; ++i) {
+            counters.set(i * STRIDE, 0);
+        }
+    }
+
+    // Called by the arrival that filled the node
+    private boolean arriveAtParents(int node) {
+        for (int parent = parents[node]; parent != -1; parent = parents[parent]) {
+            if (counters.incrementAndGet(parent * STRIDE) != capacities[parent]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int leafIndex() {
+        if (nOfLeaves == 1) {
+            return 0;
+        }
+        // spreads the thread identifiers across the leaves
+        long h = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+        return (int) ((h >>> 32) % nOfLeaves);
+    }
+}
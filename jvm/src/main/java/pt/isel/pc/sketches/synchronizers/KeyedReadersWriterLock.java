@@ -0,0 +1,204 @@
+package pt.isel.pc.sketches.synchronizers;
+
+import pt.isel.pc.sketches.lockfree.LockFreeBoundedQueue;
+import pt.isel.pc.utils.SynchronizerMetrics;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Readers-writer locking per key, in one of two modes
+// - striped: the keys are hashed onto a fixed array of locks, so different keys may share the same lock
+//   (i.e., may wait for each other), however memory usage doesn't depend on the number of keys
+// - exact: each key has its own lock while it is in use, i.e., while there are threads holding or waiting for it.
+//   The entries are reference counted and are removed from the map when the last thread leaves.
+//   The lock of a removed entry is idle, so it is kept in a bounded pool and reused for the next new entry,
+//   instead of creating a lock, with its monitor, conditions and reader indicator, every time an idle key is used.
+// The end methods must be called by the threads that successfully started the read or write on the same key.
+public abstract class KeyedReadersWriterLock<K> {
+
+    private static final int DEFAULT_MAX_POOLED_LOCKS = 64;
+
+    public static <K> KeyedReadersWriterLock<K> striped(int nOfStripes) {
+        return striped(nOfStripes, ReadersWriterLockPolicy.PHASE_FAIR);
+    }
+
+    public static <K> KeyedReadersWriterLock<K> striped(int nOfStripes, ReadersWriterLockPolicy policy) {
+        return new Striped<>(nOfStripes, policy);
+    }
+
+    public static <K> KeyedReadersWriterLock<K> exact() {
+        return exact(ReadersWriterLockPolicy.PHASE_FAIR);
+    }
+
+    public static <K> KeyedReadersWriterLock<K> exact(ReadersWriterLockPolicy policy) {
+        return exact(policy, DEFAULT_MAX_POOLED_LOCKS);
+    }
+
+    // The maximum number of pooled locks is rounded up to a power of two, with a minimum of two
+    public static <K> KeyedReadersWriterLock<K> exact(ReadersWriterLockPolicy policy, int maxPooledLocks) {
+        return new Exact<>(policy, maxPooledLocks);
+    }
+
+    private final ReadersWriterLockPolicy policy;
+
+    private KeyedReadersWriterLock(ReadersWriterLockPolicy policy) {
+        this.policy = policy;
+    }
+
+    public boolean startRead(K key, long timeout, TimeUnit timeoutUnit) throws InterruptedException {
+        ReadersWriterLock2 lock = retain(key);
+        boolean isReading = false;
+        try {
+            isReading = lock.startRead(timeout, timeoutUnit);
+            return isReading;
+        } finally {
+            if (!isReading) {
+                release(key);
+            }
+        }
+    }
+
+    public void endRead(K key) {
+        get(key).endRead();
+        release(key);
+    }
+
+    public boolean startWrite(K key, long timeout, TimeUnit timeoutUnit) throws InterruptedException {
+        ReadersWriterLock2 lock = retain(key);
+        boolean isWriting = false;
+        try {
+            isWriting = lock.startWrite(timeout, timeoutUnit);
+            return isWriting;
+        } finally {
+            if (!isWriting) {
+                release(key);
+            }
+        }
+    }
+
+    public void endWrite(K key) {
+        get(key).endWrite();
+        release(key);
+    }
+
+    // Number of locks currently in use, which is constant in the striped mode
+    public abstract int size();
+
+    // Returns the key's lock, ensuring it remains the key's lock until the matching release
+    abstract ReadersWriterLock2 retain(K key);
+
+    // Returns the key's lock, which must be retained by the calling thread
+    abstract ReadersWriterLock2 get(K key);
+
+    abstract void release(K key);
+
+    ReadersWriterLock2 newLock() {
+        // a single reader stripe, since each lock is only used by the threads accessing a subset of the keys
+        return new ReadersWriterLock2(1, policy, SynchronizerMetrics.disabled());
+    }
+
+    private static class Striped<K> extends KeyedReadersWriterLock<K> {
+
+        private final ReadersWriterLock2[] stripes;
+
+        Striped(int nOfStripes, ReadersWriterLockPolicy policy) {
+            super(policy);
+            if (nOfStripes <= 0) {
+                throw new IllegalArgumentException("number of stripes must be positive");
+            }
+            stripes = new ReadersWriterLock2[nOfStripes];
+            for (int i = 0; i < nOfStripes; ++i) {
+                stripes[i] = newLock();
+            }
+        }
+
+        @Override
+        public int size() {
+            return stripes.length;
+        }
+
+        @Override
+        ReadersWriterLock2 retain(K key) {
+            return get(key);
+        }
+
+        @Override
+        ReadersWriterLock2 get(K key) {
+            int h = key.hashCode();
+            // spreads the higher bits, since hash codes often only differ on those
+            h ^= h >>> 16;
+            return stripes[Math.floorMod(h, stripes.length)];
+        }
+
+        @Override
+        void release(K key) {
+            // stripes are never released
+        }
+    }
+
+    private static class Exact<K> extends KeyedReadersWriterLock<K> {
+
+        private static class Entry {
+            final ReadersWriterLock2 lock;
+            // number of threads holding or waiting for the lock, only changed inside the map's compute methods
+            int refCount = 0;
+
+            Entry(ReadersWriterLock2 lock) {
+                this.lock = lock;
+            }
+        }
+
+        private final ConcurrentHashMap<K, Entry> entries = new ConcurrentHashMap<>();
+        // locks of removed entries, which no thread holds or waits for
+        private final LockFreeBoundedQueue<ReadersWriterLock2> pool;
+
+        Exact(ReadersWriterLockPolicy policy, int maxPooledLocks) {
+            super(policy);
+            if (maxPooledLocks <= 0) {
+                throw new IllegalArgumentException("maximum number of pooled locks must be positive");
+            }
+            pool = new LockFreeBoundedQueue<>(maxPooledLocks);
+        }
+
+        @Override
+        public int size() {
+            return entries.size();
+        }
+
+        @Override
+        ReadersWriterLock2 retain(K key) {
+            return entries.compute(key, (k, entry) -> {
+                if (entry == null) {
+                    ReadersWriterLock2 lock = pool.poll();
+                    entry = new Entry(lock != null ? lock : newLock());
+                }
+                entry.refCount += 1;
+                return entry;
+            }).lock;
+        }
+
+        @Override
+        ReadersWriterLock2 get(K key) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                throw new IllegalStateException("lock for key is not held");
+            }
+            return entry.lock;
+        }
+
+        @Override
+        void release(K key) {
+            // an entry is only removed when no thread holds or waits for its lock,
+            // so a thread retaining the key afterwards always gets a free lock
+            entries.computeIfPresent(key, (k, entry) -> {
+                entry.refCount -= 1;
+                if (entry.refCount != 0) {
+                    return entry;
+                }
+                // if the pool is full, the lock is left to the GC
+                pool.offer(entry.lock);
+                return null;
+            });
+        }
+    }
+}
@@ -1,30 +1,47 @@
 package pt.isel.pc.sketches.synchronizers;
 
 import pt.isel.pc.utils.NodeLinkedList;
+import pt.isel.pc.utils.SynchronizerMetrics;
 import pt.isel.pc.utils.Timeouts;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReentrantLock;
 
+// - the state is volatile, so that awaiting an event that is already set doesn't use the monitor
+// - waiters are only added and completed while holding the monitor, and a waiter only adds itself
+//   after observing the reset state while holding the monitor, so that no set is missed
+// - set completes the waiters while holding the monitor and unparks them after releasing it,
+//   so that the woken waiters don't immediately block on the monitor
 public class ManualResetEvent {
 
     private static class Request {
-        boolean isDone = false;
+        final Thread thread = Thread.currentThread();
+        volatile boolean isDone = false;
     }
 
     // ManualResetEvent can be in the "set" (true) or "reset" (false) state
-    private boolean state;
+    private volatile boolean state;
     private final Lock monitor = new ReentrantLock();
-    private final Condition condition = monitor.newCondition();
     private final NodeLinkedList<Request> queue = new NodeLinkedList<>();
+    private final SynchronizerMetrics metrics;
 
     public ManualResetEvent(boolean initialState) {
+        this(initialState, SynchronizerMetrics.disabled());
+    }
+
+    public ManualResetEvent(boolean initialState, SynchronizerMetrics metrics) {
         state = initialState;
+        this.metrics = metrics;
     }
 
     public void reset() {
+        if(state == false) {
+            return;
+        }
         monitor.lock();
         try{
             state = false;
@@ -34,53 +51,89 @@ public class ManualResetEvent {
     }
 
     public void set() {
+        if(state == true) {
+            return;
+        }
+        List<Thread> threadsToWake = new ArrayList<>();
         monitor.lock();
         try{
             state = true;
             while(queue.isNotEmpty()) {
-                NodeLinkedList.Node<Request> requestToComplete = queue.pull();
-                requestToComplete.value.isDone = true;
+                Request requestToComplete = queue.pull().value;
+                requestToComplete.isDone = true;
+                threadsToWake.add(requestToComplete.thread);
             }
-            condition.signalAll();
         }finally {
             monitor.unlock();
         }
+        for(Thread thread : threadsToWake) {
+            LockSupport.unpark(thread);
+        }
     }
 
     // waits for the state to be set (i.e true)
     public boolean await(long timeout, TimeUnit timeoutUnit) throws InterruptedException {
+        // happy path, without the monitor
+        if(state == true) {
+            metrics.onFastPath();
+            return true;
+        }
+        if(Timeouts.noWait(timeout)) {
+            return false;
+        }
+        long limit = Timeouts.start(timeout, timeoutUnit);
+        NodeLinkedList.Node<Request> node;
         monitor.lock();
         try{
-            // happy path
             if(state == true) {
+                metrics.onFastPath();
                 return true;
             }
-            if(Timeouts.noWait(timeout)) {
-                return false;
+            node = queue.push(new Request());
+        }finally {
+            monitor.unlock();
+        }
+        long waitStart = metrics.onWaitStart();
+        while (true) {
+            // is condition true
+            if (node.value.isDone) {
+                metrics.onWaitHandOff(waitStart);
+                return true;
             }
-            long limit = Timeouts.start(timeout, timeoutUnit);
+
             long remaining = Timeouts.remaining(limit);
-            NodeLinkedList.Node<Request> node = queue.push(new Request());
-            while (true) {
-                try {
-                    condition.await(remaining, TimeUnit.MILLISECONDS);
-                }catch(InterruptedException e) {
-                    queue.remove(node);
-                    throw e;
+            // should we continue to wait
+            if (Timeouts.isTimeout(remaining)) {
+                if(giveUp(node)) {
+                    metrics.onWaitHandOff(waitStart);
+                    return true;
                 }
+                metrics.onWaitTimeout(waitStart);
+                return false;
+            }
 
-                // is condition true
-                if (node.value.isDone) {
+            LockSupport.parkNanos(this, remaining);
+            if (Thread.interrupted()) {
+                if(giveUp(node)) {
+                    Thread.currentThread().interrupt();
+                    metrics.onWaitHandOff(waitStart);
                     return true;
                 }
+                metrics.onWaitInterrupted(waitStart);
+                throw new InterruptedException();
+            }
+        }
+    }
 
-                remaining = Timeouts.remaining(limit);
-                // should we continue to wait
-                if (Timeouts.isTimeout(remaining)) {
-                    queue.remove(node);
-                    return false;
-                }
+    // Returns true if the request was completed meanwhile, i.e., if it is too late to give up
+    private boolean giveUp(NodeLinkedList.Node<Request> node) {
+        monitor.lock();
+        try{
+            if(node.value.isDone) {
+                return true;
             }
+            queue.remove(node);
+            return false;
         }finally {
             monitor.unlock();
         }
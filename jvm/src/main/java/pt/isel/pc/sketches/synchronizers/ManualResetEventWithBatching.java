@@ -1,30 +1,69 @@
 package pt.isel.pc.sketches.synchronizers;
 
 import pt.isel.pc.utils.NodeLinkedList;
+import pt.isel.pc.utils.SynchronizerMetrics;
+import pt.isel.pc.utils.TimerWheel;
 import pt.isel.pc.utils.Timeouts;
 
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReentrantLock;
 
+// - the state is volatile, so that awaiting an event that is already set doesn't use the monitor
+// - set completes the whole batch, in constant time, while holding the monitor
+//   and then unparks the batch waiters after releasing it
+// - a completed batch is never changed again, so the waiters list can be traversed without the monitor
+// Asynchronous waiters belong to the batches in the same way:
+// - set completes their futures after releasing the monitor, in the same pass that unparks the waiting threads
+// - a timeout or cancellation only removes the waiter if its batch isn't done yet, which is decided
+//   while holding the monitor, so exactly one of set, timeout or cancellation completes each future
+// - reset only replaces the current batch, so it never affects futures that are already completed
+// - a timeout completes its future on the common pool, and not on the shared timer wheel's thread,
+//   which would otherwise also run the non-async continuations of that future
 public class ManualResetEventWithBatching {
 
     private static class BatchRequest {
-        boolean isDone = false;
+        volatile boolean isDone = false;
+        final NodeLinkedList<Thread> waiters = new NodeLinkedList<>();
+        final NodeLinkedList<AsyncRequest> asyncWaiters = new NodeLinkedList<>();
+    }
+
+    private static class AsyncRequest {
+        final CompletableFuture<Boolean> future = new CompletableFuture<>();
+        final BatchRequest batch;
+        TimerWheel.Timeout timer;
+        NodeLinkedList.Node<AsyncRequest> node;
+        // used by the metrics
+        long waitStart;
+
+        AsyncRequest(BatchRequest batch) {
+            this.batch = batch;
+        }
     }
 
     // ManualResetEvent can be in the "set" (true) or "reset" (false) state
-    private boolean state;
+    private volatile boolean state;
     private final Lock monitor = new ReentrantLock();
-    private final Condition condition = monitor.newCondition();
     private BatchRequest currentBatchRequest = new BatchRequest();
+    private final SynchronizerMetrics metrics;
 
     public ManualResetEventWithBatching(boolean initialState) {
+        this(initialState, SynchronizerMetrics.disabled());
+    }
+
+    public ManualResetEventWithBatching(boolean initialState, SynchronizerMetrics metrics) {
         state = initialState;
+        this.metrics = metrics;
     }
 
     public void reset() {
+        if(state == false) {
+            return;
+        }
         monitor.lock();
         try{
             if(state == false) {
@@ -38,48 +77,176 @@ public class ManualResetEventWithBatching {
     }
 
     public void set() {
+        if(state == true) {
+            return;
+        }
+        BatchRequest batchToComplete;
         monitor.lock();
         try{
             if(state == true) {
                 return;
             }
             state = true;
-            currentBatchRequest.isDone = true;
-            condition.signalAll();
+            batchToComplete = currentBatchRequest;
+            batchToComplete.isDone = true;
         }finally {
             monitor.unlock();
         }
+        NodeLinkedList<Thread> waiters = batchToComplete.waiters;
+        while(waiters.isNotEmpty()) {
+            LockSupport.unpark(waiters.pull().value);
+        }
+        NodeLinkedList<AsyncRequest> asyncWaiters = batchToComplete.asyncWaiters;
+        while(asyncWaiters.isNotEmpty()) {
+            AsyncRequest request = asyncWaiters.pull().value;
+            request.timer.cancel();
+            if(request.future.complete(true)) {
+                metrics.onWaitHandOff(request.waitStart);
+            } else {
+                // cancelled after the batch was completed, so the cancellation didn't remove it
+                metrics.onWaitInterrupted(request.waitStart);
+            }
+        }
+    }
+
+    // waits asynchronously for the state to be set (i.e true), returning a future that completes with
+    // - true, if the state was set
+    // - false, if the timeout expired before the state was set
+    // Cancelling the returned future gives up on the wait
+    public CompletableFuture<Boolean> awaitAsync(long timeout, TimeUnit timeoutUnit) {
+        // happy path, without the monitor
+        if(state == true) {
+            metrics.onFastPath();
+            return CompletableFuture.completedFuture(true);
+        }
+        if(Timeouts.noWait(timeout)) {
+            return CompletableFuture.completedFuture(false);
+        }
+        AsyncRequest request;
+        monitor.lock();
+        try{
+            if(state == true) {
+                metrics.onFastPath();
+                return CompletableFuture.completedFuture(true);
+            }
+            request = new AsyncRequest(currentBatchRequest);
+            request.node = currentBatchRequest.asyncWaiters.push(request);
+            request.waitStart = metrics.onWaitStart();
+            // scheduled while holding the monitor, so that set always observes the timer
+            request.timer = TimerWheel.getShared().schedule(
+              () -> cancelDueToTimeout(request), timeout, timeoutUnit, ForkJoinPool.commonPool());
+        }finally {
+            monitor.unlock();
+        }
+        request.future.whenComplete((result, throwable) -> {
+            if (throwable instanceof CancellationException) {
+                cancelDueToCancellation(request);
+            }
+        });
+        return request.future;
     }
 
     // waits for the state to be set (i.e true)
     public boolean await(long timeout, TimeUnit timeoutUnit) throws InterruptedException {
+        // happy path, without the monitor
+        if(state == true) {
+            metrics.onFastPath();
+            return true;
+        }
+        if(Timeouts.noWait(timeout)) {
+            return false;
+        }
+        long limit = Timeouts.start(timeout, timeoutUnit);
+        BatchRequest myBatch;
+        NodeLinkedList.Node<Thread> node;
         monitor.lock();
         try{
-            // happy path
             if(state == true) {
+                metrics.onFastPath();
                 return true;
             }
-            if(Timeouts.noWait(timeout)) {
-                return false;
+            myBatch = currentBatchRequest;
+            node = myBatch.waiters.push(Thread.currentThread());
+        }finally {
+            monitor.unlock();
+        }
+        long waitStart = metrics.onWaitStart();
+        while (true) {
+            // is condition true
+            if (myBatch.isDone) {
+                metrics.onWaitHandOff(waitStart);
+                return true;
             }
-            long limit = Timeouts.start(timeout, timeoutUnit);
-            long remaining = Timeouts.remaining(limit);
-            BatchRequest myBatch = currentBatchRequest;
-            while (true) {
-                // TODO the absence of the catch needs some explanation
-                condition.await(remaining, TimeUnit.MILLISECONDS);
 
-                // is condition true
-                if (myBatch.isDone) {
+            long remaining = Timeouts.remaining(limit);
+            // should we continue to wait
+            if (Timeouts.isTimeout(remaining)) {
+                if(giveUp(myBatch, node)) {
+                    metrics.onWaitHandOff(waitStart);
                     return true;
                 }
+                metrics.onWaitTimeout(waitStart);
+                return false;
+            }
 
-                remaining = Timeouts.remaining(limit);
-                // should we continue to wait
-                if (Timeouts.isTimeout(remaining)) {
-                    return false;
+            LockSupport.parkNanos(this, remaining);
+            if (Thread.interrupted()) {
+                if(giveUp(myBatch, node)) {
+                    Thread.currentThread().interrupt();
+                    metrics.onWaitHandOff(waitStart);
+                    return true;
                 }
+                metrics.onWaitInterrupted(waitStart);
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    private void cancelDueToTimeout(AsyncRequest request) {
+        if(giveUpAsync(request)) {
+            if(request.future.complete(false)) {
+                metrics.onWaitTimeout(request.waitStart);
+            } else {
+                // cancelled after the timeout removed it
+                metrics.onWaitInterrupted(request.waitStart);
+            }
+        }
+    }
+
+    private void cancelDueToCancellation(AsyncRequest request) {
+        // the request's future is already completed (cancelled)
+        if(giveUpAsync(request)) {
+            request.timer.cancel();
+            metrics.onWaitInterrupted(request.waitStart);
+        }
+    }
+
+    // Returns true if the request was removed, i.e., if its batch wasn't completed meanwhile
+    // and it wasn't already removed by a timeout or cancellation
+    private boolean giveUpAsync(AsyncRequest request) {
+        monitor.lock();
+        try{
+            if(request.batch.isDone || request.node == null) {
+                return false;
+            }
+            request.batch.asyncWaiters.remove(request.node);
+            request.node = null;
+            return true;
+        }finally {
+            monitor.unlock();
+        }
+    }
+
+    // Returns true if the batch was completed meanwhile, i.e., if it is too late to give up.
+    // The batch itself stays, since other waiters may still be in it.
+    private boolean giveUp(BatchRequest batch, NodeLinkedList.Node<Thread> node) {
+        monitor.lock();
+        try{
+            if(batch.isDone) {
+                return true;
             }
+            batch.waiters.remove(node);
+            return false;
         }finally {
             monitor.unlock();
         }
@@ -0,0 +1,56 @@
+package pt.isel.pc.sketches.synchronizers;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Counts the readers inside a readers-writer lock, using one counter per stripe of threads,
+// so that readers running on different cores don't write to the same cache line.
+// - a reader arrives and departs on its own stripe
+// - a batch of readers may be added on the granting thread's stripe, so an individual stripe
+//   may become negative, however the sum is always the number of readers inside the lock
+// - checking for emptiness reads all the stripes, which is only done by writers
+class ReaderIndicator {
+
+    // number of longs in a cache line, so that each stripe is in a different cache line
+    private static final int STRIDE = 8;
+
+    private final int nOfStripes;
+    private final AtomicLongArray counters;
+
+    ReaderIndicator(int nOfStripes) {
+        if (nOfStripes <= 0) {
+            throw new IllegalArgumentException("number of stripes must be positive");
+        }
+        this.nOfStripes = nOfStripes;
+        this.counters = new AtomicLongArray(nOfStripes * STRIDE);
+    }
+
+    void arrive() {
+        counters.getAndIncrement(stripeIndex());
+    }
+
+    void depart() {
+        counters.getAndDecrement(stripeIndex());
+    }
+
+    void add(int nOfReaders) {
+        counters.getAndAdd(stripeIndex(), nOfReaders);
+    }
+
+    // Only exact if there aren't concurrent arrivals, i.e., if readers were prevented from entering
+    boolean isEmpty() {
+        long sum = 0;
+        for (int i = 0; i < nOfStripes; ++i) {
+            sum += counters.get(i * STRIDE);
+        }
+        return sum == 0;
+    }
+
+    private int stripeIndex() {
+        if (nOfStripes == 1) {
+            return 0;
+        }
+        // spreads the thread identifiers across the stripes
+        long h = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+        return (int) ((h >>> 32) % nOfStripes) * STRIDE;
+    }
+}
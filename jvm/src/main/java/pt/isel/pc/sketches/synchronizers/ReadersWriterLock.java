@@ -1,6 +1,7 @@
 package pt.isel.pc.sketches.synchronizers;
 
 import pt.isel.pc.utils.NodeLinkedList;
+import pt.isel.pc.utils.SynchronizerMetrics;
 import pt.isel.pc.utils.Timeouts;
 
 import java.util.concurrent.TimeUnit;
@@ -8,6 +9,13 @@ import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
+// Besides reading and writing, supports
+// - upgradeable reads: a reader that can atomically become a writer. There is at most one upgradeable reader
+//   (the upgrader) at a time, so that two readers never wait for each other to upgrade.
+//   While the upgrader waits to upgrade, new readers wait and it has priority over the waiting writers.
+// - downgrade: a writer atomically becomes a reader, releasing the waiting readers with it
+// The policy defines whether new readers wait for the waiting writers and who goes next when a writer ends.
+// The upgrader has priority over everyone else in all policies.
 public class ReadersWriterLock {
 
     private final Lock monitor = new ReentrantLock();
@@ -19,14 +27,41 @@ public class ReadersWriterLock {
     private final Condition readCondition = monitor.newCondition();
     private final NodeLinkedList<MutableBoolean> rdSet = new NodeLinkedList<>();
 
+    // true while some thread is the upgrader
+    private boolean hasUpgrader = false;
+    private final Condition upgraderCondition = monitor.newCondition();
+    // not null while the upgrader waits to upgrade
+    private Request upgradeRequest = null;
+
+    private final ReadersWriterLockPolicy policy;
+    private final SynchronizerMetrics metrics;
+
+    public ReadersWriterLock() {
+        this(ReadersWriterLockPolicy.PHASE_FAIR);
+    }
+
+    public ReadersWriterLock(SynchronizerMetrics metrics) {
+        this(ReadersWriterLockPolicy.PHASE_FAIR, metrics);
+    }
+
+    public ReadersWriterLock(ReadersWriterLockPolicy policy) {
+        this(policy, SynchronizerMetrics.disabled());
+    }
+
+    public ReadersWriterLock(ReadersWriterLockPolicy policy, SynchronizerMetrics metrics) {
+        this.policy = policy;
+        this.metrics = metrics;
+    }
+
     boolean startRead(long timeout, TimeUnit timeoutUnit)
       throws InterruptedException {
 
         try {
             monitor.lock();
             //fast-path
-            if (!isWriting && wrQueue.isEmpty()) {
+            if (!isWriting && upgradeRequest == null && !readersWaitForWriters()) {
                 nOfReaders += 1;
+                metrics.onFastPath();
                 return true;
             }
             if (Timeouts.noWait(timeout)) {
@@ -35,23 +70,28 @@ public class ReadersWriterLock {
             long deadline = Timeouts.start(timeout, timeoutUnit);
             long remaining = Timeouts.remaining(deadline);
             NodeLinkedList.Node<MutableBoolean> myreq = rdSet.push(new MutableBoolean());
+            long waitStart = metrics.onWaitStart();
             while (true) {
                 try {
-                    readCondition.await(remaining, TimeUnit.MILLISECONDS);
+                    readCondition.awaitNanos(remaining);
                 } catch (InterruptedException e) {
                     if (myreq.value.booleanValue) {
                         Thread.currentThread().interrupt();
+                        metrics.onWaitHandOff(waitStart);
                         return true;
                     }
                     rdSet.remove(myreq);
+                    metrics.onWaitInterrupted(waitStart);
                     throw e;
                 }
                 if (myreq.value.booleanValue) {
+                    metrics.onWaitHandOff(waitStart);
                     return true;
                 }
                 remaining = Timeouts.remaining(deadline);
                 if (Timeouts.isTimeout(remaining)) {
                     rdSet.remove(myreq);
+                    metrics.onWaitTimeout(waitStart);
                     return false;
                 }
             }
@@ -68,6 +108,7 @@ public class ReadersWriterLock {
             //fast-path
             if (!isWriting && nOfReaders == 0) {
                 isWriting = true;
+                metrics.onFastPath();
                 return true;
             }
             if (Timeouts.noWait(timeout)) {
@@ -76,31 +117,143 @@ public class ReadersWriterLock {
             long deadline = Timeouts.start(timeout, timeoutUnit);
             long remaining = Timeouts.remaining(deadline);
             NodeLinkedList.Node<Request> myreq = wrQueue.push(new Request(monitor));
+            long waitStart = metrics.onWaitStart();
             while (true) {
                 try {
-                    myreq.value.cond.await(remaining, TimeUnit.MILLISECONDS);
+                    myreq.value.cond.awaitNanos(remaining);
                 } catch (InterruptedException e) {
                     if (myreq.value.isAllowed) {
                         Thread.currentThread().interrupt();
+                        metrics.onWaitHandOff(waitStart);
                         return true;
                     }
                     wrQueue.remove(myreq);
-                    if(wrQueue.isEmpty() && !isWriting) {
+                    if(!isWriting && upgradeRequest == null && !readersWaitForWriters()) {
                         completeWaitingReaders();
                     }
+                    metrics.onWaitInterrupted(waitStart);
                     throw e;
                 }
                 if (myreq.value.isAllowed) {
+                    metrics.onWaitHandOff(waitStart);
                     return true;
                 }
                 remaining = Timeouts.remaining(deadline);
                 if (Timeouts.isTimeout(remaining)) {
                     wrQueue.remove(myreq);
-                    if(wrQueue.isEmpty() && !isWriting) {
+                    if(!isWriting && upgradeRequest == null && !readersWaitForWriters()) {
                         completeWaitingReaders();
                     }
+                    metrics.onWaitTimeout(waitStart);
+                    return false;
+                }
+            }
+        } finally {
+            monitor.unlock();
+        }
+    }
+
+    // Starts a read that can later be upgraded to a write
+    boolean startUpgradeableRead(long timeout, TimeUnit timeoutUnit)
+      throws InterruptedException {
+        try {
+            monitor.lock();
+            long deadline = Timeouts.start(timeout, timeoutUnit);
+            while (hasUpgrader) {
+                long remaining = Timeouts.remaining(deadline);
+                if (Timeouts.noWait(timeout) || Timeouts.isTimeout(remaining)) {
                     return false;
                 }
+                // all waiters are notified when the upgrader leaves, so there is no notification to forward
+                upgraderCondition.awaitNanos(remaining);
+            }
+            hasUpgrader = true;
+            boolean isReading = false;
+            try {
+                isReading = startRead(Math.max(0, Timeouts.remaining(deadline)), TimeUnit.NANOSECONDS);
+                return isReading;
+            } finally {
+                if (!isReading) {
+                    releaseUpgrader();
+                }
+            }
+        } finally {
+            monitor.unlock();
+        }
+    }
+
+    void endUpgradeableRead() {
+        try {
+            monitor.lock();
+            releaseUpgrader();
+            endRead();
+        } finally {
+            monitor.unlock();
+        }
+    }
+
+    // Atomically converts the upgradeable read into a write, i.e., no other writer can write in between.
+    // If it returns true, the write ends with endWrite, otherwise the thread is still the upgrader.
+    boolean upgrade(long timeout, TimeUnit timeoutUnit)
+      throws InterruptedException {
+        try {
+            monitor.lock();
+            //fast-path, the upgrader is the only reader
+            if (nOfReaders == 1) {
+                nOfReaders = 0;
+                isWriting = true;
+                releaseUpgrader();
+                metrics.onFastPath();
+                return true;
+            }
+            if (Timeouts.noWait(timeout)) {
+                return false;
+            }
+            long deadline = Timeouts.start(timeout, timeoutUnit);
+            long remaining = Timeouts.remaining(deadline);
+            Request myreq = new Request(monitor);
+            upgradeRequest = myreq;
+            long waitStart = metrics.onWaitStart();
+            while (true) {
+                try {
+                    myreq.cond.awaitNanos(remaining);
+                } catch (InterruptedException e) {
+                    if (myreq.isAllowed) {
+                        Thread.currentThread().interrupt();
+                        metrics.onWaitHandOff(waitStart);
+                        return true;
+                    }
+                    cancelUpgrade();
+                    metrics.onWaitInterrupted(waitStart);
+                    throw e;
+                }
+                if (myreq.isAllowed) {
+                    metrics.onWaitHandOff(waitStart);
+                    return true;
+                }
+                remaining = Timeouts.remaining(deadline);
+                if (Timeouts.isTimeout(remaining)) {
+                    cancelUpgrade();
+                    metrics.onWaitTimeout(waitStart);
+                    return false;
+                }
+            }
+        } finally {
+            monitor.unlock();
+        }
+    }
+
+    // Atomically converts the write into a read, i.e., no other writer can write in between.
+    // The read ends with endRead.
+    void downgrade() {
+        try {
+            monitor.lock();
+            isWriting = false;
+            nOfReaders += 1;
+            // the waiting readers can also read, unless the waiting writers go first,
+            // however the waiting writers must wait for all readers
+            if (!writersGoFirst()) {
+                completeWaitingReaders();
             }
         } finally {
             monitor.unlock();
@@ -111,7 +264,15 @@ public class ReadersWriterLock {
         try {
             monitor.lock();
             nOfReaders -= 1;
-            if (nOfReaders == 0 && wrQueue.isNotEmpty()) {
+            if (nOfReaders == 1 && upgradeRequest != null) {
+                // only the upgrader remains, so it can become the writer
+                nOfReaders = 0;
+                isWriting = true;
+                upgradeRequest.isAllowed = true;
+                upgradeRequest.cond.signal();
+                upgradeRequest = null;
+                releaseUpgrader();
+            } else if (nOfReaders == 0 && wrQueue.isNotEmpty()) {
                 NodeLinkedList.Node<Request> writer = wrQueue.pull();
                 writer.value.isAllowed = true;
                 writer.value.cond.signal();
@@ -126,7 +287,7 @@ public class ReadersWriterLock {
         try {
             monitor.lock();
             isWriting = false;
-            if (rdSet.isNotEmpty()) {
+            if (rdSet.isNotEmpty() && !writersGoFirst()) {
                 completeWaitingReaders();
             } else if (wrQueue.isNotEmpty()) {
                 NodeLinkedList.Node<Request> writer = wrQueue.pull();
@@ -140,6 +301,29 @@ public class ReadersWriterLock {
         }
     }
 
+    private void releaseUpgrader() {
+        hasUpgrader = false;
+        upgraderCondition.signalAll();
+    }
+
+    private void cancelUpgrade() {
+        upgradeRequest = null;
+        // the readers that arrived while the upgrader was waiting can now read, unless they wait for the writers
+        if (!readersWaitForWriters()) {
+            completeWaitingReaders();
+        }
+    }
+
+    // true if new readers must wait because there are waiting writers
+    private boolean readersWaitForWriters() {
+        return policy != ReadersWriterLockPolicy.READER_PREFERRING && wrQueue.isNotEmpty();
+    }
+
+    // true if the waiting writers go before the waiting readers when a writer ends
+    private boolean writersGoFirst() {
+        return policy == ReadersWriterLockPolicy.WRITER_PREFERRING && wrQueue.isNotEmpty();
+    }
+
     private void completeWaitingReaders() {
         while (rdSet.isNotEmpty()) {
             NodeLinkedList.Node<MutableBoolean> reader = rdSet.pull();
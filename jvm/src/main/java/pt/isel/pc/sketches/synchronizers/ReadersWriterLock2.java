@@ -1,33 +1,105 @@
 package pt.isel.pc.sketches.synchronizers;
 
-import pt.isel.pc.utils.NodeLinkedList;
+import pt.isel.pc.utils.IntrusiveLinkedList;
+import pt.isel.pc.utils.SynchronizerMetrics;
 import pt.isel.pc.utils.Timeouts;
 
+import java.lang.invoke.VarHandle;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
+// Readers-writer lock where readers only use the monitor if there is a writer active or waiting.
+// - the readers inside the lock are counted by a (striped) reader indicator, and not by a monitor protected field
+// - writerPresent is true while there is an active or waiting writer, and readersBlocked is true while new readers
+//   must wait. They are only changed while holding the monitor and are the same except for the reader-preferring
+//   policy, where new readers don't wait for the waiting writers.
+// - a reader arrives at the indicator and then checks readersBlocked, while a writer sets readersBlocked and
+//   then checks the indicator. Since both are volatile, either the reader observes the writer, and departs,
+//   or the writer observes the reader, and waits for it to leave.
+// - a departing reader only takes the monitor if writerPresent is true, to hand-off the lock to a waiting writer
+// Optimistic reads (similar to StampedLock) don't write any shared state:
+// - version is odd while there is an active writer, and is incremented when a writer starts and ends
+// - a reader obtains a stamp (the current even version), reads, and then validates that the version didn't change
+// - if validation fails, the read values may be inconsistent and the reader should fall back to startRead
+// Upgradeable reads, downgrades and policies have the same semantics as in ReadersWriterLock.
+// While the upgrader waits to upgrade, writerPresent is true and the upgrader is not in the reader indicator,
+// so that the last departing reader hands-off the lock to it.
 public class ReadersWriterLock2 {
 
     private final Lock monitor = new ReentrantLock();
 
     private boolean isWriting = false;
-    private int nOfReaders = 0;
+    private volatile boolean writerPresent = false;
+    private volatile boolean readersBlocked = false;
+    // only changed while holding the monitor, starts at 2 because 0 is the invalid stamp
+    private volatile long version = 2;
+    private final ReaderIndicator readers;
 
-    private final NodeLinkedList<Request> wrQueue = new NodeLinkedList<>();
+    private final IntrusiveLinkedList<Request> wrQueue = new IntrusiveLinkedList<>();
+    // each writer thread reuses the same request
+    private final ThreadLocal<Request> writeRequests = ThreadLocal.withInitial(() -> new Request(monitor));
 
     private final Condition readCondition = monitor.newCondition();
     private ReadRequest currentReadRequest = new ReadRequest();
 
+    // true while some thread is the upgrader
+    private boolean hasUpgrader = false;
+    private final Condition upgraderCondition = monitor.newCondition();
+    // not null while the upgrader waits to upgrade
+    private Request upgradeRequest = null;
+
+    private final ReadersWriterLockPolicy policy;
+    private final SynchronizerMetrics metrics;
+
+    public ReadersWriterLock2() {
+        this(1);
+    }
+
+    public ReadersWriterLock2(ReadersWriterLockPolicy policy) {
+        this(1, policy, SynchronizerMetrics.disabled());
+    }
+
+    // Read-mostly workloads should use a number of stripes close to the number of cores
+    public ReadersWriterLock2(int nOfReaderStripes) {
+        this(nOfReaderStripes, SynchronizerMetrics.disabled());
+    }
+
+    public ReadersWriterLock2(SynchronizerMetrics metrics) {
+        this(1, metrics);
+    }
+
+    public ReadersWriterLock2(int nOfReaderStripes, SynchronizerMetrics metrics) {
+        this(nOfReaderStripes, ReadersWriterLockPolicy.PHASE_FAIR, metrics);
+    }
+
+    public ReadersWriterLock2(int nOfReaderStripes, ReadersWriterLockPolicy policy, SynchronizerMetrics metrics) {
+        this.readers = new ReaderIndicator(nOfReaderStripes);
+        this.policy = policy;
+        this.metrics = metrics;
+    }
+
     boolean startRead(long timeout, TimeUnit timeoutUnit)
       throws InterruptedException {
 
+        // fast-path, without the monitor
+        if (!readersBlocked) {
+            readers.arrive();
+            if (!readersBlocked) {
+                metrics.onFastPath();
+                return true;
+            }
+            // a writer arrived meanwhile, so back off, which may need to hand-off the lock to that writer
+            departAndHandOff();
+        }
+
         try {
             monitor.lock();
-            //fast-path
-            if (!isWriting && wrQueue.isEmpty()) {
-                nOfReaders += 1;
+            //fast-path, retried while holding the monitor, where readersBlocked doesn't change
+            if (!readersBlocked) {
+                readers.arrive();
+                metrics.onFastPath();
                 return true;
             }
             if (Timeouts.noWait(timeout)) {
@@ -37,23 +109,28 @@ public class ReadersWriterLock2 {
             long remaining = Timeouts.remaining(deadline);
             currentReadRequest.nOfReaders += 1;
             ReadRequest myreq = currentReadRequest;
+            long waitStart = metrics.onWaitStart();
             while (true) {
                 try {
-                    readCondition.await(remaining, TimeUnit.MILLISECONDS);
+                    readCondition.awaitNanos(remaining);
                 } catch (InterruptedException e) {
                     if (myreq.isAllowed) {
                         Thread.currentThread().interrupt();
+                        metrics.onWaitHandOff(waitStart);
                         return true;
                     }
                     myreq.nOfReaders -= 1;
+                    metrics.onWaitInterrupted(waitStart);
                     throw e;
                 }
                 if (myreq.isAllowed) {
+                    metrics.onWaitHandOff(waitStart);
                     return true;
                 }
                 remaining = Timeouts.remaining(deadline);
                 if (Timeouts.isTimeout(remaining)) {
                     myreq.nOfReaders -= 1;
+                    metrics.onWaitTimeout(waitStart);
                     return false;
                 }
             }
@@ -68,39 +145,57 @@ public class ReadersWriterLock2 {
         try {
             monitor.lock();
             //fast-path
-            if (!isWriting && nOfReaders == 0) {
-                isWriting = true;
-                return true;
+            if (!isWriting && wrQueue.isEmpty() && upgradeRequest == null) {
+                // stops new readers from entering, before checking for the ones already inside
+                writerPresent = true;
+                readersBlocked = true;
+                if (readers.isEmpty()) {
+                    startWriting();
+                    metrics.onFastPath();
+                    return true;
+                }
             }
             if (Timeouts.noWait(timeout)) {
+                updateWriterPresent();
                 return false;
             }
             long deadline = Timeouts.start(timeout, timeoutUnit);
             long remaining = Timeouts.remaining(deadline);
-            NodeLinkedList.Node<Request> myreq = wrQueue.push(new Request(monitor));
+            Request myreq = writeRequests.get();
+            myreq.isAllowed = false;
+            wrQueue.push(myreq);
+            // with the reader-preferring policy, new readers can enter while this writer waits
+            updateWriterPresent();
+            long waitStart = metrics.onWaitStart();
             while (true) {
                 try {
-                    myreq.value.cond.await(remaining, TimeUnit.MILLISECONDS);
+                    myreq.cond.awaitNanos(remaining);
                 } catch (InterruptedException e) {
-                    if (myreq.value.isAllowed) {
+                    if (myreq.isAllowed) {
                         Thread.currentThread().interrupt();
+                        metrics.onWaitHandOff(waitStart);
                         return true;
                     }
                     wrQueue.remove(myreq);
-                    if(wrQueue.isEmpty() && !isWriting) {
+                    updateWriterPresent();
+                    if (!readersBlocked) {
                         completeWaitingReaders();
                     }
+                    metrics.onWaitInterrupted(waitStart);
                     throw e;
                 }
-                if (myreq.value.isAllowed) {
+                if (myreq.isAllowed) {
+                    metrics.onWaitHandOff(waitStart);
                     return true;
                 }
                 remaining = Timeouts.remaining(deadline);
                 if (Timeouts.isTimeout(remaining)) {
                     wrQueue.remove(myreq);
-                    if(wrQueue.isEmpty() && !isWriting) {
+                    updateWriterPresent();
+                    if (!readersBlocked) {
                         completeWaitingReaders();
                     }
+                    metrics.onWaitTimeout(waitStart);
                     return false;
                 }
             }
@@ -109,50 +204,253 @@ public class ReadersWriterLock2 {
         }
     }
 
-    void endRead() {
+    // Starts a read that can later be upgraded to a write
+    boolean startUpgradeableRead(long timeout, TimeUnit timeoutUnit)
+      throws InterruptedException {
+        try {
+            monitor.lock();
+            long deadline = Timeouts.start(timeout, timeoutUnit);
+            while (hasUpgrader) {
+                long remaining = Timeouts.remaining(deadline);
+                if (Timeouts.noWait(timeout) || Timeouts.isTimeout(remaining)) {
+                    return false;
+                }
+                // all waiters are notified when the upgrader leaves, so there is no notification to forward
+                upgraderCondition.awaitNanos(remaining);
+            }
+            hasUpgrader = true;
+            boolean isReading = false;
+            try {
+                isReading = startRead(Math.max(0, Timeouts.remaining(deadline)), TimeUnit.NANOSECONDS);
+                return isReading;
+            } finally {
+                if (!isReading) {
+                    releaseUpgrader();
+                }
+            }
+        } finally {
+            monitor.unlock();
+        }
+    }
+
+    void endUpgradeableRead() {
+        try {
+            monitor.lock();
+            releaseUpgrader();
+        } finally {
+            monitor.unlock();
+        }
+        endRead();
+    }
+
+    // Atomically converts the upgradeable read into a write, i.e., no other writer can write in between.
+    // If it returns true, the write ends with endWrite, otherwise the thread is still the upgrader.
+    boolean upgrade(long timeout, TimeUnit timeoutUnit)
+      throws InterruptedException {
+        try {
+            monitor.lock();
+            Request myreq = writeRequests.get();
+            myreq.isAllowed = false;
+            upgradeRequest = myreq;
+            // stops new readers from entering, before leaving the indicator and checking for the other readers
+            writerPresent = true;
+            readersBlocked = true;
+            readers.depart();
+            //fast-path, the upgrader was the only reader
+            if (readers.isEmpty()) {
+                upgradeRequest = null;
+                startWriting();
+                releaseUpgrader();
+                metrics.onFastPath();
+                return true;
+            }
+            if (Timeouts.noWait(timeout)) {
+                cancelUpgrade();
+                return false;
+            }
+            long deadline = Timeouts.start(timeout, timeoutUnit);
+            long remaining = Timeouts.remaining(deadline);
+            long waitStart = metrics.onWaitStart();
+            while (true) {
+                try {
+                    myreq.cond.awaitNanos(remaining);
+                } catch (InterruptedException e) {
+                    if (myreq.isAllowed) {
+                        Thread.currentThread().interrupt();
+                        metrics.onWaitHandOff(waitStart);
+                        return true;
+                    }
+                    cancelUpgrade();
+                    metrics.onWaitInterrupted(waitStart);
+                    throw e;
+                }
+                if (myreq.isAllowed) {
+                    metrics.onWaitHandOff(waitStart);
+                    return true;
+                }
+                remaining = Timeouts.remaining(deadline);
+                if (Timeouts.isTimeout(remaining)) {
+                    cancelUpgrade();
+                    metrics.onWaitTimeout(waitStart);
+                    return false;
+                }
+            }
+        } finally {
+            monitor.unlock();
+        }
+    }
+
+    // Atomically converts the write into a read, i.e., no other writer can write in between.
+    // The read ends with endRead.
+    void downgrade() {
         try {
             monitor.lock();
-            nOfReaders -= 1;
-            if (nOfReaders == 0 && wrQueue.isNotEmpty()) {
-                NodeLinkedList.Node<Request> writer = wrQueue.pull();
-                writer.value.isAllowed = true;
-                writer.value.cond.signal();
-                isWriting = true;
+            isWriting = false;
+            // the writer's changes are ordered before this (volatile) write
+            version += 1;
+            readers.arrive();
+            // the waiting readers can also read, unless the waiting writers go first,
+            // however the waiting writers must wait for all readers
+            if (!writersGoFirst()) {
+                completeWaitingReaders();
             }
+            updateWriterPresent();
         } finally {
             monitor.unlock();
         }
     }
 
+    void endRead() {
+        departAndHandOff();
+    }
+
     void endWrite() {
         try {
             monitor.lock();
             isWriting = false;
-            if (currentReadRequest.nOfReaders > 0) {
+            // the writer's changes are ordered before this (volatile) write
+            version += 1;
+            if (currentReadRequest.nOfReaders > 0 && !writersGoFirst()) {
                 completeWaitingReaders();
             } else if (wrQueue.isNotEmpty()) {
-                NodeLinkedList.Node<Request> writer = wrQueue.pull();
-                writer.value.isAllowed = true;
-                writer.value.cond.signal();
-                isWriting = true;
+                Request writer = wrQueue.pull();
+                writer.isAllowed = true;
+                writer.cond.signal();
+                startWriting();
             }
+            updateWriterPresent();
+
+        } finally {
+            monitor.unlock();
+        }
+    }
+
+    // Returns a stamp for an optimistic read, or 0 if there is an active writer
+    long tryOptimisticRead() {
+        long stamp = version;
+        return (stamp & 1) == 0 ? stamp : 0;
+    }
+
+    // Returns true if there wasn't any writer since the stamp was obtained,
+    // i.e., if the values read since then are consistent
+    boolean validate(long stamp) {
+        // ensures the reads done before validation are not reordered after the version read
+        VarHandle.acquireFence();
+        return stamp != 0 && version == stamp;
+    }
+
+    // Must be called while holding the monitor
+    private void startWriting() {
+        isWriting = true;
+        version += 1;
+        // ensures the version change is visible before any of the writer's changes
+        VarHandle.storeStoreFence();
+    }
 
+    private void departAndHandOff() {
+        readers.depart();
+        if (!writerPresent) {
+            return;
+        }
+        try {
+            monitor.lock();
+            if (!isWriting && (upgradeRequest != null || wrQueue.isNotEmpty()) && readersAreGone()) {
+                // the upgrader has priority over the waiting writers
+                Request writer;
+                if (upgradeRequest != null) {
+                    writer = upgradeRequest;
+                    upgradeRequest = null;
+                    releaseUpgrader();
+                } else {
+                    writer = wrQueue.pull();
+                }
+                writer.isAllowed = true;
+                writer.cond.signal();
+                startWriting();
+            }
         } finally {
             monitor.unlock();
         }
     }
 
+    // Must be called while holding the monitor.
+    // With the reader-preferring policy new readers may be entering, so they are stopped before checking
+    // the indicator and allowed again if there are readers inside.
+    private boolean readersAreGone() {
+        if (readersBlocked) {
+            return readers.isEmpty();
+        }
+        readersBlocked = true;
+        if (readers.isEmpty()) {
+            return true;
+        }
+        readersBlocked = false;
+        return false;
+    }
+
+    // Must be called while holding the monitor
+    private void updateWriterPresent() {
+        writerPresent = isWriting || wrQueue.isNotEmpty() || upgradeRequest != null;
+        readersBlocked = isWriting || upgradeRequest != null
+          || (policy != ReadersWriterLockPolicy.READER_PREFERRING && wrQueue.isNotEmpty());
+    }
+
+    // Must be called while holding the monitor.
+    // True if the waiting writers go before the waiting readers when a writer ends
+    private boolean writersGoFirst() {
+        return policy == ReadersWriterLockPolicy.WRITER_PREFERRING && wrQueue.isNotEmpty();
+    }
+
+    // Must be called while holding the monitor
+    private void releaseUpgrader() {
+        hasUpgrader = false;
+        upgraderCondition.signalAll();
+    }
+
+    // Must be called while holding the monitor
+    private void cancelUpgrade() {
+        // back to being a reader, before allowing writers in
+        readers.arrive();
+        upgradeRequest = null;
+        updateWriterPresent();
+        // the readers that arrived while the upgrader was waiting can now read, unless they wait for the writers
+        if (!readersBlocked) {
+            completeWaitingReaders();
+        }
+    }
+
     private void completeWaitingReaders() {
         if(currentReadRequest.nOfReaders > 0) {
-            nOfReaders += currentReadRequest.nOfReaders;
+            readers.add(currentReadRequest.nOfReaders);
             currentReadRequest.isAllowed = true;
             readCondition.signalAll();
 
-            currentReadRequest.nOfReaders = 0;
+            // readers that arrive after this point belong to a new batch
+            currentReadRequest = new ReadRequest();
         }
     }
 
-    private static class Request {
+    private static class Request extends IntrusiveLinkedList.Node {
         boolean isAllowed = false;
         Condition cond;
 
@@ -0,0 +1,17 @@
+package pt.isel.pc.sketches.synchronizers;
+
+// Defines who goes next in the readers-writer locks
+public enum ReadersWriterLockPolicy {
+
+    // Readers enter whenever there isn't an active writer, even if there are waiting writers,
+    // and waiting readers go before waiting writers. Writers may starve.
+    READER_PREFERRING,
+
+    // Readers wait while there are active or waiting writers,
+    // and waiting writers go before waiting readers. Readers may starve.
+    WRITER_PREFERRING,
+
+    // Readers wait while there are active or waiting writers, however when a writer ends all the waiting
+    // readers go before the next writer, so reader and writer phases alternate and no one starves.
+    PHASE_FAIR
+}
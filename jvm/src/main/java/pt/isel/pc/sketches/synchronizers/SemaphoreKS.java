@@ -1,6 +1,6 @@
 package pt.isel.pc.sketches.synchronizers;
 
-import pt.isel.pc.utils.NodeLinkedList;
+import pt.isel.pc.utils.IntrusiveLinkedList;
 import pt.isel.pc.utils.Timeouts;
 
 import java.util.concurrent.TimeUnit;
@@ -10,7 +10,8 @@ import java.util.concurrent.locks.ReentrantLock;
 
 public class SemaphoreKS {
 
-    private static class Request {
+    // Reused by each thread, see UnarySemaphoreKS
+    private static class Request extends IntrusiveLinkedList.Node {
         final Condition condition;
         boolean isDone = false;
         Request(Lock monitor){
@@ -19,9 +20,10 @@ public class SemaphoreKS {
     }
 
     private int availableUnits;
-    private final NodeLinkedList<Request> queue = new NodeLinkedList<>();
+    private final IntrusiveLinkedList<Request> queue = new IntrusiveLinkedList<>();
 
     private final Lock monitor = new ReentrantLock();
+    private final ThreadLocal<Request> requests = ThreadLocal.withInitial(() -> new Request(monitor));
 
     public SemaphoreKS(int initialUnits) {
         this.availableUnits = initialUnits;
@@ -40,25 +42,27 @@ public class SemaphoreKS {
                 return false;
             }
             // prepare to wait
-            NodeLinkedList.Node<Request> requestNode = queue.push(new Request(monitor));
+            Request request = requests.get();
+            request.isDone = false;
+            queue.push(request);
             long limit = Timeouts.start(timeout, timeUnit);
             long remaining = Timeouts.remaining(limit);
             while (true) {
                 try {
-                    requestNode.value.condition.await(remaining, TimeUnit.MILLISECONDS);
+                    request.condition.awaitNanos(remaining);
                 } catch (InterruptedException e) {
-                    if(requestNode.value.isDone) {
+                    if(request.isDone) {
                         Thread.currentThread().interrupt();
                         return true;
                     }
                     // give-up
-                    queue.remove(requestNode);
+                    queue.remove(request);
                     completeRequests();
                     throw e;
                 }
 
                 // is request fulfilled (i.e. isDone)
-                if (requestNode.value.isDone) {
+                if (request.isDone) {
                     return true;
                 }
 
@@ -66,7 +70,7 @@ public class SemaphoreKS {
                 // should we continue to wait
                 if (Timeouts.isTimeout(remaining)) {
                     // giving up
-                    queue.remove(requestNode);
+                    queue.remove(request);
                     completeRequests();
                     return false;
                 }
@@ -88,10 +92,10 @@ public class SemaphoreKS {
 
     private void completeRequests() {
         while(availableUnits > 0 && queue.isNotEmpty()) {
-            NodeLinkedList.Node<Request> head = queue.pull();
-            head.value.isDone = true;
+            Request head = queue.pull();
+            head.isDone = true;
             availableUnits -= 1;
-            head.value.condition.signal();
+            head.condition.signal();
         }
     }
 }
@@ -38,7 +38,7 @@ public class SemaphoreWithFifoOrder {
             long remaining = Timeouts.remaining(limit);
             while (true) {
                 try {
-                    condition.await(remaining, TimeUnit.MILLISECONDS);
+                    condition.awaitNanos(remaining);
                 } catch (InterruptedException e) {
                     queue.remove(node);
                     signalAllIfNeeded();
@@ -44,7 +44,7 @@ public class SemaphoreWithFifoOrderAndSpecificNotification {
             long remaining = Timeouts.remaining(limit);
             while (true) {
                 try {
-                    requestNode.value.condition.await(remaining, TimeUnit.MILLISECONDS);
+                    requestNode.value.condition.awaitNanos(remaining);
                 } catch (InterruptedException e) {
                     queue.remove(requestNode);
                     signalIfNeeded();
@@ -34,7 +34,7 @@ public class SemaphoreWithTimeout {
             long remaining = Timeouts.remaining(limit);
             while (true) {
                 try {
-                    condition.await(remaining, TimeUnit.MILLISECONDS);
+                    condition.awaitNanos(remaining);
                 } catch (InterruptedException e) {
                     // giving up
                     if (availableUnits > 0) {
@@ -0,0 +1,59 @@
+package pt.isel.pc.sketches.synchronizers;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+// Lock-free stack of the threads waiting for a batch (e.g. a barrier generation or a phaser phase),
+// closed once, by the thread that completes the batch, which then wakes all the waiters.
+// - push fails after the stack is closed, so a waiter that fails to push knows that the batch is already completed
+// - nodes can't be removed from the middle of a lock-free stack, so a waiter that gives up only clears
+//   its node's thread, and cleared nodes are skipped when waking
+// The batch must be marked as completed before closing the stack, so that a waiter that pushes
+// before the close always observes the completion after being woken.
+class WaiterStack {
+
+    static class Node {
+        volatile Thread thread;
+        Node next;
+
+        Node(Thread thread) {
+            this.thread = thread;
+        }
+    }
+
+    // spins done before pushing, since the batch is usually completed soon after the first parties arrive
+    static final int SPINS = Runtime.getRuntime().availableProcessors() > 1 ? 128 : 0;
+
+    private static final Node CLOSED = new Node(null);
+
+    private final AtomicReference<Node> head = new AtomicReference<>(null);
+
+    // Returns null if the stack is already closed
+    Node push(Thread thread) {
+        Node node = new Node(thread);
+        while (true) {
+            Node observed = head.get();
+            if (observed == CLOSED) {
+                return null;
+            }
+            node.next = observed;
+            if (head.compareAndSet(observed, node)) {
+                return node;
+            }
+        }
+    }
+
+    // Only the first call wakes the waiters
+    void closeAndWakeAll() {
+        for (Node node = head.getAndSet(CLOSED); node != null && node != CLOSED; node = node.next) {
+            Thread thread = node.thread;
+            if (thread != null) {
+                LockSupport.unpark(thread);
+            }
+        }
+    }
+
+    static void cancel(Node node) {
+        node.thread = null;
+    }
+}
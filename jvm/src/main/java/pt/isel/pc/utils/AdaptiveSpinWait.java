@@ -0,0 +1,101 @@
+package pt.isel.pc.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+// Spin-then-park strategy, where the spin duration adapts to the recently observed hand-off latency
+// (i.e. the time between a thread starting to wait and its request being completed).
+// - an exponentially weighted moving average (EWMA) of the hand-off latency is maintained
+// - if the average is below the spin limit, a waiter spins for up to twice the average before parking,
+//   otherwise it parks right away, since a context switch is going to happen anyway
+// - the first half of the spin uses Thread.onSpinWait, the second half yields the processor
+// - when spinning is skipped, the average slowly decays, so that spinning is eventually retried
+// The average is updated without synchronization, since a lost update only affects the tuning.
+// An instance is meant to be used by a single synchronizer, since latencies differ between synchronizers.
+public class AdaptiveSpinWait {
+
+    private static final long DEFAULT_MAX_SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    // so that very fast hand-offs don't result in a zero spin
+    private static final long MIN_SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(1);
+    private static final boolean IS_MULTIPROCESSOR = Runtime.getRuntime().availableProcessors() > 1;
+
+    // EWMA weight is 1/2^AVERAGE_SHIFT
+    private static final int AVERAGE_SHIFT = 3;
+    private static final int DECAY_SHIFT = 4;
+
+    private final Clock clock;
+    private final long maxSpinNanos;
+    private volatile long averageLatency;
+
+    public AdaptiveSpinWait() {
+        this(DEFAULT_MAX_SPIN_NANOS, TimeUnit.NANOSECONDS);
+    }
+
+    public AdaptiveSpinWait(long maxSpin, TimeUnit timeUnit) {
+        this(MonotonicClock.INSTANCE, maxSpin, timeUnit);
+    }
+
+    public AdaptiveSpinWait(Clock clock, long maxSpin, TimeUnit timeUnit) {
+        if (maxSpin < 0) {
+            throw new IllegalArgumentException("max spin must not be negative");
+        }
+        this.clock = clock;
+        this.maxSpinNanos = timeUnit.toNanos(maxSpin);
+        // start optimistic, i.e., spinning
+        this.averageLatency = maxSpinNanos / 2;
+    }
+
+    // Returns the current time, to be used as the start of the wait
+    public long start() {
+        return clock.nanoTime();
+    }
+
+    // Spins until isDone returns true, the spin budget is exhausted, the remaining time (in nanoseconds) elapses,
+    // or the thread is interrupted. Returns the last observed isDone value.
+    // The remaining time is relative, since the caller's deadline may use a different clock.
+    // Must be called without holding any lock needed to complete the wait.
+    public boolean spinUntil(BooleanSupplier isDone, long remaining) {
+        long budget = spinBudget();
+        if (budget == 0) {
+            return isDone.getAsBoolean();
+        }
+        long start = clock.nanoTime();
+        long yieldAt = start + budget / 2;
+        long end = start + Math.min(budget, Math.max(0, remaining));
+        Thread currentThread = Thread.currentThread();
+        while (true) {
+            if (isDone.getAsBoolean()) {
+                return true;
+            }
+            long now = clock.nanoTime();
+            if (now - end >= 0 || currentThread.isInterrupted()) {
+                return false;
+            }
+            if (now - yieldAt < 0) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+
+    // Records the hand-off latency of a completed wait, started at the value returned by start()
+    public void recordHandOff(long start) {
+        long latency = clock.nanoTime() - start;
+        long average = averageLatency;
+        averageLatency = average + ((latency - average) >> AVERAGE_SHIFT);
+    }
+
+    // Returns the current spin duration, in nanoseconds
+    public long spinBudget() {
+        if (!IS_MULTIPROCESSOR) {
+            return 0;
+        }
+        long average = averageLatency;
+        if (average > maxSpinNanos) {
+            averageLatency = average - (average >> DECAY_SHIFT);
+            return 0;
+        }
+        return Math.min(Math.max(2 * average, MIN_SPIN_NANOS), maxSpinNanos);
+    }
+}
@@ -0,0 +1,43 @@
+package pt.isel.pc.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// Coarse monotonic clock, where reading the time is just a volatile read.
+// The time is updated by a daemon thread, once per resolution period,
+// so it is only adequate when a precision of one period is acceptable (e.g. very hot loops).
+public final class CachedClock implements Clock {
+
+    private final long resolution;
+    private final Thread updater;
+    private volatile long now;
+    private volatile boolean isClosed = false;
+
+    public CachedClock(long resolution, TimeUnit timeUnit) {
+        if (resolution <= 0) {
+            throw new IllegalArgumentException("resolution must be positive");
+        }
+        this.resolution = timeUnit.toNanos(resolution);
+        this.now = System.nanoTime();
+        this.updater = new Thread(this::run, "cached-clock");
+        this.updater.setDaemon(true);
+        this.updater.start();
+    }
+
+    @Override
+    public long nanoTime() {
+        return now;
+    }
+
+    public void close() {
+        isClosed = true;
+        LockSupport.unpark(updater);
+    }
+
+    private void run() {
+        while (!isClosed) {
+            LockSupport.parkNanos(this, resolution);
+            now = System.nanoTime();
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package pt.isel.pc.utils;
+
+// Source of time for deadlines and timeouts.
+// The returned values are in nanoseconds and only meaningful when compared with other values
+// from the same clock (i.e. they are not wall-clock time).
+@FunctionalInterface
+public interface Clock {
+    long nanoTime();
+}
@@ -0,0 +1,79 @@
+package pt.isel.pc.utils;
+
+// Variant of NodeLinkedList where the elements are the nodes themselves (i.e. the elements carry the links),
+// so inserting an element doesn't allocate and an element can be reused after being removed.
+// An element can only be in one list at a time.
+public class IntrusiveLinkedList<T extends IntrusiveLinkedList.Node> {
+
+    public static class Node {
+        Node next;
+        Node prev;
+
+        public boolean isLinked() {
+            return next != null;
+        }
+    }
+
+    private final Node head;
+
+    public IntrusiveLinkedList() {
+        head = new Node();
+        head.next = head;
+        head.prev = head;
+    }
+
+    public void push(T node) {
+        if (node.isLinked()) {
+            throw new IllegalStateException("cannot push a node that is already in a list");
+        }
+        Node tail = head.prev;
+        node.prev = tail;
+        node.next = head;
+        head.prev = node;
+        tail.next = node;
+    }
+
+    public boolean isEmpty() {
+        return head == head.prev;
+    }
+
+    public boolean isNotEmpty() {
+        return !isEmpty();
+    }
+
+    @SuppressWarnings("unchecked")
+    public T getHead() {
+        if (isEmpty()) {
+            throw new IllegalStateException("cannot get head of an empty list");
+        }
+        return (T) head.next;
+    }
+
+    public boolean isHeadNode(T node) {
+        return head.next == node;
+    }
+
+    // Returns the node after the given one, or null if it is the last one.
+    // Together with getHead, allows iterating over the list without allocating.
+    @SuppressWarnings("unchecked")
+    public T getNext(T node) {
+        return node.next != head ? (T) node.next : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T pull() {
+        if (isEmpty()) {
+            throw new IllegalStateException("cannot pull from an empty list");
+        }
+        Node node = head.next;
+        remove((T) node);
+        return (T) node;
+    }
+
+    public void remove(T node) {
+        node.prev.next = node.next;
+        node.next.prev = node.prev;
+        node.next = null;
+        node.prev = null;
+    }
+}
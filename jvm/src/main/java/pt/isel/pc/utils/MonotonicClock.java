@@ -0,0 +1,15 @@
+package pt.isel.pc.utils;
+
+// Monotonic clock based on System.nanoTime, which is not affected by wall-clock adjustments (e.g. NTP)
+public final class MonotonicClock implements Clock {
+
+    public static final MonotonicClock INSTANCE = new MonotonicClock();
+
+    private MonotonicClock() {
+    }
+
+    @Override
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+}
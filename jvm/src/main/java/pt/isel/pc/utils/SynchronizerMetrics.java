@@ -0,0 +1,180 @@
+package pt.isel.pc.utils;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Optional instrumentation for the synchronizers.
+// - all counters are LongAdders, which are striped, so that the instrumentation doesn't become a contention point
+// - the disabled instance (the default for all synchronizers) only costs a final field read per event
+// - the waiting events are reported by the waiting thread, using the value returned by onWaitStart
+// Instances can be exposed via JMX, under pt.isel.pc:type=Synchronizer,name=<name>
+public class SynchronizerMetrics implements SynchronizerMetricsMBean {
+
+    private static final int N_OF_BUCKETS = 32;
+    private static final SynchronizerMetrics DISABLED = new SynchronizerMetrics(false);
+
+    public static SynchronizerMetrics disabled() {
+        return DISABLED;
+    }
+
+    private final boolean isEnabled;
+    private final LongAdder fastPath = new LongAdder();
+    private final LongAdder slowPath = new LongAdder();
+    private final LongAdder queueLength = new LongAdder();
+    private final LongAdder handOffs = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder interrupts = new LongAdder();
+    private final LongAdder[] waitTimeHistogram = new LongAdder[N_OF_BUCKETS];
+
+    private ObjectName objectName;
+
+    public SynchronizerMetrics() {
+        this(true);
+    }
+
+    private SynchronizerMetrics(boolean isEnabled) {
+        this.isEnabled = isEnabled;
+        for (int i = 0; i < N_OF_BUCKETS; ++i) {
+            waitTimeHistogram[i] = new LongAdder();
+        }
+    }
+
+    public boolean isEnabled() {
+        return isEnabled;
+    }
+
+    public void onFastPath() {
+        if (isEnabled) {
+            fastPath.increment();
+        }
+    }
+
+    // Returns the wait start time, to be passed to one of the onWait* methods that end the wait
+    public long onWaitStart() {
+        if (!isEnabled) {
+            return 0;
+        }
+        slowPath.increment();
+        queueLength.increment();
+        return System.nanoTime();
+    }
+
+    public void onWaitHandOff(long start) {
+        if (isEnabled) {
+            handOffs.increment();
+            onWaitEnd(start);
+        }
+    }
+
+    public void onWaitTimeout(long start) {
+        if (isEnabled) {
+            timeouts.increment();
+            onWaitEnd(start);
+        }
+    }
+
+    public void onWaitInterrupted(long start) {
+        if (isEnabled) {
+            interrupts.increment();
+            onWaitEnd(start);
+        }
+    }
+
+    private void onWaitEnd(long start) {
+        queueLength.decrement();
+        long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+        int bucket = Math.min(64 - Long.numberOfLeadingZeros(micros), N_OF_BUCKETS - 1);
+        waitTimeHistogram[bucket].increment();
+    }
+
+    // Registers this instance in the platform MBean server, under the given name
+    public synchronized SynchronizerMetrics register(String name) {
+        if (!isEnabled) {
+            throw new IllegalStateException("cannot register the disabled metrics");
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName("pt.isel.pc:type=Synchronizer,name=" + ObjectName.quote(name));
+            server.registerMBean(this, objectName);
+            this.objectName = objectName;
+            return this;
+        } catch (JMException e) {
+            throw new IllegalStateException("unable to register metrics", e);
+        }
+    }
+
+    public synchronized void unregister() {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            objectName = null;
+        } catch (JMException e) {
+            throw new IllegalStateException("unable to unregister metrics", e);
+        }
+    }
+
+    @Override
+    public long getFastPathCount() {
+        return fastPath.sum();
+    }
+
+    @Override
+    public long getSlowPathCount() {
+        return slowPath.sum();
+    }
+
+    @Override
+    public double getFastPathRatio() {
+        long fast = fastPath.sum();
+        long total = fast + slowPath.sum();
+        return total == 0 ? Double.NaN : (double) fast / total;
+    }
+
+    @Override
+    public long getQueueLength() {
+        return queueLength.sum();
+    }
+
+    @Override
+    public long getHandOffCount() {
+        return handOffs.sum();
+    }
+
+    @Override
+    public long getTimeoutCount() {
+        return timeouts.sum();
+    }
+
+    @Override
+    public long getInterruptCount() {
+        return interrupts.sum();
+    }
+
+    @Override
+    public long[] getWaitTimeHistogram() {
+        long[] histogram = new long[N_OF_BUCKETS];
+        for (int i = 0; i < N_OF_BUCKETS; ++i) {
+            histogram[i] = waitTimeHistogram[i].sum();
+        }
+        return histogram;
+    }
+
+    // Resets all the counters except the queue length, which reflects the current waiters
+    @Override
+    public void reset() {
+        fastPath.reset();
+        slowPath.reset();
+        handOffs.reset();
+        timeouts.reset();
+        interrupts.reset();
+        for (LongAdder bucket : waitTimeHistogram) {
+            bucket.reset();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package pt.isel.pc.utils;
+
+// Management interface for SynchronizerMetrics, as required by JMX standard MBeans
+public interface SynchronizerMetricsMBean {
+
+    // acquires (or awaits) that didn't need to wait
+    long getFastPathCount();
+
+    // acquires (or awaits) that needed to wait, independently of the outcome
+    long getSlowPathCount();
+
+    double getFastPathRatio();
+
+    // number of threads (or asynchronous requests) currently waiting
+    long getQueueLength();
+
+    // waits completed by other threads, i.e. the request was handed off to the waiter
+    long getHandOffCount();
+
+    // waits given up due to timeout
+    long getTimeoutCount();
+
+    // waits given up due to interruption (or cancellation, for asynchronous requests)
+    long getInterruptCount();
+
+    // bucket 0 counts waits below 1 us, bucket i counts waits in [2^(i-1), 2^i) us
+    long[] getWaitTimeHistogram();
+
+    void reset();
+}
@@ -0,0 +1,64 @@
+package pt.isel.pc.utils;
+
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.InterruptedByTimeoutException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Completion handler decorator that adds a deadline to a single asynchronous operation.
+// When the deadline expires the onTimeout action is called (e.g. to close the channel), which should
+// cause the pending operation to complete. That completion is then delivered to the decorated handler
+// as a failure with InterruptedByTimeoutException.
+// This way the decorated handler is only called when there are no pending operations.
+public final class TimeoutCompletionHandler<V, A> implements CompletionHandler<V, A> {
+
+    private static final int PENDING = 0;
+    private static final int COMPLETED = 1;
+    private static final int TIMED_OUT = 2;
+
+    private final CompletionHandler<V, A> handler;
+    private final AtomicInteger state = new AtomicInteger(PENDING);
+    private final TimerWheel.Timeout timeout;
+
+    private TimeoutCompletionHandler(
+      CompletionHandler<V, A> handler, long timeout, TimeUnit timeUnit, Runnable onTimeout) {
+        this.handler = handler;
+        this.timeout = TimerWheel.getShared().schedule(() -> {
+            if (state.compareAndSet(PENDING, TIMED_OUT)) {
+                onTimeout.run();
+            }
+        }, timeout, timeUnit);
+    }
+
+    // Must be called immediately before starting each operation, since the deadline starts at this moment.
+    // A Long.MAX_VALUE timeout means no deadline.
+    public static <V, A> CompletionHandler<V, A> withTimeout(
+      CompletionHandler<V, A> handler, long timeout, TimeUnit timeUnit, Runnable onTimeout) {
+        if (timeout == Long.MAX_VALUE) {
+            return handler;
+        }
+        return new TimeoutCompletionHandler<>(handler, timeout, timeUnit, onTimeout);
+    }
+
+    @Override
+    public void completed(V result, A attachment) {
+        if (state.compareAndSet(PENDING, COMPLETED)) {
+            timeout.cancel();
+            handler.completed(result, attachment);
+        } else {
+            handler.failed(new InterruptedByTimeoutException(), attachment);
+        }
+    }
+
+    @Override
+    public void failed(Throwable exc, A attachment) {
+        if (state.compareAndSet(PENDING, COMPLETED)) {
+            timeout.cancel();
+            handler.failed(exc, attachment);
+        } else {
+            Throwable timeoutException = new InterruptedByTimeoutException();
+            timeoutException.initCause(exc);
+            handler.failed(timeoutException, attachment);
+        }
+    }
+}
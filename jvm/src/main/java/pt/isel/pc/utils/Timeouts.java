@@ -5,6 +5,9 @@ import java.util.concurrent.TimeUnit;
 
 // Using static methods and not instance ones to avoid allocation
 // Can I have value types in the JVM, please...
+// Deadlines and remaining times are in nanoseconds, relative to a monotonic clock.
+// A deadline may overflow (e.g. with a Long.MAX_VALUE timeout), however the remaining time is
+// still correct because it is always computed as a difference.
 public class Timeouts {
 
     public static boolean noWait(long timeout) {
@@ -12,15 +15,19 @@ public class Timeouts {
     }
 
     public static long start(long duration, TimeUnit timeUnit) {
-        return start(timeUnit.toMillis(duration));
+        return start(MonotonicClock.INSTANCE, duration, timeUnit);
     }
 
-    public static long start(long timeout) {
-        return System.currentTimeMillis() + timeout;
+    public static long start(Clock clock, long duration, TimeUnit timeUnit) {
+        return clock.nanoTime() + timeUnit.toNanos(duration);
     }
 
-    public static long remaining(long target) {
-        return target - System.currentTimeMillis();
+    public static long remaining(long deadline) {
+        return remaining(MonotonicClock.INSTANCE, deadline);
+    }
+
+    public static long remaining(Clock clock, long deadline) {
+        return deadline - clock.nanoTime();
     }
 
     public static boolean isTimeout(long remaining) {
@@ -0,0 +1,256 @@
+package pt.isel.pc.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Hashed timer wheel, with O(1) schedule and cancel, shared by all timeouts
+// - the wheel has a power of two number of buckets, each one with an intrusive doubly linked list of timeouts
+// - a single worker thread advances the wheel one bucket per tick and expires the timeouts in that bucket
+// - timeouts that are more than a wheel revolution away remain in the bucket for additional rounds
+// - schedule and cancel only add to lock-free queues, the buckets are only accessed by the worker thread
+// The expiration tasks run on the worker thread, so they must be short and must not block.
+// Tasks that may block, such as the ones that take a lock or complete futures with arbitrary continuations,
+// are scheduled with an executor, and the worker thread only submits them.
+public class TimerWheel {
+
+    private static final Logger logger = LoggerFactory.getLogger(TimerWheel.class);
+
+    // Lazily created shared instance, with 10 ms ticks and a 5120 ms revolution
+    private static class SharedHolder {
+        static final TimerWheel instance = new TimerWheel("shared-timer-wheel", 10, TimeUnit.MILLISECONDS, 512);
+    }
+
+    public static TimerWheel getShared() {
+        return SharedHolder.instance;
+    }
+
+    public static class Timeout {
+        private static final int PENDING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final TimerWheel wheel;
+        private final Runnable task;
+        // relative to the wheel start time
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+
+        // only accessed by the worker thread
+        private long remainingRounds;
+        private Bucket bucket;
+        private Timeout next;
+        private Timeout prev;
+
+        private Timeout(TimerWheel wheel, Runnable task, long deadline) {
+            this.wheel = wheel;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        // Returns true if the timeout was cancelled before it expired
+        public boolean cancel() {
+            if (!state.compareAndSet(PENDING, CANCELLED)) {
+                return false;
+            }
+            // the removal from the bucket is done by the worker thread
+            wheel.cancelledTimeouts.add(this);
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+
+        private void expire() {
+            if (!state.compareAndSet(PENDING, EXPIRED)) {
+                return;
+            }
+            try {
+                task.run();
+            } catch (Throwable e) {
+                logger.warn("Timeout task ended with exception", e);
+            }
+        }
+    }
+
+    private static class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        void remove(Timeout timeout) {
+            if (timeout.prev != null) {
+                timeout.prev.next = timeout.next;
+            } else {
+                head = timeout.next;
+            }
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            } else {
+                tail = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+
+        void expire(long deadline) {
+            Timeout timeout = head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.remainingRounds <= 0) {
+                    remove(timeout);
+                    if (timeout.deadline > deadline) {
+                        // should never happen, since it would mean the timeout was placed in the wrong bucket.
+                        // Expiring it a bit early is better than stopping the worker thread for all the timeouts.
+                        logger.error("Timeout deadline {} is after the tick deadline {}", timeout.deadline, deadline);
+                    }
+                    timeout.expire();
+                } else {
+                    timeout.remainingRounds -= 1;
+                }
+                timeout = next;
+            }
+        }
+    }
+
+    private final Clock clock;
+    private final long tickDuration;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final long startTime;
+    private final ConcurrentLinkedQueue<Timeout> newTimeouts = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Timeout> cancelledTimeouts = new ConcurrentLinkedQueue<>();
+    private final Thread worker;
+    private volatile boolean isStopped = false;
+
+    // only accessed by the worker thread
+    private long tick = 0;
+
+    public TimerWheel(String name, long tickDuration, TimeUnit timeUnit, int ticksPerWheel) {
+        this(name, MonotonicClock.INSTANCE, tickDuration, timeUnit, ticksPerWheel);
+    }
+
+    public TimerWheel(String name, Clock clock, long tickDuration, TimeUnit timeUnit, int ticksPerWheel) {
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("tick duration must be positive");
+        }
+        if (ticksPerWheel <= 0 || Integer.bitCount(ticksPerWheel) != 1) {
+            throw new IllegalArgumentException("ticks per wheel must be a positive power of two");
+        }
+        this.clock = clock;
+        this.tickDuration = timeUnit.toNanos(tickDuration);
+        this.wheel = new Bucket[ticksPerWheel];
+        for (int i = 0; i < ticksPerWheel; ++i) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = ticksPerWheel - 1;
+        this.startTime = clock.nanoTime();
+        this.worker = new Thread(this::run, name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    // Schedules the task to run after the delay. The returned Timeout can be used to cancel it.
+    public Timeout schedule(Runnable task, long delay, TimeUnit timeUnit) {
+        if (isStopped) {
+            throw new IllegalStateException("timer wheel is stopped");
+        }
+        long deadline = clock.nanoTime() - startTime + Math.max(0, timeUnit.toNanos(delay));
+        // guard against overflow on very large delays (e.g. Long.MAX_VALUE)
+        if (deadline < 0) {
+            deadline = Long.MAX_VALUE;
+        }
+        Timeout timeout = new Timeout(this, task, deadline);
+        // the insertion into the bucket is done by the worker thread
+        newTimeouts.add(timeout);
+        return timeout;
+    }
+
+    // Schedules the task to run on the executor after the delay. A rejected task is logged and not retried.
+    public Timeout schedule(Runnable task, long delay, TimeUnit timeUnit, Executor executor) {
+        return schedule(() -> executor.execute(task), delay, timeUnit);
+    }
+
+    // Stops the worker thread. Pending timeouts will never expire.
+    public void stop() {
+        isStopped = true;
+        worker.interrupt();
+    }
+
+    private void run() {
+        while (!isStopped) {
+            long deadline = waitForNextTick();
+            if (deadline < 0) {
+                // stopped while waiting
+                return;
+            }
+            removeCancelledTimeouts();
+            transferNewTimeouts();
+            wheel[(int) (tick & mask)].expire(deadline);
+            tick += 1;
+        }
+    }
+
+    // Returns the deadline of the current tick, relative to the start time, or -1 if stopped
+    private long waitForNextTick() {
+        long deadline = tickDuration * (tick + 1);
+        while (true) {
+            long current = clock.nanoTime() - startTime;
+            long remaining = deadline - current;
+            if (remaining <= 0) {
+                return current;
+            }
+            try {
+                Thread.sleep(TimeUnit.NANOSECONDS.toMillis(remaining + 999_999));
+            } catch (InterruptedException e) {
+                if (isStopped) {
+                    return -1;
+                }
+            }
+        }
+    }
+
+    private void transferNewTimeouts() {
+        Timeout timeout;
+        while ((timeout = newTimeouts.poll()) != null) {
+            if (timeout.isCancelled()) {
+                continue;
+            }
+            long calculatedTick = timeout.deadline / tickDuration;
+            timeout.remainingRounds = (calculatedTick - tick) / wheel.length;
+            // timeouts already in the past are expired on the current tick
+            long targetTick = Math.max(calculatedTick, tick);
+            wheel[(int) (targetTick & mask)].add(timeout);
+        }
+    }
+
+    private void removeCancelledTimeouts() {
+        Timeout timeout;
+        while ((timeout = cancelledTimeouts.poll()) != null) {
+            // the cancelled timeout may still be in newTimeouts, and not in a bucket
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+}
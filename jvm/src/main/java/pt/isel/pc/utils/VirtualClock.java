@@ -0,0 +1,22 @@
+package pt.isel.pc.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Clock that only advances when explicitly told to, intended for tests
+public final class VirtualClock implements Clock {
+
+    private final AtomicLong now = new AtomicLong(0);
+
+    @Override
+    public long nanoTime() {
+        return now.get();
+    }
+
+    public void advance(long duration, TimeUnit timeUnit) {
+        if (duration < 0) {
+            throw new IllegalArgumentException("a clock cannot go backwards");
+        }
+        now.addAndGet(timeUnit.toNanos(duration));
+    }
+}
@@ -0,0 +1,210 @@
+package pt.isel.pc;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Minimal throughput and latency harness, used by the main methods of the *Benchmark classes.
+// It is not a replacement for a proper benchmarking framework, however it is enough to compare
+// the synchronizers of this repository between themselves and with the java.util.concurrent ones.
+// - each thread runs the operation in a loop, first during the warm-up period and then during the measured period
+// - the operation returns the index of the kind of operation it did (e.g. read or write),
+//   so that throughput and latency are reported per kind
+// - latencies are recorded in per-thread log-linear histograms, with 16 sub-buckets per power of two
+public class Benchmark {
+
+    @FunctionalInterface
+    public interface Operation {
+        int run(ThreadLocalRandom random) throws Exception;
+    }
+
+    private static final int WARMING_UP = 0;
+    private static final int MEASURING = 1;
+    private static final int DONE = 2;
+
+    private final Duration warmup;
+    private final Duration duration;
+    private final String[] kinds;
+
+    public Benchmark(Duration warmup, Duration duration, String... kinds) {
+        if (kinds.length == 0) {
+            throw new IllegalArgumentException("there must be at least one kind of operation");
+        }
+        this.warmup = warmup;
+        this.duration = duration;
+        this.kinds = kinds;
+    }
+
+    public Result run(int nOfThreads, Operation operation) throws InterruptedException {
+        ConcurrentLinkedQueue<Exception> errors = new ConcurrentLinkedQueue<>();
+        List<Histogram[]> histograms = new ArrayList<>();
+        List<Thread> ths = new ArrayList<>();
+        AtomicInteger phase = new AtomicInteger(WARMING_UP);
+        for (int i = 0; i < nOfThreads; ++i) {
+            Histogram[] threadHistograms = new Histogram[kinds.length];
+            for (int k = 0; k < kinds.length; ++k) {
+                threadHistograms[k] = new Histogram();
+            }
+            histograms.add(threadHistograms);
+            Thread th = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    while (true) {
+                        // the phase is read before the operation starts, so that no operation is
+                        // recorded if it started during the warm-up
+                        int currentPhase = phase.get();
+                        if (currentPhase == DONE) {
+                            return;
+                        }
+                        long start = System.nanoTime();
+                        int kind = operation.run(random);
+                        long end = System.nanoTime();
+                        if (currentPhase == MEASURING) {
+                            threadHistograms[kind].record(end - start);
+                        }
+                    }
+                } catch (Exception e) {
+                    errors.add(e);
+                }
+            });
+            ths.add(th);
+        }
+        for (Thread th : ths) {
+            th.start();
+        }
+        Thread.sleep(warmup.toMillis());
+        phase.set(MEASURING);
+        long start = System.nanoTime();
+        Thread.sleep(duration.toMillis());
+        phase.set(DONE);
+        long end = System.nanoTime();
+        for (Thread th : ths) {
+            th.join();
+        }
+        if (!errors.isEmpty()) {
+            throw new IllegalStateException("operation failed", errors.peek());
+        }
+        Histogram[] merged = new Histogram[kinds.length];
+        for (int k = 0; k < kinds.length; ++k) {
+            merged[k] = new Histogram();
+            for (Histogram[] threadHistograms : histograms) {
+                merged[k].add(threadHistograms[k]);
+            }
+        }
+        return new Result(kinds, merged, end - start);
+    }
+
+    public static class Result {
+
+        private final String[] kinds;
+        private final Histogram[] histograms;
+        private final long elapsedNanos;
+
+        private Result(String[] kinds, Histogram[] histograms, long elapsedNanos) {
+            this.kinds = kinds;
+            this.histograms = histograms;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public long count(int kind) {
+            return histograms[kind].count;
+        }
+
+        // Operations per second, for all kinds
+        public double throughput() {
+            long count = 0;
+            for (Histogram histogram : histograms) {
+                count += histogram.count;
+            }
+            return count * 1e9 / elapsedNanos;
+        }
+
+        public double throughput(int kind) {
+            return histograms[kind].count * 1e9 / elapsedNanos;
+        }
+
+        // Latency in nanoseconds, with percentile in [0, 100]
+        public long percentile(int kind, double percentile) {
+            return histograms[kind].percentile(percentile);
+        }
+
+        public long max(int kind) {
+            return histograms[kind].max;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(String.format("%,.0f ops/s", throughput()));
+            for (int k = 0; k < kinds.length; ++k) {
+                sb.append(String.format(
+                  "%n  %-10s %,14.0f ops/s  p50=%,8.1fus  p99=%,10.1fus  p99.9=%,10.1fus  max=%,10.1fus",
+                  kinds[k], throughput(k),
+                  percentile(k, 50) / 1e3, percentile(k, 99) / 1e3,
+                  percentile(k, 99.9) / 1e3, max(k) / 1e3));
+            }
+            return sb.toString();
+        }
+    }
+
+    static class Histogram {
+
+        private static final int SUB_BUCKET_BITS = 4;
+        private static final int N_OF_SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+        private final long[] counts = new long[(64 - SUB_BUCKET_BITS) * N_OF_SUB_BUCKETS];
+        private long count = 0;
+        private long max = 0;
+
+        void record(long value) {
+            counts[index(Math.max(0, value))] += 1;
+            count += 1;
+            max = Math.max(max, value);
+        }
+
+        void add(Histogram other) {
+            for (int i = 0; i < counts.length; ++i) {
+                counts[i] += other.counts[i];
+            }
+            count += other.count;
+            max = Math.max(max, other.max);
+        }
+
+        long percentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long target = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+            long accumulated = 0;
+            for (int i = 0; i < counts.length; ++i) {
+                accumulated += counts[i];
+                if (accumulated >= target) {
+                    return Math.min(upperBound(i), max);
+                }
+            }
+            return max;
+        }
+
+        // Values below N_OF_SUB_BUCKETS have their own bucket, the others are bucketed by their
+        // most significant bit and the SUB_BUCKET_BITS bits following it
+        static int index(long value) {
+            if (value < N_OF_SUB_BUCKETS) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (N_OF_SUB_BUCKETS - 1);
+            return (exponent - SUB_BUCKET_BITS + 1) * N_OF_SUB_BUCKETS + subBucket;
+        }
+
+        static long upperBound(int index) {
+            if (index < N_OF_SUB_BUCKETS) {
+                return index;
+            }
+            int exponent = index / N_OF_SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+            int subBucket = index % N_OF_SUB_BUCKETS;
+            return ((long) (N_OF_SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+        }
+    }
+}
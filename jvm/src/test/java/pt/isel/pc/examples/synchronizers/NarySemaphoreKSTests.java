@@ -0,0 +1,158 @@
+package pt.isel.pc.examples.synchronizers;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class NarySemaphoreKSTests {
+
+    @Test
+    public void async_acquire_is_completed_by_release() throws Exception {
+        NarySemaphoreKS sem = new NarySemaphoreKS(1);
+        CompletableFuture<Boolean> f = sem.acquireAsync(2, Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        assertFalse(f.isDone());
+        sem.release(1);
+        assertTrue(f.get(1, TimeUnit.SECONDS));
+        assertFalse(sem.acquire(1, 0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void async_acquire_is_completed_with_false_on_timeout() throws Exception {
+        NarySemaphoreKS sem = new NarySemaphoreKS(1);
+        CompletableFuture<Boolean> f = sem.acquireAsync(2, 100, TimeUnit.MILLISECONDS);
+        assertFalse(f.get(1, TimeUnit.SECONDS));
+        // the unit is still available
+        assertTrue(sem.acquire(1, 0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void cancelling_the_head_request_completes_the_following_ones() throws Exception {
+        NarySemaphoreKS sem = new NarySemaphoreKS(1);
+        CompletableFuture<Boolean> large = sem.acquireAsync(3, Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        CompletableFuture<Boolean> small = sem.acquireAsync(1, Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        assertFalse(small.isDone());
+        assertTrue(large.cancel(true));
+        assertTrue(small.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void sync_and_async_requests_share_the_same_fifo_queue() throws Exception {
+        NarySemaphoreKS sem = new NarySemaphoreKS(0);
+        CompletableFuture<Boolean> first = sem.acquireAsync(2, Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        CompletableFuture<Boolean> second = new CompletableFuture<>();
+        Thread th = new Thread(() -> {
+            try {
+                second.complete(sem.acquire(1, Long.MAX_VALUE, TimeUnit.MILLISECONDS));
+            } catch (InterruptedException e) {
+                second.completeExceptionally(e);
+            }
+        });
+        th.start();
+        CompletableFuture<Boolean> third = new CompletableFuture<>();
+        // wait for the synchronous request to be in the queue
+        Thread.sleep(100);
+        sem.acquireAsync(1, Long.MAX_VALUE, TimeUnit.MILLISECONDS)
+          .thenAccept(third::complete);
+
+        sem.release(1);
+        // the head request doesn't fit, so no request can be completed
+        Thread.sleep(100);
+        assertFalse(first.isDone());
+        assertFalse(second.isDone());
+        assertFalse(third.isDone());
+
+        sem.release(2);
+        assertTrue(first.get(1, TimeUnit.SECONDS));
+        assertTrue(second.get(1, TimeUnit.SECONDS));
+        assertFalse(third.isDone());
+
+        sem.release(1);
+        assertTrue(third.get(1, TimeUnit.SECONDS));
+        th.join();
+    }
+
+    @Test
+    public void async_request_granted_by_a_sync_acquire_that_times_out_is_completed() throws Exception {
+        for (int i = 0; i < 1000; ++i) {
+            NarySemaphoreKS sem = new NarySemaphoreKS(0);
+            CompletableFuture<Boolean> f = sem.acquireAsync(1, Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            // the release races with the sync acquire, which may be the one granting the async request
+            Thread th = new Thread(() -> sem.release(1));
+            th.start();
+            assertFalse(sem.acquire(1, 5, TimeUnit.MILLISECONDS));
+            th.join();
+            assertTrue(f.get(1, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void best_fit_grants_the_largest_request_that_fits() throws Exception {
+        NarySemaphoreKS sem = new NarySemaphoreKS(0, NarySemaphoreKS.GrantPolicy.bestFit());
+        CompletableFuture<Boolean> large = sem.acquireAsync(5, Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        CompletableFuture<Boolean> small = sem.acquireAsync(1, Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        CompletableFuture<Boolean> medium = sem.acquireAsync(2, Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        sem.release(2);
+        assertTrue(medium.get(1, TimeUnit.SECONDS));
+        assertFalse(small.isDone());
+        assertFalse(large.isDone());
+    }
+
+    @Test
+    public void bounded_bypass_limits_the_requests_granted_ahead_of_the_head() throws Exception {
+        NarySemaphoreKS sem = new NarySemaphoreKS(0, NarySemaphoreKS.GrantPolicy.boundedBypass(2));
+        CompletableFuture<Boolean> large = sem.acquireAsync(3, Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        CompletableFuture<Boolean> first = sem.acquireAsync(1, Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        CompletableFuture<Boolean> second = sem.acquireAsync(1, Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        CompletableFuture<Boolean> third = sem.acquireAsync(1, Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        sem.release(1);
+        sem.release(1);
+        sem.release(1);
+        assertTrue(first.get(1, TimeUnit.SECONDS));
+        assertTrue(second.get(1, TimeUnit.SECONDS));
+        // the head was already bypassed twice
+        assertFalse(third.isDone());
+        sem.release(2);
+        assertTrue(large.get(1, TimeUnit.SECONDS));
+        assertFalse(third.isDone());
+        sem.release(1);
+        assertTrue(third.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void smallest_first_uses_fifo_after_the_max_age() throws Exception {
+        NarySemaphoreKS sem = new NarySemaphoreKS(0,
+          NarySemaphoreKS.GrantPolicy.smallestFirstWithAging(200, TimeUnit.MILLISECONDS));
+        CompletableFuture<Boolean> large = sem.acquireAsync(2, Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        CompletableFuture<Boolean> small = sem.acquireAsync(1, Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        sem.release(1);
+        assertTrue(small.get(1, TimeUnit.SECONDS));
+
+        CompletableFuture<Boolean> other = sem.acquireAsync(1, Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        Thread.sleep(300);
+        sem.release(1);
+        // the large request is now too old to be bypassed
+        assertFalse(other.isDone());
+        sem.release(1);
+        assertTrue(large.get(1, TimeUnit.SECONDS));
+        sem.release(1);
+        assertTrue(other.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void utilization_reflects_idle_units_while_requests_are_waiting() throws Exception {
+        NarySemaphoreKS sem = new NarySemaphoreKS(2);
+        assertTrue(Double.isNaN(sem.getUtilization()));
+        assertTrue(sem.acquire(1, 0, TimeUnit.MILLISECONDS));
+        // one unit is idle while this request waits
+        CompletableFuture<Boolean> f = sem.acquireAsync(2, Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        Thread.sleep(200);
+        sem.release(1);
+        assertTrue(f.get(1, TimeUnit.SECONDS));
+        double utilization = sem.getUtilization();
+        assertTrue(utilization > 0.4 && utilization < 0.6);
+    }
+}
@@ -4,6 +4,7 @@ import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import pt.isel.pc.TestHelper;
+import pt.isel.pc.utils.AdaptiveSpinWait;
 
 import java.time.Duration;
 import java.util.Collections;
@@ -48,4 +49,14 @@ public class OrderingUnarySemaphoreTests {
     public void test_ks_based_semaphore() throws InterruptedException {
         test(new UnarySemaphoreKS(1));
     }
+
+    @Test
+    public void test_queue_based_semaphore_with_spinning() throws InterruptedException {
+        test(new UnarySemaphoreWithFifoOrderAndSpecificNotification(1, new AdaptiveSpinWait()));
+    }
+
+    @Test
+    public void test_ks_based_semaphore_with_spinning() throws InterruptedException {
+        test(new UnarySemaphoreKS(1, new AdaptiveSpinWait()));
+    }
 }
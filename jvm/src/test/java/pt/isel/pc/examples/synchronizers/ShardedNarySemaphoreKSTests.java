@@ -0,0 +1,88 @@
+package pt.isel.pc.examples.synchronizers;
+
+import org.junit.Test;
+import pt.isel.pc.TestHelper;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ShardedNarySemaphoreKSTests {
+
+    private static final Duration TEST_DURATION = Duration.ofSeconds(5);
+
+    @Test
+    public void units_from_all_shards_can_be_acquired() throws InterruptedException {
+        ShardedNarySemaphoreKS sem = new ShardedNarySemaphoreKS(8, 4);
+        // requires stealing from the sibling shards
+        assertTrue(sem.acquire(8, 0, TimeUnit.MILLISECONDS));
+        assertFalse(sem.acquire(1, 0, TimeUnit.MILLISECONDS));
+        sem.release(8);
+        assertEquals(8, sem.availableUnits());
+    }
+
+    @Test
+    public void waiting_acquire_is_completed_by_release_from_other_thread() throws Exception {
+        ShardedNarySemaphoreKS sem = new ShardedNarySemaphoreKS(1, 4);
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        Thread th = new Thread(() -> {
+            try {
+                result.complete(sem.acquire(3, Long.MAX_VALUE, TimeUnit.MILLISECONDS));
+            } catch (InterruptedException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        th.start();
+        Thread.sleep(100);
+        assertFalse(result.isDone());
+        sem.release(2);
+        assertTrue(result.get(1, TimeUnit.SECONDS));
+        assertEquals(0, sem.availableUnits());
+    }
+
+    @Test
+    public void no_wait_acquire_only_fails_when_the_units_are_not_available() throws InterruptedException {
+        int nOfThreads = 8;
+        int maxUnits = 3;
+        // enough units for all threads at the same time, even if concurrent gathers hold some of them
+        ShardedNarySemaphoreKS sem = new ShardedNarySemaphoreKS(nOfThreads * maxUnits, 4);
+        TestHelper helper = new TestHelper(TEST_DURATION);
+        helper.createAndStartMultiple(nOfThreads, isDone -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            while (!isDone.get()) {
+                int units = 1 + random.nextInt(maxUnits);
+                assertTrue(sem.acquire(units, 0, TimeUnit.MILLISECONDS));
+                sem.release(units);
+            }
+        });
+        helper.join();
+        assertEquals(nOfThreads * maxUnits, sem.availableUnits());
+    }
+
+    @Test
+    public void total_units_are_preserved() throws InterruptedException {
+        int nOfUnits = 10;
+        ShardedNarySemaphoreKS sem = new ShardedNarySemaphoreKS(nOfUnits, 4);
+        AtomicInteger acquiredUnits = new AtomicInteger();
+        TestHelper helper = new TestHelper(TEST_DURATION);
+        helper.createAndStartMultiple(8, isDone -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            while (!isDone.get()) {
+                int units = 1 + random.nextInt(4);
+                if (sem.acquire(units, random.nextInt(3), TimeUnit.MILLISECONDS)) {
+                    assertTrue(acquiredUnits.addAndGet(units) <= nOfUnits);
+                    acquiredUnits.addAndGet(-units);
+                    sem.release(units);
+                }
+            }
+        });
+        helper.join();
+        assertEquals(nOfUnits, sem.availableUnits());
+    }
+}
@@ -3,6 +3,7 @@ package pt.isel.pc.examples.synchronizers;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import pt.isel.pc.utils.AdaptiveSpinWait;
 import pt.isel.pc.utils.Timeouts;
 
 import java.time.Duration;
@@ -100,7 +101,7 @@ public class SimpleUnarySemaphoreTests {
           TimeUnit.SECONDS);
         for (Thread th : ths) {
             long remaining = Timeouts.remaining(testDeadline);
-            th.join(remaining);
+            th.join(TimeUnit.NANOSECONDS.toMillis(remaining));
             if (th.isAlive()) {
                 logger.error("Test didn't stop when it was supposed to");
             }
@@ -131,4 +132,20 @@ public class SimpleUnarySemaphoreTests {
           nOfThreads, initialUnits);
     }
 
+    @Test
+    public void test_queue_based_semaphore_with_spinning() throws InterruptedException {
+        int nOfThreads = 100;
+        int initialUnits = nOfThreads / 2;
+        test(new UnarySemaphoreWithFifoOrderAndSpecificNotification(initialUnits, new AdaptiveSpinWait()),
+          nOfThreads, initialUnits);
+    }
+
+    @Test
+    public void test_ks_based_semaphore_with_spinning() throws InterruptedException {
+        int nOfThreads = 100;
+        int initialUnits = nOfThreads / 2;
+        test(new UnarySemaphoreKS(initialUnits, new AdaptiveSpinWait()),
+          nOfThreads, initialUnits);
+    }
+
 }
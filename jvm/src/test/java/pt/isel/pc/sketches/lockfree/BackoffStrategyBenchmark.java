@@ -0,0 +1,73 @@
+package pt.isel.pc.sketches.lockfree;
+
+import pt.isel.pc.Benchmark;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// Compares the backoff strategies on LockFreeStack, for an increasing number of threads,
+// each one doing the same number of pushes and pops, reporting the throughput and the CAS failure rate.
+// Usage: BackoffStrategyBenchmark [durationInSeconds]
+public class BackoffStrategyBenchmark {
+
+    private static final int PUSH = 0;
+    private static final int POP = 1;
+    private static final int EMPTY_POP = 2;
+    private static final int[] N_OF_THREADS = {1, 2, 4, 8, 16, 32};
+
+    // Counts the CAS failures and successes observed by a strategy
+    private static class CountingBackoff implements BackoffStrategy {
+        private final BackoffStrategy strategy;
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder successes = new LongAdder();
+
+        CountingBackoff(BackoffStrategy strategy) {
+            this.strategy = strategy;
+        }
+
+        public void onFailure(int failures) {
+            this.failures.increment();
+            strategy.onFailure(failures);
+        }
+
+        public void onSuccess(int failures) {
+            successes.increment();
+            strategy.onSuccess(failures);
+        }
+
+        double failureRate() {
+            long nOfFailures = failures.sum();
+            long total = nOfFailures + successes.sum();
+            return total == 0 ? 0 : (double) nOfFailures / total;
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Duration duration = Duration.ofSeconds(args.length > 0 ? Long.parseLong(args[0]) : 5);
+        Benchmark benchmark = new Benchmark(Duration.ofSeconds(1), duration, "push", "pop", "empty pop");
+
+        for (int nOfThreads : N_OF_THREADS) {
+            run(benchmark, "none", nOfThreads, BackoffStrategy::none);
+            run(benchmark, "spin wait", nOfThreads, BackoffStrategy::spinWait);
+            run(benchmark, "exponential", nOfThreads, () -> BackoffStrategy.exponential(4, 1024));
+            run(benchmark, "adaptive", nOfThreads, () -> BackoffStrategy.adaptive(1024));
+        }
+    }
+
+    private static void run(Benchmark benchmark, String name, int nOfThreads, Supplier<BackoffStrategy> strategy)
+      throws InterruptedException {
+        CountingBackoff backoff = new CountingBackoff(strategy.get());
+        LockFreeStack<Integer> stack = new LockFreeStack<>(backoff);
+        Integer element = 42;
+        Benchmark.Result result = benchmark.run(nOfThreads, random -> {
+            if (random.nextBoolean()) {
+                stack.push(element);
+                return PUSH;
+            }
+            return stack.pollOrNull() != null ? POP : EMPTY_POP;
+        });
+        System.out.printf("LockFreeStack with %s backoff, %d threads, CAS failure rate %.1f%%: %s%n",
+          name, nOfThreads, 100 * backoff.failureRate(), result);
+    }
+}
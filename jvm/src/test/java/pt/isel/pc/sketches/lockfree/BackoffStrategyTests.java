@@ -0,0 +1,36 @@
+package pt.isel.pc.sketches.lockfree;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+import static pt.isel.pc.TestUtils.expect;
+
+public class BackoffStrategyTests {
+
+    private static final int N_OF_OPERATIONS = 10_000;
+
+    @Test
+    public void adaptive_backoff_follows_the_observed_failure_rate() {
+        AdaptiveBackoff backoff = new AdaptiveBackoff(64);
+        assertTrue(backoff.getFailureRate() < 0.1);
+        // three failures before each success, i.e., 75% of the CASes fail
+        for (int i = 0; i < N_OF_OPERATIONS; ++i) {
+            backoff.onFailure(1);
+            backoff.onSuccess(3);
+        }
+        assertTrue(backoff.getFailureRate() > 0.6);
+        for (int i = 0; i < N_OF_OPERATIONS; ++i) {
+            backoff.onSuccess(0);
+        }
+        assertTrue(backoff.getFailureRate() < 0.1);
+    }
+
+    @Test
+    public void exponential_backoff_requires_valid_bounds() {
+        expect(IllegalArgumentException.class, () -> BackoffStrategy.exponential(0, 8));
+        expect(IllegalArgumentException.class, () -> BackoffStrategy.exponential(8, 4));
+        expect(IllegalArgumentException.class, () -> BackoffStrategy.adaptive(0));
+        // very large failure counts don't overflow the bound
+        BackoffStrategy.exponential(1, 4).onFailure(Integer.MAX_VALUE);
+    }
+}
@@ -0,0 +1,104 @@
+package pt.isel.pc.sketches.lockfree;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static pt.isel.pc.TestUtils.expect;
+
+public class EpochReclamationTests {
+
+    private static final int N_OF_ALLOCATIONS = 10_000;
+
+    @Test
+    public void a_retired_node_is_only_reused_after_older_critical_sections_end() throws InterruptedException {
+        EpochReclamation<Object> reclamation = new EpochReclamation<>(Object::new, 16);
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread th = new Thread(() -> {
+            reclamation.enter();
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                // ignore
+            } finally {
+                reclamation.exit();
+            }
+        });
+        th.start();
+        entered.await();
+
+        // the other thread could have observed the node before it was retired
+        Object node = reclamation.allocate();
+        reclamation.retire(node);
+        for (int i = 0; i < N_OF_ALLOCATIONS; ++i) {
+            Object other = reclamation.allocate();
+            assertNotSame(node, other);
+            reclamation.retire(other);
+        }
+
+        release.countDown();
+        th.join();
+        boolean wasReused = false;
+        for (int i = 0; i < N_OF_ALLOCATIONS && !wasReused; ++i) {
+            Object other = reclamation.allocate();
+            wasReused = other == node;
+            reclamation.retire(other);
+        }
+        assertTrue(wasReused);
+    }
+
+    @Test
+    public void a_thread_terminated_inside_a_critical_section_does_not_block_the_reuse() throws InterruptedException {
+        EpochReclamation<Object> reclamation = new EpochReclamation<>(Object::new, 16);
+        // the thread terminates without exiting the critical section
+        Thread th = new Thread(reclamation::enter);
+        th.start();
+        th.join();
+
+        Object node = reclamation.allocate();
+        reclamation.retire(node);
+        boolean wasReused = false;
+        for (int i = 0; i < N_OF_ALLOCATIONS && !wasReused; ++i) {
+            Object other = reclamation.allocate();
+            wasReused = other == node;
+            reclamation.retire(other);
+        }
+        assertTrue(wasReused);
+    }
+
+    @Test
+    public void participants_of_terminated_threads_are_removed() throws InterruptedException {
+        EpochReclamation<Object> reclamation = new EpochReclamation<>(Object::new, 16);
+        int nOfThreads = 32;
+        for (int i = 0; i < nOfThreads; ++i) {
+            Thread th = new Thread(() -> reclamation.retire(reclamation.allocate()));
+            th.start();
+            th.join();
+        }
+
+        // the removal happens while advancing the epoch
+        for (int i = 0; i < N_OF_ALLOCATIONS; ++i) {
+            reclamation.retire(reclamation.allocate());
+        }
+        assertEquals(1, reclamation.nOfParticipants());
+    }
+
+    @Test
+    public void critical_sections_cannot_be_nested() {
+        EpochReclamation<Object> reclamation = new EpochReclamation<>(Object::new, 16);
+        reclamation.enter();
+        expect(IllegalStateException.class, () -> {
+            reclamation.enter();
+            return null;
+        });
+        reclamation.exit();
+        // after exiting, it can be entered again
+        reclamation.enter();
+        reclamation.exit();
+    }
+}
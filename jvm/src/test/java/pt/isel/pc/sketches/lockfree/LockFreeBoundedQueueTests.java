@@ -0,0 +1,224 @@
+package pt.isel.pc.sketches.lockfree;
+
+import org.junit.Test;
+import pt.isel.pc.TestHelper;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static pt.isel.pc.TestUtils.expect;
+
+public class LockFreeBoundedQueueTests {
+
+    private static final Duration TEST_DURATION = Duration.ofSeconds(5);
+    private static final int N_OF_PRODUCERS = 4;
+    private static final int N_OF_CONSUMERS = 4;
+    private static final int CAPACITY = 64;
+    private static final int BATCH_SIZE = 8;
+
+    // an element has the producer identifier and that producer's sequence number
+    private static long element(int producer, long sequence) {
+        return ((long) producer << 48) | sequence;
+    }
+
+    // the queue must be usable for more than one lap, i.e., no slot was left claimed
+    private static void assertIsUsable(LockFreeBoundedQueue<Integer> queue) {
+        for (int lap = 0; lap < 3; ++lap) {
+            for (int i = 0; i < queue.capacity(); ++i) {
+                assertTrue(queue.offer(i));
+            }
+            for (int i = 0; i < queue.capacity(); ++i) {
+                assertEquals(Integer.valueOf(i), queue.poll());
+            }
+            assertNull(queue.poll());
+        }
+    }
+
+    @Test
+    public void offer_returns_false_when_the_queue_is_full() {
+        LockFreeBoundedQueue<Integer> queue = new LockFreeBoundedQueue<>(5);
+        assertEquals(8, queue.capacity());
+        assertNull(queue.poll());
+        // more than one lap, so that slots are reused
+        for (int lap = 0; lap < 3; ++lap) {
+            for (int i = 0; i < 8; ++i) {
+                assertTrue(queue.offer(i));
+            }
+            assertFalse(queue.offer(8));
+            assertEquals(8, queue.size());
+            for (int i = 0; i < 8; ++i) {
+                assertEquals(Integer.valueOf(i), queue.poll());
+            }
+            assertNull(queue.poll());
+        }
+    }
+
+    @Test
+    public void the_minimum_capacity_is_two() {
+        LockFreeBoundedQueue<Integer> queue = new LockFreeBoundedQueue<>(1);
+        assertEquals(2, queue.capacity());
+        assertTrue(queue.offer(0));
+        assertTrue(queue.offer(1));
+        assertFalse(queue.offer(2));
+        assertEquals(Integer.valueOf(0), queue.poll());
+        assertEquals(Integer.valueOf(1), queue.poll());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void batch_operations_are_bounded_by_the_free_and_used_slots() {
+        LockFreeBoundedQueue<Integer> queue = new LockFreeBoundedQueue<>(8);
+        AtomicInteger next = new AtomicInteger();
+        assertEquals(3, queue.fill(next::getAndIncrement, 3));
+        assertEquals(5, queue.fill(next::getAndIncrement, 10));
+        assertEquals(0, queue.fill(next::getAndIncrement, 10));
+        assertEquals(8, next.get());
+
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(6, queue.drainTo(drained::add, 6));
+        assertTrue(queue.offer(8));
+        assertEquals(3, queue.drainTo(drained::add, 10));
+        assertEquals(0, queue.drainTo(drained::add, 10));
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8), drained);
+    }
+
+    @Test
+    public void fill_with_a_throwing_supplier_keeps_the_obtained_elements_and_the_queue_usable() {
+        LockFreeBoundedQueue<Integer> queue = new LockFreeBoundedQueue<>(8);
+        AtomicInteger next = new AtomicInteger();
+        expect(IllegalStateException.class, () -> queue.fill(() -> {
+            if (next.get() == 2) {
+                throw new IllegalStateException();
+            }
+            return next.getAndIncrement();
+        }, 5));
+        assertTrue(queue.offer(2));
+
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(3, queue.drainTo(drained::add, 10));
+        assertEquals(Arrays.asList(0, 1, 2), drained);
+        assertIsUsable(queue);
+    }
+
+    @Test
+    public void fill_with_a_supplier_returning_null_keeps_the_obtained_elements_and_the_queue_usable() {
+        LockFreeBoundedQueue<Integer> queue = new LockFreeBoundedQueue<>(8);
+        AtomicInteger next = new AtomicInteger();
+        expect(IllegalArgumentException.class,
+          () -> queue.fill(() -> next.get() == 2 ? null : next.getAndIncrement(), 5));
+
+        assertEquals(Integer.valueOf(0), queue.poll());
+        assertEquals(Integer.valueOf(1), queue.poll());
+        assertNull(queue.poll());
+        assertIsUsable(queue);
+    }
+
+    @Test
+    public void drain_to_with_a_throwing_consumer_keeps_the_queue_usable() {
+        LockFreeBoundedQueue<Integer> queue = new LockFreeBoundedQueue<>(8);
+        for (int i = 0; i < 5; ++i) {
+            assertTrue(queue.offer(i));
+        }
+        expect(IllegalStateException.class, () -> queue.drainTo(e -> {
+            throw new IllegalStateException();
+        }, 3));
+
+        // the elements not drained remain in the queue
+        assertEquals(Integer.valueOf(3), queue.poll());
+        assertEquals(Integer.valueOf(4), queue.poll());
+        assertNull(queue.poll());
+        assertIsUsable(queue);
+    }
+
+    @Test
+    public void elements_are_neither_lost_nor_duplicated_nor_reordered() throws InterruptedException {
+        LockFreeBoundedQueue<Long> queue = new LockFreeBoundedQueue<>(CAPACITY);
+        AtomicInteger producerIds = new AtomicInteger();
+        AtomicInteger consumerIds = new AtomicInteger();
+        // number of elements offered by each producer
+        AtomicLongArray offered = new AtomicLongArray(N_OF_PRODUCERS);
+        LongAdder polled = new LongAdder();
+        LongAdder polledSum = new LongAdder();
+        TestHelper helper = new TestHelper(TEST_DURATION);
+
+        helper.createAndStartMultiple(N_OF_PRODUCERS, isDone -> {
+            int producer = producerIds.getAndIncrement();
+            // half of the producers use the batch operation
+            boolean useBatch = producer % 2 == 0;
+            // the supplier advances the sequence once per offered element
+            long[] sequence = {0};
+            while (!isDone.get()) {
+                boolean wasOffered;
+                if (useBatch) {
+                    wasOffered = queue.fill(() -> element(producer, sequence[0]++), BATCH_SIZE) > 0;
+                } else {
+                    wasOffered = queue.offer(element(producer, sequence[0]));
+                    if (wasOffered) {
+                        sequence[0] += 1;
+                    }
+                }
+                if (!wasOffered) {
+                    // full queue
+                    Thread.yield();
+                }
+                offered.set(producer, sequence[0]);
+            }
+        });
+        helper.createAndStartMultiple(N_OF_CONSUMERS, isDone -> {
+            // half of the consumers use the batch operation
+            boolean useBatch = consumerIds.getAndIncrement() % 2 == 0;
+            // each consumer must observe the elements of each producer in increasing sequence order
+            long[] lastSequence = new long[N_OF_PRODUCERS];
+            Arrays.fill(lastSequence, -1);
+            while (!isDone.get()) {
+                List<Long> elements = new ArrayList<>();
+                if (useBatch) {
+                    queue.drainTo(elements::add, BATCH_SIZE);
+                } else {
+                    Long element = queue.poll();
+                    if (element != null) {
+                        elements.add(element);
+                    }
+                }
+                if (elements.isEmpty()) {
+                    Thread.yield();
+                }
+                for (long element : elements) {
+                    int producer = (int) (element >>> 48);
+                    long sequence = element & ((1L << 48) - 1);
+                    assertTrue(sequence > lastSequence[producer]);
+                    lastSequence[producer] = sequence;
+                    polled.increment();
+                    polledSum.add(element);
+                }
+            }
+        });
+        helper.join();
+
+        // the remaining elements are drained after all threads ended
+        Long element;
+        while ((element = queue.poll()) != null) {
+            polled.increment();
+            polledSum.add(element);
+        }
+        long expectedCount = 0;
+        long expectedSum = 0;
+        for (int producer = 0; producer < N_OF_PRODUCERS; ++producer) {
+            long n = offered.get(producer);
+            expectedCount += n;
+            expectedSum += n * element(producer, 0) + n * (n - 1) / 2;
+        }
+        assertEquals(expectedCount, polled.sum());
+        assertEquals(expectedSum, polledSum.sum());
+        assertEquals(0, queue.size());
+    }
+}
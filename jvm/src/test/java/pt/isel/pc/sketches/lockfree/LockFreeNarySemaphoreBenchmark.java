@@ -0,0 +1,84 @@
+package pt.isel.pc.sketches.lockfree;
+
+import pt.isel.pc.Benchmark;
+import pt.isel.pc.examples.synchronizers.NarySemaphoreKS;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+// Compares LockFreeNarySemaphore with NarySemaphoreKS and with java.util.concurrent.Semaphore (fair and non-fair),
+// for an increasing number of threads, each one repeatedly acquiring and releasing one or two units.
+// The number of units is the number of processors, so threads wait as soon as they outnumber the processors.
+// Usage: LockFreeNarySemaphoreBenchmark [durationInSeconds]
+public class LockFreeNarySemaphoreBenchmark {
+
+    private static final int ACQUIRE_ONE = 0;
+    private static final int ACQUIRE_TWO = 1;
+    private static final int[] N_OF_THREADS = {1, 2, 4, 8, 16, 32};
+    // number of spin iterations while holding the units, to have a critical section with some length
+    private static final int HOLD_SPINS = 16;
+
+    private interface Sem {
+        void acquire(int units) throws InterruptedException;
+
+        void release(int units);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Duration duration = Duration.ofSeconds(args.length > 0 ? Long.parseLong(args[0]) : 5);
+        Benchmark benchmark = new Benchmark(Duration.ofSeconds(1), duration, "acquire 1", "acquire 2");
+        // at least two units, so that two units can be acquired
+        int nOfUnits = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+        for (int nOfThreads : N_OF_THREADS) {
+            LockFreeNarySemaphore lockFree = new LockFreeNarySemaphore(nOfUnits);
+            run(benchmark, "LockFreeNarySemaphore", nOfThreads, new Sem() {
+                public void acquire(int units) throws InterruptedException {
+                    lockFree.acquire(units, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+                }
+
+                public void release(int units) {
+                    lockFree.release(units);
+                }
+            });
+
+            NarySemaphoreKS monitorBased = new NarySemaphoreKS(nOfUnits);
+            run(benchmark, "NarySemaphoreKS", nOfThreads, new Sem() {
+                public void acquire(int units) throws InterruptedException {
+                    monitorBased.acquire(units, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+                }
+
+                public void release(int units) {
+                    monitorBased.release(units);
+                }
+            });
+
+            for (boolean isFair : new boolean[]{true, false}) {
+                Semaphore semaphore = new Semaphore(nOfUnits, isFair);
+                run(benchmark, isFair ? "Semaphore (fair)" : "Semaphore (non-fair)", nOfThreads, new Sem() {
+                    public void acquire(int units) throws InterruptedException {
+                        semaphore.acquire(units);
+                    }
+
+                    public void release(int units) {
+                        semaphore.release(units);
+                    }
+                });
+            }
+        }
+    }
+
+    private static void run(Benchmark benchmark, String name, int nOfThreads, Sem sem) throws InterruptedException {
+        Benchmark.Result result = benchmark.run(nOfThreads, random -> {
+            int units = 1 + random.nextInt(2);
+            sem.acquire(units);
+            for (int i = 0; i < HOLD_SPINS; ++i) {
+                Thread.onSpinWait();
+            }
+            sem.release(units);
+            return units == 1 ? ACQUIRE_ONE : ACQUIRE_TWO;
+        });
+        System.out.printf("%s, %d threads: %s%n", name, nOfThreads, result);
+    }
+}
@@ -0,0 +1,147 @@
+package pt.isel.pc.sketches.lockfree;
+
+import org.junit.Test;
+import pt.isel.pc.TestHelper;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LockFreeNarySemaphoreTests {
+
+    private static final Duration TEST_DURATION = Duration.ofSeconds(5);
+
+    private static Thread startAcquire(LockFreeNarySemaphore sem, int units, long timeout,
+                                       CompletableFuture<Boolean> result) {
+        Thread th = new Thread(() -> {
+            try {
+                result.complete(sem.acquire(units, timeout, TimeUnit.MILLISECONDS));
+            } catch (InterruptedException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        th.start();
+        return th;
+    }
+
+    @Test
+    public void waiting_acquires_are_completed_by_release_in_fifo_order() throws Exception {
+        LockFreeNarySemaphore sem = new LockFreeNarySemaphore(1);
+        CompletableFuture<Boolean> first = new CompletableFuture<>();
+        CompletableFuture<Boolean> second = new CompletableFuture<>();
+        Thread th1 = startAcquire(sem, 3, Long.MAX_VALUE, first);
+        // wait for the first request to be in the queue
+        Thread.sleep(100);
+        Thread th2 = startAcquire(sem, 1, Long.MAX_VALUE, second);
+        Thread.sleep(100);
+        // the head request doesn't fit, so no request can be completed
+        assertFalse(first.isDone());
+        assertFalse(second.isDone());
+
+        sem.release(2);
+        assertTrue(first.get(1, TimeUnit.SECONDS));
+        assertFalse(second.isDone());
+        sem.release(1);
+        assertTrue(second.get(1, TimeUnit.SECONDS));
+        assertEquals(0, sem.availableUnits());
+        th1.join();
+        th2.join();
+    }
+
+    @Test
+    public void single_release_completes_all_the_waiters_that_fit() throws Exception {
+        LockFreeNarySemaphore sem = new LockFreeNarySemaphore(0);
+        int nOfWaiters = 4;
+        List<CompletableFuture<Boolean>> results = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < nOfWaiters; ++i) {
+            CompletableFuture<Boolean> result = new CompletableFuture<>();
+            results.add(result);
+            threads.add(startAcquire(sem, 1, Long.MAX_VALUE, result));
+        }
+        Thread.sleep(100);
+
+        // release only wakes up the head waiter, which then grants the following ones
+        sem.release(nOfWaiters);
+        for (CompletableFuture<Boolean> result : results) {
+            assertTrue(result.get(1, TimeUnit.SECONDS));
+        }
+        assertEquals(0, sem.availableUnits());
+        for (Thread th : threads) {
+            th.join();
+        }
+    }
+
+    @Test
+    public void head_request_giving_up_on_timeout_completes_the_following_ones() throws Exception {
+        LockFreeNarySemaphore sem = new LockFreeNarySemaphore(1);
+        CompletableFuture<Boolean> large = new CompletableFuture<>();
+        CompletableFuture<Boolean> small = new CompletableFuture<>();
+        Thread th1 = startAcquire(sem, 3, 500, large);
+        Thread.sleep(100);
+        Thread th2 = startAcquire(sem, 1, Long.MAX_VALUE, small);
+        Thread.sleep(100);
+        assertFalse(small.isDone());
+
+        assertFalse(large.get(1, TimeUnit.SECONDS));
+        assertTrue(small.get(1, TimeUnit.SECONDS));
+        assertEquals(0, sem.availableUnits());
+        th1.join();
+        th2.join();
+    }
+
+    @Test
+    public void head_request_giving_up_on_interrupt_completes_the_following_ones() throws Exception {
+        LockFreeNarySemaphore sem = new LockFreeNarySemaphore(1);
+        CompletableFuture<Boolean> large = new CompletableFuture<>();
+        CompletableFuture<Boolean> small = new CompletableFuture<>();
+        Thread th1 = startAcquire(sem, 3, Long.MAX_VALUE, large);
+        Thread.sleep(100);
+        Thread th2 = startAcquire(sem, 1, Long.MAX_VALUE, small);
+        Thread.sleep(100);
+        assertFalse(small.isDone());
+
+        th1.interrupt();
+        try {
+            large.get(1, TimeUnit.SECONDS);
+            throw new AssertionError("an InterruptedException was expected");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof InterruptedException);
+        }
+        assertTrue(small.get(1, TimeUnit.SECONDS));
+        assertEquals(0, sem.availableUnits());
+        th1.join();
+        th2.join();
+    }
+
+    @Test
+    public void total_units_are_preserved() throws InterruptedException {
+        int nOfUnits = 10;
+        LockFreeNarySemaphore sem = new LockFreeNarySemaphore(nOfUnits);
+        AtomicInteger acquiredUnits = new AtomicInteger();
+        TestHelper helper = new TestHelper(TEST_DURATION);
+        helper.createAndStartMultiple(8, isDone -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            while (!isDone.get()) {
+                int units = 1 + random.nextInt(4);
+                // short timeouts, so that waiters also give up, at the head or elsewhere in the queue
+                if (sem.acquire(units, random.nextInt(3), TimeUnit.MILLISECONDS)) {
+                    assertTrue(acquiredUnits.addAndGet(units) <= nOfUnits);
+                    acquiredUnits.addAndGet(-units);
+                    sem.release(units);
+                }
+            }
+        });
+        helper.join();
+        assertEquals(nOfUnits, sem.availableUnits());
+    }
+}
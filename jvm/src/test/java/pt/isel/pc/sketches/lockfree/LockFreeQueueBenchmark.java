@@ -0,0 +1,152 @@
+package pt.isel.pc.sketches.lockfree;
+
+import pt.isel.pc.Benchmark;
+
+import java.time.Duration;
+import java.util.LinkedList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Compares LockFreeQueue and LockFreeBoundedQueue with ConcurrentLinkedQueue, ArrayBlockingQueue
+// and a lock-based queue, across different numbers of producers and consumers.
+// Usage: LockFreeQueueBenchmark [durationInSeconds]
+public class LockFreeQueueBenchmark {
+
+    private static final int OFFER = 0;
+    private static final int POLL = 1;
+    private static final int EMPTY_POLL = 2;
+    private static final int THROTTLED = 3;
+    private static final int FULL_OFFER = 4;
+
+    // producers pause while the queue has more elements than this, to bound memory usage
+    private static final long MAX_BACKLOG = 1_000_000;
+    private static final long MAX_THROTTLE_NANOS = 10_000_000;
+    private static final int BOUNDED_CAPACITY = 1024;
+    private static final int[][] PRODUCERS_AND_CONSUMERS = {{1, 1}, {2, 2}, {4, 4}, {1, 4}, {4, 1}};
+
+    private interface Queue {
+        // returns false if the queue is full
+        boolean offer(Integer e);
+
+        Integer poll();
+    }
+
+    private static class LockBasedQueue implements Queue {
+        private final Lock lock = new ReentrantLock();
+        private final LinkedList<Integer> list = new LinkedList<>();
+
+        public boolean offer(Integer e) {
+            lock.lock();
+            try {
+                list.addLast(e);
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public Integer poll() {
+            lock.lock();
+            try {
+                return list.pollFirst();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Duration duration = Duration.ofSeconds(args.length > 0 ? Long.parseLong(args[0]) : 5);
+        Benchmark benchmark = new Benchmark(Duration.ofSeconds(1), duration, "offer", "poll", "empty poll", "throttled",
+          "full offer");
+
+        for (int[] config : PRODUCERS_AND_CONSUMERS) {
+            LockFreeQueue<Integer> lockFree = new LockFreeQueue<>();
+            run(benchmark, "LockFreeQueue", config[0], config[1], new Queue() {
+                public boolean offer(Integer e) {
+                    lockFree.offer(e);
+                    return true;
+                }
+
+                public Integer poll() {
+                    return lockFree.poll().orElse(null);
+                }
+            });
+
+            ConcurrentLinkedQueue<Integer> concurrent = new ConcurrentLinkedQueue<>();
+            run(benchmark, "ConcurrentLinkedQueue", config[0], config[1], new Queue() {
+                public boolean offer(Integer e) {
+                    return concurrent.offer(e);
+                }
+
+                public Integer poll() {
+                    return concurrent.poll();
+                }
+            });
+
+            LockFreeBoundedQueue<Integer> bounded = new LockFreeBoundedQueue<>(BOUNDED_CAPACITY);
+            run(benchmark, "LockFreeBoundedQueue", config[0], config[1], new Queue() {
+                public boolean offer(Integer e) {
+                    return bounded.offer(e);
+                }
+
+                public Integer poll() {
+                    return bounded.poll();
+                }
+            });
+
+            ArrayBlockingQueue<Integer> blocking = new ArrayBlockingQueue<>(BOUNDED_CAPACITY);
+            run(benchmark, "ArrayBlockingQueue", config[0], config[1], new Queue() {
+                public boolean offer(Integer e) {
+                    return blocking.offer(e);
+                }
+
+                public Integer poll() {
+                    return blocking.poll();
+                }
+            });
+
+            run(benchmark, "LockBasedQueue", config[0], config[1], new LockBasedQueue());
+        }
+    }
+
+    private static void run(Benchmark benchmark, String name, int nOfProducers, int nOfConsumers, Queue queue)
+      throws InterruptedException {
+        // the first threads to run are the producers
+        AtomicInteger threadIndexes = new AtomicInteger();
+        ThreadLocal<Boolean> isProducer = ThreadLocal.withInitial(() -> threadIndexes.getAndIncrement() < nOfProducers);
+        LongAdder offered = new LongAdder();
+        LongAdder polled = new LongAdder();
+        Integer element = 42;
+
+        Benchmark.Result result = benchmark.run(nOfProducers + nOfConsumers, random -> {
+            if (isProducer.get()) {
+                // the backlog is only checked occasionally, since summing the adders isn't cheap
+                if (random.nextInt(1024) == 0 && offered.sum() - polled.sum() > MAX_BACKLOG) {
+                    // bounded, since the consumers may have already stopped
+                    long deadline = System.nanoTime() + MAX_THROTTLE_NANOS;
+                    while (offered.sum() - polled.sum() > MAX_BACKLOG / 2 && System.nanoTime() < deadline) {
+                        Thread.yield();
+                    }
+                    return THROTTLED;
+                }
+                if (!queue.offer(element)) {
+                    return FULL_OFFER;
+                }
+                offered.increment();
+                return OFFER;
+            } else {
+                if (queue.poll() == null) {
+                    return EMPTY_POLL;
+                }
+                polled.increment();
+                return POLL;
+            }
+        });
+        System.out.printf("%s, %d producers, %d consumers: %s%n", name, nOfProducers, nOfConsumers, result);
+    }
+}
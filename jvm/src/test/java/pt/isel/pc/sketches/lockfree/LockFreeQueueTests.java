@@ -0,0 +1,108 @@
+package pt.isel.pc.sketches.lockfree;
+
+import org.junit.Test;
+import pt.isel.pc.TestHelper;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LockFreeQueueTests {
+
+    private static final Duration TEST_DURATION = Duration.ofSeconds(5);
+    private static final int N_OF_PRODUCERS = 4;
+    private static final int N_OF_CONSUMERS = 4;
+    // producers pause while the queue has more elements than this, to bound memory usage
+    private static final long MAX_BACKLOG = 100_000;
+
+    // an element has the producer identifier and that producer's sequence number
+    private static long element(int producer, long sequence) {
+        return ((long) producer << 48) | sequence;
+    }
+
+    @Test
+    public void elements_are_polled_in_fifo_order() {
+        LockFreeQueue<Integer> queue = new LockFreeQueue<>();
+        assertTrue(queue.isEmpty());
+        assertFalse(queue.poll().isPresent());
+        for (int i = 0; i < 10; ++i) {
+            queue.offer(i);
+        }
+        assertEquals(Optional.of(0), queue.peek());
+        for (int i = 0; i < 10; ++i) {
+            assertEquals(Optional.of(i), queue.poll());
+        }
+        assertTrue(queue.isEmpty());
+        assertFalse(queue.peek().isPresent());
+    }
+
+    @Test
+    public void elements_are_neither_lost_nor_duplicated_nor_reordered() throws InterruptedException {
+        LockFreeQueue<Long> queue = new LockFreeQueue<>();
+        AtomicInteger producerIds = new AtomicInteger();
+        // number of elements offered by each producer
+        AtomicLongArray offered = new AtomicLongArray(N_OF_PRODUCERS);
+        LongAdder totalOffered = new LongAdder();
+        LongAdder polled = new LongAdder();
+        LongAdder polledSum = new LongAdder();
+        TestHelper helper = new TestHelper(TEST_DURATION);
+
+        helper.createAndStartMultiple(N_OF_PRODUCERS, isDone -> {
+            int producer = producerIds.getAndIncrement();
+            long sequence = 0;
+            while (!isDone.get()) {
+                queue.offer(element(producer, sequence));
+                sequence += 1;
+                offered.set(producer, sequence);
+                totalOffered.increment();
+                if (sequence % 1024 == 0) {
+                    while (totalOffered.sum() - polled.sum() > MAX_BACKLOG && !isDone.get()) {
+                        Thread.yield();
+                    }
+                }
+            }
+        });
+        helper.createAndStartMultiple(N_OF_CONSUMERS, isDone -> {
+            // each consumer must observe the elements of each producer in increasing sequence order
+            long[] lastSequence = new long[N_OF_PRODUCERS];
+            Arrays.fill(lastSequence, -1);
+            while (!isDone.get()) {
+                Optional<Long> maybeElement = queue.poll();
+                if (maybeElement.isPresent()) {
+                    long element = maybeElement.get();
+                    int producer = (int) (element >>> 48);
+                    long sequence = element & ((1L << 48) - 1);
+                    assertTrue(sequence > lastSequence[producer]);
+                    lastSequence[producer] = sequence;
+                    polled.increment();
+                    polledSum.add(element);
+                }
+            }
+        });
+        helper.join();
+
+        // the remaining elements are drained after all threads ended
+        Optional<Long> maybeElement;
+        while ((maybeElement = queue.poll()).isPresent()) {
+            polled.increment();
+            polledSum.add(maybeElement.get());
+        }
+        long expectedCount = 0;
+        long expectedSum = 0;
+        for (int producer = 0; producer < N_OF_PRODUCERS; ++producer) {
+            long n = offered.get(producer);
+            expectedCount += n;
+            expectedSum += n * element(producer, 0) + n * (n - 1) / 2;
+        }
+        assertEquals(expectedCount, polled.sum());
+        assertEquals(expectedSum, polledSum.sum());
+        assertTrue(queue.isEmpty());
+    }
+}
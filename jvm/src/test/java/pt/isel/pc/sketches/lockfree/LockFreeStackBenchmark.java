@@ -0,0 +1,105 @@
+package pt.isel.pc.sketches.lockfree;
+
+import pt.isel.pc.Benchmark;
+
+import java.time.Duration;
+
+// Compares LockFreeStack with and without elimination backoff, LockFreeStack using pollOrNull,
+// PooledLockFreeStack and LongLockFreeStack, for an increasing number of threads, each one doing the same number of pushes and pops.
+// Usage: LockFreeStackBenchmark [durationInSeconds]
+public class LockFreeStackBenchmark {
+
+    private static final int PUSH = 0;
+    private static final int POP = 1;
+    private static final int EMPTY_POP = 2;
+    private static final int FULL_PUSH = 3;
+    private static final int LONG_STACK_CAPACITY = 1 << 16;
+    private static final long EMPTY = -1;
+    private static final int[] N_OF_THREADS = {1, 2, 4, 8, 16, 32};
+
+    private interface Stack {
+        // returns false if the stack was full
+        boolean push(Integer e);
+
+        // returns false if the stack was empty
+        boolean pop();
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Duration duration = Duration.ofSeconds(args.length > 0 ? Long.parseLong(args[0]) : 5);
+        Benchmark benchmark = new Benchmark(Duration.ofSeconds(1), duration, "push", "pop", "empty pop", "full push");
+
+        for (int nOfThreads : N_OF_THREADS) {
+            LockFreeStack<Integer> plain = new LockFreeStack<>();
+            run(benchmark, "LockFreeStack", nOfThreads, new Stack() {
+                public boolean push(Integer e) {
+                    plain.push(e);
+                    return true;
+                }
+
+                public boolean pop() {
+                    return plain.pop().isPresent();
+                }
+            });
+
+            LockFreeStack<Integer> eliminating = new LockFreeStack<>(Runtime.getRuntime().availableProcessors());
+            run(benchmark, "LockFreeStack with elimination", nOfThreads, new Stack() {
+                public boolean push(Integer e) {
+                    eliminating.push(e);
+                    return true;
+                }
+
+                public boolean pop() {
+                    return eliminating.pop().isPresent();
+                }
+            });
+
+            LockFreeStack<Integer> nullable = new LockFreeStack<>();
+            run(benchmark, "LockFreeStack with pollOrNull", nOfThreads, new Stack() {
+                public boolean push(Integer e) {
+                    nullable.push(e);
+                    return true;
+                }
+
+                public boolean pop() {
+                    return nullable.pollOrNull() != null;
+                }
+            });
+
+            PooledLockFreeStack<Integer> pooled = new PooledLockFreeStack<>();
+            run(benchmark, "PooledLockFreeStack", nOfThreads, new Stack() {
+                public boolean push(Integer e) {
+                    pooled.push(e);
+                    return true;
+                }
+
+                public boolean pop() {
+                    return pooled.pollOrNull() != null;
+                }
+            });
+
+            LongLockFreeStack primitive = new LongLockFreeStack(LONG_STACK_CAPACITY);
+            run(benchmark, "LongLockFreeStack", nOfThreads, new Stack() {
+                public boolean push(Integer e) {
+                    return primitive.push(e);
+                }
+
+                public boolean pop() {
+                    return primitive.pollOrElse(EMPTY) != EMPTY;
+                }
+            });
+        }
+    }
+
+    private static void run(Benchmark benchmark, String name, int nOfThreads, Stack stack)
+      throws InterruptedException {
+        Integer element = 42;
+        Benchmark.Result result = benchmark.run(nOfThreads, random -> {
+            if (random.nextBoolean()) {
+                return stack.push(element) ? PUSH : FULL_PUSH;
+            }
+            return stack.pop() ? POP : EMPTY_POP;
+        });
+        System.out.printf("%s, %d threads: %s%n", name, nOfThreads, result);
+    }
+}
@@ -0,0 +1,90 @@
+package pt.isel.pc.sketches.lockfree;
+
+import org.junit.Test;
+import pt.isel.pc.TestHelper;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class LockFreeStackTests {
+
+    private static final Duration TEST_DURATION = Duration.ofSeconds(5);
+    private static final int N_OF_THREADS = 8;
+
+    @Test
+    public void elements_are_popped_in_lifo_order() {
+        LockFreeStack<Integer> stack = new LockFreeStack<>(4);
+        for (int i = 0; i < 10; ++i) {
+            stack.push(i);
+        }
+        for (int i = 9; i >= 0; --i) {
+            assertEquals(Optional.of(i), stack.pop());
+        }
+        assertFalse(stack.pop().isPresent());
+        stack.push(10);
+        assertEquals(Integer.valueOf(10), stack.pollOrNull());
+        assertNull(stack.pollOrNull());
+    }
+
+    @Test
+    public void elements_are_neither_lost_nor_duplicated() throws InterruptedException {
+        test(new LockFreeStack<>());
+    }
+
+    @Test
+    public void elements_are_neither_lost_nor_duplicated_with_elimination() throws InterruptedException {
+        test(new LockFreeStack<>(N_OF_THREADS));
+    }
+
+    @Test
+    public void elements_are_neither_lost_nor_duplicated_with_exponential_backoff() throws InterruptedException {
+        test(new LockFreeStack<>(BackoffStrategy.exponential(1, 64)));
+    }
+
+    @Test
+    public void elements_are_neither_lost_nor_duplicated_with_elimination_and_adaptive_backoff()
+      throws InterruptedException {
+        test(new LockFreeStack<>(N_OF_THREADS, BackoffStrategy.adaptive(64)));
+    }
+
+    private void test(LockFreeStack<Long> stack) throws InterruptedException {
+        AtomicLong nextElement = new AtomicLong();
+        LongAdder pushedSum = new LongAdder();
+        LongAdder poppedSum = new LongAdder();
+        LongAdder size = new LongAdder();
+        TestHelper helper = new TestHelper(TEST_DURATION);
+        helper.createAndStartMultiple(N_OF_THREADS, isDone -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            while (!isDone.get()) {
+                // pops are slightly more frequent, to keep the stack small
+                if (random.nextInt(100) < 48) {
+                    long element = nextElement.getAndIncrement();
+                    stack.push(element);
+                    pushedSum.add(element);
+                    size.increment();
+                } else {
+                    Optional<Long> element = stack.pop();
+                    if (element.isPresent()) {
+                        poppedSum.add(element.get());
+                        size.decrement();
+                    }
+                }
+            }
+        });
+        helper.join();
+        Optional<Long> element;
+        while ((element = stack.pop()).isPresent()) {
+            poppedSum.add(element.get());
+            size.decrement();
+        }
+        assertEquals(0, size.sum());
+        assertEquals(pushedSum.sum(), poppedSum.sum());
+    }
+}
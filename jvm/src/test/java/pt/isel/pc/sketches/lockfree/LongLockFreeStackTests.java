@@ -0,0 +1,85 @@
+package pt.isel.pc.sketches.lockfree;
+
+import org.junit.Test;
+import pt.isel.pc.TestHelper;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LongLockFreeStackTests {
+
+    private static final Duration TEST_DURATION = Duration.ofSeconds(5);
+    private static final int N_OF_THREADS = 8;
+    // small, so that the same nodes are reused very often
+    private static final int N_OF_IDS = 16;
+    private static final long EMPTY = -1;
+
+    @Test
+    public void values_are_popped_in_lifo_order_up_to_the_capacity() {
+        LongLockFreeStack stack = new LongLockFreeStack(4);
+        assertTrue(stack.isEmpty());
+        assertEquals(EMPTY, stack.pollOrElse(EMPTY));
+        // more than one round, so that nodes are reused
+        for (int round = 0; round < 3; ++round) {
+            for (long i = 0; i < 4; ++i) {
+                assertTrue(stack.push(i));
+            }
+            assertFalse(stack.push(4));
+            for (long i = 3; i >= 0; --i) {
+                assertEquals(i, stack.pollOrElse(EMPTY));
+            }
+            assertEquals(EMPTY, stack.pollOrElse(EMPTY));
+        }
+    }
+
+    @Test
+    public void an_id_is_never_owned_by_more_than_one_thread() throws InterruptedException {
+        // the stack is used as an id allocator, where an ABA problem would give the same id to two threads
+        LongLockFreeStack stack = new LongLockFreeStack(N_OF_IDS);
+        for (long id = 0; id < N_OF_IDS; ++id) {
+            assertTrue(stack.push(id));
+        }
+        AtomicIntegerArray owned = new AtomicIntegerArray(N_OF_IDS);
+        LongAdder allocations = new LongAdder();
+        TestHelper helper = new TestHelper(TEST_DURATION);
+        helper.createAndStartMultiple(N_OF_THREADS, isDone -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long[] ids = new long[N_OF_IDS];
+            while (!isDone.get()) {
+                int nOfIds = 0;
+                int wanted = 1 + random.nextInt(3);
+                while (nOfIds < wanted) {
+                    long id = stack.pollOrElse(EMPTY);
+                    if (id == EMPTY) {
+                        break;
+                    }
+                    assertTrue(owned.compareAndSet((int) id, 0, 1));
+                    ids[nOfIds++] = id;
+                }
+                allocations.add(nOfIds);
+                for (int i = 0; i < nOfIds; ++i) {
+                    assertTrue(owned.compareAndSet((int) ids[i], 1, 0));
+                    assertTrue(stack.push(ids[i]));
+                }
+            }
+        });
+        helper.join();
+        assertTrue(allocations.sum() > 0);
+
+        // all ids are back on the stack
+        long sum = 0;
+        for (int i = 0; i < N_OF_IDS; ++i) {
+            long id = stack.pollOrElse(EMPTY);
+            assertTrue(id != EMPTY);
+            sum += id;
+        }
+        assertTrue(stack.isEmpty());
+        assertEquals((long) N_OF_IDS * (N_OF_IDS - 1) / 2, sum);
+    }
+}
@@ -0,0 +1,102 @@
+package pt.isel.pc.sketches.lockfree;
+
+import org.junit.Test;
+import pt.isel.pc.TestHelper;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PooledLockFreeQueueTests {
+
+    private static final Duration TEST_DURATION = Duration.ofSeconds(5);
+    private static final int N_OF_THREADS = 8;
+    // small pools and backlog, so that the same nodes are reused very often
+    private static final int MAX_POOLED_PER_THREAD = 4;
+    private static final long MAX_BACKLOG = 16;
+
+    // an element has the thread identifier and that thread's sequence number
+    private static long element(int thread, long sequence) {
+        return ((long) thread << 48) | sequence;
+    }
+
+    @Test
+    public void elements_are_polled_in_fifo_order() {
+        PooledLockFreeQueue<Integer> queue = new PooledLockFreeQueue<>(MAX_POOLED_PER_THREAD);
+        // more than one round, so that nodes are reused
+        for (int round = 0; round < 3; ++round) {
+            for (int i = 0; i < 10; ++i) {
+                queue.offer(i);
+            }
+            for (int i = 0; i < 10; ++i) {
+                assertEquals(Integer.valueOf(i), queue.pollOrNull());
+            }
+            assertNull(queue.pollOrNull());
+            assertTrue(queue.isEmpty());
+        }
+    }
+
+    @Test
+    public void elements_are_neither_lost_nor_duplicated_nor_reordered_with_node_reuse()
+      throws InterruptedException {
+        PooledLockFreeQueue<Long> queue = new PooledLockFreeQueue<>(MAX_POOLED_PER_THREAD);
+        AtomicInteger threadIds = new AtomicInteger();
+        // number of elements offered by each thread
+        AtomicLongArray offered = new AtomicLongArray(N_OF_THREADS);
+        LongAdder totalOffered = new LongAdder();
+        LongAdder polled = new LongAdder();
+        LongAdder polledSum = new LongAdder();
+        TestHelper helper = new TestHelper(TEST_DURATION);
+
+        // each thread both offers and polls, so that the nodes it retires are reused by its offers
+        helper.createAndStartMultiple(N_OF_THREADS, isDone -> {
+            int thread = threadIds.getAndIncrement();
+            long sequence = 0;
+            // each thread must observe the elements of each other thread in increasing sequence order
+            long[] lastSequence = new long[N_OF_THREADS];
+            Arrays.fill(lastSequence, -1);
+            while (!isDone.get()) {
+                if (totalOffered.sum() - polled.sum() < MAX_BACKLOG) {
+                    queue.offer(element(thread, sequence));
+                    sequence += 1;
+                    offered.set(thread, sequence);
+                    totalOffered.increment();
+                }
+                Long maybeElement = queue.pollOrNull();
+                if (maybeElement != null) {
+                    long element = maybeElement;
+                    int producer = (int) (element >>> 48);
+                    long producerSequence = element & ((1L << 48) - 1);
+                    assertTrue(producerSequence > lastSequence[producer]);
+                    lastSequence[producer] = producerSequence;
+                    polled.increment();
+                    polledSum.add(element);
+                }
+            }
+        });
+        helper.join();
+
+        // the remaining elements are drained after all threads ended
+        Long element;
+        while ((element = queue.pollOrNull()) != null) {
+            polled.increment();
+            polledSum.add(element);
+        }
+        long expectedCount = 0;
+        long expectedSum = 0;
+        for (int thread = 0; thread < N_OF_THREADS; ++thread) {
+            long n = offered.get(thread);
+            expectedCount += n;
+            expectedSum += n * element(thread, 0) + n * (n - 1) / 2;
+        }
+        assertEquals(expectedCount, polled.sum());
+        assertEquals(expectedSum, polledSum.sum());
+        assertTrue(queue.isEmpty());
+    }
+}
@@ -0,0 +1,84 @@
+package pt.isel.pc.sketches.lockfree;
+
+import org.junit.Test;
+import pt.isel.pc.TestHelper;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PooledLockFreeStackTests {
+
+    private static final Duration TEST_DURATION = Duration.ofSeconds(5);
+    private static final int N_OF_THREADS = 8;
+    // few elements and small pools, so that the same nodes are reused very often
+    private static final int N_OF_IDS = 16;
+    private static final int MAX_POOLED_PER_THREAD = 4;
+
+    @Test
+    public void elements_are_popped_in_lifo_order() {
+        PooledLockFreeStack<Integer> stack = new PooledLockFreeStack<>(MAX_POOLED_PER_THREAD);
+        // more than one round, so that nodes are reused
+        for (int round = 0; round < 3; ++round) {
+            for (int i = 0; i < 10; ++i) {
+                stack.push(i);
+            }
+            for (int i = 9; i >= 0; --i) {
+                assertEquals(Integer.valueOf(i), stack.pollOrNull());
+            }
+            assertNull(stack.pollOrNull());
+            assertTrue(stack.isEmpty());
+        }
+    }
+
+    @Test
+    public void an_element_is_never_owned_by_more_than_one_thread_with_node_reuse() throws InterruptedException {
+        // the stack is used as an id allocator, where an ABA problem would give the same id to two threads
+        PooledLockFreeStack<Integer> stack = new PooledLockFreeStack<>(MAX_POOLED_PER_THREAD);
+        for (int id = 0; id < N_OF_IDS; ++id) {
+            stack.push(id);
+        }
+        AtomicIntegerArray owned = new AtomicIntegerArray(N_OF_IDS);
+        LongAdder allocations = new LongAdder();
+        TestHelper helper = new TestHelper(TEST_DURATION);
+        helper.createAndStartMultiple(N_OF_THREADS, isDone -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int[] ids = new int[N_OF_IDS];
+            while (!isDone.get()) {
+                int nOfIds = 0;
+                int wanted = 1 + random.nextInt(3);
+                while (nOfIds < wanted) {
+                    Integer id = stack.pollOrNull();
+                    if (id == null) {
+                        break;
+                    }
+                    assertTrue(owned.compareAndSet(id, 0, 1));
+                    ids[nOfIds++] = id;
+                }
+                allocations.add(nOfIds);
+                for (int i = 0; i < nOfIds; ++i) {
+                    assertTrue(owned.compareAndSet(ids[i], 1, 0));
+                    stack.push(ids[i]);
+                }
+            }
+        });
+        helper.join();
+        assertTrue(allocations.sum() > 0);
+
+        // all ids are back on the stack
+        int sum = 0;
+        for (int i = 0; i < N_OF_IDS; ++i) {
+            Integer id = stack.pollOrNull();
+            assertNotNull(id);
+            sum += id;
+        }
+        assertTrue(stack.isEmpty());
+        assertEquals(N_OF_IDS * (N_OF_IDS - 1) / 2, sum);
+    }
+}
@@ -0,0 +1,159 @@
+package pt.isel.pc.sketches.synchronizers;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AsyncReadersWriterLockTests {
+
+    private static final int N_OF_REPETITIONS = 1000;
+
+    private static CompletableFuture<Boolean> startRead(AsyncReadersWriterLock lock, long timeout) {
+        return lock.startReadAsync(timeout, TimeUnit.MILLISECONDS);
+    }
+
+    private static CompletableFuture<Boolean> startWrite(AsyncReadersWriterLock lock, long timeout) {
+        return lock.startWriteAsync(timeout, TimeUnit.MILLISECONDS);
+    }
+
+    // The lock is free if a writer can start without waiting
+    private static void assertIsFree(AsyncReadersWriterLock lock) throws Exception {
+        assertTrue(startWrite(lock, 0).get());
+        lock.endWrite();
+    }
+
+    // Completes with true if, when the future completes, another thread can use the lock,
+    // i.e., if the continuation doesn't run while the monitor is held
+    private static CompletableFuture<Boolean> monitorIsFreeOnCompletion(
+      AsyncReadersWriterLock lock, CompletableFuture<Boolean> future) {
+        CompletableFuture<Boolean> isFree = new CompletableFuture<>();
+        future.whenComplete((result, throwable) -> {
+            Thread th = new Thread(() -> {
+                if (startRead(lock, 0).join()) {
+                    lock.endRead();
+                }
+            });
+            th.start();
+            try {
+                th.join(1000);
+            } catch (InterruptedException e) {
+                // ignore
+            }
+            isFree.complete(!th.isAlive());
+        });
+        return isFree;
+    }
+
+    @Test
+    public void a_single_end_write_completes_the_whole_reader_batch() throws Exception {
+        AsyncReadersWriterLock lock = new AsyncReadersWriterLock();
+        assertTrue(startWrite(lock, 0).get());
+        List<CompletableFuture<Boolean>> readers = new ArrayList<>();
+        for (int i = 0; i < 4; ++i) {
+            readers.add(startRead(lock, Long.MAX_VALUE));
+        }
+        for (CompletableFuture<Boolean> reader : readers) {
+            assertFalse(reader.isDone());
+        }
+
+        lock.endWrite();
+        for (CompletableFuture<Boolean> reader : readers) {
+            assertTrue(reader.get(1, TimeUnit.SECONDS));
+        }
+        // the writer waits for all the readers of the batch
+        CompletableFuture<Boolean> writer = startWrite(lock, Long.MAX_VALUE);
+        for (CompletableFuture<Boolean> ignored : readers) {
+            assertFalse(writer.isDone());
+            lock.endRead();
+        }
+        assertTrue(writer.get(1, TimeUnit.SECONDS));
+        lock.endWrite();
+        assertIsFree(lock);
+    }
+
+    @Test
+    public void cancelling_a_reader_after_the_grant_releases_its_read() throws Exception {
+        AsyncReadersWriterLock lock = new AsyncReadersWriterLock();
+        assertTrue(startWrite(lock, 0).get());
+        CompletableFuture<Boolean> first = startRead(lock, Long.MAX_VALUE);
+        CompletableFuture<Boolean> second = startRead(lock, Long.MAX_VALUE);
+        // whichever is completed first cancels the other one, after the batch was granted
+        first.thenRun(() -> second.cancel(true));
+        second.thenRun(() -> first.cancel(true));
+
+        lock.endWrite();
+        assertTrue(first.isCancelled() != second.isCancelled());
+        CompletableFuture<Boolean> granted = first.isCancelled() ? second : first;
+        assertTrue(granted.get(1, TimeUnit.SECONDS));
+        // only the granted reader still holds the lock
+        lock.endRead();
+        assertIsFree(lock);
+    }
+
+    @Test
+    public void cancelling_a_writer_never_leaves_the_lock_held() throws Exception {
+        AsyncReadersWriterLock lock = new AsyncReadersWriterLock();
+        for (int i = 0; i < N_OF_REPETITIONS; ++i) {
+            assertTrue(startRead(lock, 0).get());
+            CompletableFuture<Boolean> writer = startWrite(lock, Long.MAX_VALUE);
+            // the cancellation races with the grant done by endRead
+            Thread th = new Thread(() -> writer.cancel(true));
+            th.start();
+            lock.endRead();
+            th.join();
+            if (!writer.isCancelled()) {
+                assertTrue(writer.get());
+                lock.endWrite();
+            }
+            assertIsFree(lock);
+        }
+    }
+
+    @Test
+    public void timing_out_the_only_waiting_writer_lets_the_waiting_readers_in() throws Exception {
+        AsyncReadersWriterLock lock = new AsyncReadersWriterLock();
+        assertTrue(startRead(lock, 0).get());
+        CompletableFuture<Boolean> writer = startWrite(lock, 100);
+        // waits because of the waiting writer
+        CompletableFuture<Boolean> reader = startRead(lock, Long.MAX_VALUE);
+        assertFalse(reader.isDone());
+
+        assertFalse(writer.get(1, TimeUnit.SECONDS));
+        assertTrue(reader.get(1, TimeUnit.SECONDS));
+        lock.endRead();
+        lock.endRead();
+        assertIsFree(lock);
+    }
+
+    @Test
+    public void continuations_do_not_run_while_holding_the_monitor() throws Exception {
+        AsyncReadersWriterLock lock = new AsyncReadersWriterLock();
+        assertTrue(startRead(lock, 0).get());
+        CompletableFuture<Boolean> writer = startWrite(lock, Long.MAX_VALUE);
+        CompletableFuture<Boolean> reader = startRead(lock, Long.MAX_VALUE);
+        CompletableFuture<Boolean> timedOutWriter = startWrite(lock, 100);
+        CompletableFuture<Boolean> writerCompletion = monitorIsFreeOnCompletion(lock, writer);
+        CompletableFuture<Boolean> readerCompletion = monitorIsFreeOnCompletion(lock, reader);
+        CompletableFuture<Boolean> timeoutCompletion = monitorIsFreeOnCompletion(lock, timedOutWriter);
+
+        // completed by the timer
+        assertTrue(timeoutCompletion.get(2, TimeUnit.SECONDS));
+        assertFalse(timedOutWriter.get());
+        // completed by endRead
+        lock.endRead();
+        assertTrue(writerCompletion.get(2, TimeUnit.SECONDS));
+        assertTrue(writer.get());
+        // completed by endWrite
+        lock.endWrite();
+        assertTrue(readerCompletion.get(2, TimeUnit.SECONDS));
+        assertTrue(reader.get());
+        lock.endRead();
+        assertIsFree(lock);
+    }
+}
@@ -0,0 +1,178 @@
+package pt.isel.pc.sketches.synchronizers;
+
+import org.junit.Test;
+
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static pt.isel.pc.TestUtils.expect;
+
+public class BatchingCyclicBarrierTests {
+
+    private static Thread startAwait(BatchingCyclicBarrier barrier, long timeout, CompletableFuture<Boolean> result) {
+        Thread th = new Thread(() -> {
+            try {
+                result.complete(barrier.await(timeout, TimeUnit.MILLISECONDS));
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
+        th.start();
+        return th;
+    }
+
+    private static void assertFailsWith(Class<?> exceptionClass, CompletableFuture<Boolean> result)
+      throws Exception {
+        try {
+            result.get(1, TimeUnit.SECONDS);
+            throw new AssertionError("an exception was expected");
+        } catch (ExecutionException e) {
+            assertTrue(exceptionClass.isInstance(e.getCause()));
+        }
+    }
+
+    @Test
+    public void all_parties_are_released_when_the_barrier_trips() throws Exception {
+        AtomicInteger nOfActions = new AtomicInteger();
+        BatchingCyclicBarrier barrier = new BatchingCyclicBarrier(3, 2, nOfActions::incrementAndGet);
+        // more than one generation, so that the barrier is reused
+        for (int generation = 1; generation <= 3; ++generation) {
+            CompletableFuture<Boolean> first = new CompletableFuture<>();
+            CompletableFuture<Boolean> second = new CompletableFuture<>();
+            Thread th1 = startAwait(barrier, Long.MAX_VALUE, first);
+            Thread th2 = startAwait(barrier, Long.MAX_VALUE, second);
+            Thread.sleep(100);
+            assertFalse(first.isDone());
+            assertFalse(second.isDone());
+
+            assertTrue(barrier.await(Long.MAX_VALUE, TimeUnit.MILLISECONDS));
+            assertTrue(first.get(1, TimeUnit.SECONDS));
+            assertTrue(second.get(1, TimeUnit.SECONDS));
+            assertEquals(generation, nOfActions.get());
+            th1.join();
+            th2.join();
+        }
+    }
+
+    @Test
+    public void barrier_action_failure_breaks_the_barrier() throws Exception {
+        BatchingCyclicBarrier barrier = new BatchingCyclicBarrier(2, () -> {
+            throw new IllegalStateException();
+        });
+        CompletableFuture<Boolean> other = new CompletableFuture<>();
+        Thread th = startAwait(barrier, Long.MAX_VALUE, other);
+        Thread.sleep(100);
+
+        // the last arrival runs the action and observes its exception
+        expect(IllegalStateException.class, () -> barrier.await(Long.MAX_VALUE, TimeUnit.MILLISECONDS));
+        assertFailsWith(BrokenBarrierException.class, other);
+        assertTrue(barrier.isBroken());
+        th.join();
+    }
+
+    @Test
+    public void barrier_action_never_runs_for_a_broken_generation() throws Exception {
+        for (int i = 0; i < 1000; ++i) {
+            AtomicInteger nOfActions = new AtomicInteger();
+            BatchingCyclicBarrier barrier = new BatchingCyclicBarrier(2, nOfActions::incrementAndGet);
+            // the timeouts race with the arrival of the other party
+            long timeout = i % 3;
+            CompletableFuture<Boolean> other = new CompletableFuture<>();
+            Thread th = startAwait(barrier, timeout, other);
+            boolean tripped;
+            try {
+                tripped = barrier.await(timeout, TimeUnit.MILLISECONDS);
+            } catch (BrokenBarrierException e) {
+                tripped = false;
+            }
+            th.join();
+            boolean otherTripped = !other.isCompletedExceptionally() && other.get();
+            // either both parties observe the trip, and the action ran, or none does
+            assertEquals(tripped, otherTripped);
+            assertEquals(tripped ? 1 : 0, nOfActions.get());
+        }
+    }
+
+    @Test
+    public void timeout_during_the_barrier_action_observes_the_trip() throws Exception {
+        AtomicInteger nOfActions = new AtomicInteger();
+        BatchingCyclicBarrier barrier = new BatchingCyclicBarrier(2, () -> {
+            nOfActions.incrementAndGet();
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                // ignore
+            }
+        });
+        CompletableFuture<Boolean> other = new CompletableFuture<>();
+        Thread th = startAwait(barrier, 100, other);
+        Thread.sleep(50);
+
+        // the other party times out while this one runs the action, which is too late to break the barrier
+        assertTrue(barrier.await(Long.MAX_VALUE, TimeUnit.MILLISECONDS));
+        assertTrue(other.get(1, TimeUnit.SECONDS));
+        assertEquals(1, nOfActions.get());
+        assertFalse(barrier.isBroken());
+        th.join();
+    }
+
+    @Test
+    public void timeout_breaks_the_barrier() throws Exception {
+        BatchingCyclicBarrier barrier = new BatchingCyclicBarrier(3);
+        CompletableFuture<Boolean> other = new CompletableFuture<>();
+        Thread th = startAwait(barrier, Long.MAX_VALUE, other);
+        Thread.sleep(100);
+
+        assertFalse(barrier.await(100, TimeUnit.MILLISECONDS));
+        assertFailsWith(BrokenBarrierException.class, other);
+        assertTrue(barrier.isBroken());
+        // the broken generation stays current
+        expect(BrokenBarrierException.class, () -> barrier.await(Long.MAX_VALUE, TimeUnit.MILLISECONDS));
+        th.join();
+    }
+
+    @Test
+    public void interrupt_breaks_the_barrier() throws Exception {
+        BatchingCyclicBarrier barrier = new BatchingCyclicBarrier(3);
+        CompletableFuture<Boolean> interrupted = new CompletableFuture<>();
+        CompletableFuture<Boolean> other = new CompletableFuture<>();
+        Thread th1 = startAwait(barrier, Long.MAX_VALUE, interrupted);
+        Thread th2 = startAwait(barrier, Long.MAX_VALUE, other);
+        Thread.sleep(100);
+
+        th1.interrupt();
+        assertFailsWith(InterruptedException.class, interrupted);
+        assertFailsWith(BrokenBarrierException.class, other);
+        assertTrue(barrier.isBroken());
+        th1.join();
+        th2.join();
+    }
+
+    @Test
+    public void reset_breaks_the_waiting_parties_and_starts_a_new_generation() throws Exception {
+        BatchingCyclicBarrier barrier = new BatchingCyclicBarrier(2);
+        CompletableFuture<Boolean> waiting = new CompletableFuture<>();
+        Thread th1 = startAwait(barrier, Long.MAX_VALUE, waiting);
+        Thread.sleep(100);
+
+        barrier.reset();
+        assertFailsWith(BrokenBarrierException.class, waiting);
+        assertFalse(barrier.isBroken());
+
+        // the arrival of the broken generation doesn't count on the new one
+        CompletableFuture<Boolean> other = new CompletableFuture<>();
+        Thread th2 = startAwait(barrier, Long.MAX_VALUE, other);
+        Thread.sleep(100);
+        assertFalse(other.isDone());
+        assertTrue(barrier.await(Long.MAX_VALUE, TimeUnit.MILLISECONDS));
+        assertTrue(other.get(1, TimeUnit.SECONDS));
+        th1.join();
+        th2.join();
+    }
+}
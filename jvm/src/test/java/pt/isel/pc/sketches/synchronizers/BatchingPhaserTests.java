@@ -0,0 +1,180 @@
+package pt.isel.pc.sketches.synchronizers;
+
+import org.junit.Test;
+import pt.isel.pc.TestHelper;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static pt.isel.pc.TestUtils.expect;
+
+public class BatchingPhaserTests {
+
+    private static final Duration TEST_DURATION = Duration.ofSeconds(3);
+
+    private static Thread startArriveAndAwaitAdvance(BatchingPhaser phaser, CompletableFuture<Boolean> result) {
+        Thread th = new Thread(() -> {
+            try {
+                result.complete(phaser.arriveAndAwaitAdvance(Long.MAX_VALUE, TimeUnit.MILLISECONDS));
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
+        th.start();
+        return th;
+    }
+
+    @Test
+    public void waiting_parties_are_released_when_the_phase_advances() throws Exception {
+        BatchingPhaser phaser = new BatchingPhaser(3, 2);
+        for (int phase = 0; phase < 3; ++phase) {
+            CompletableFuture<Boolean> first = new CompletableFuture<>();
+            CompletableFuture<Boolean> second = new CompletableFuture<>();
+            Thread th1 = startArriveAndAwaitAdvance(phaser, first);
+            Thread th2 = startArriveAndAwaitAdvance(phaser, second);
+            Thread.sleep(100);
+            assertFalse(first.isDone());
+            assertFalse(second.isDone());
+            assertEquals(phase, phaser.getPhase());
+
+            assertEquals(phase, phaser.arrive());
+            assertTrue(first.get(1, TimeUnit.SECONDS));
+            assertTrue(second.get(1, TimeUnit.SECONDS));
+            assertEquals(phase + 1, phaser.getPhase());
+            th1.join();
+            th2.join();
+        }
+    }
+
+    @Test
+    public void await_advance_returns_false_on_timeout_without_changing_the_phaser() throws InterruptedException {
+        BatchingPhaser phaser = new BatchingPhaser(2);
+        assertFalse(phaser.arriveAndAwaitAdvance(100, TimeUnit.MILLISECONDS));
+        assertEquals(0, phaser.getPhase());
+        assertEquals(0, phaser.arrive());
+        assertEquals(1, phaser.getPhase());
+    }
+
+    @Test
+    public void registered_party_participates_in_the_current_phase() {
+        BatchingPhaser phaser = new BatchingPhaser(1);
+        assertEquals(0, phaser.register());
+        // the new party arriving first doesn't advance the phase
+        assertEquals(0, phaser.arrive());
+        assertEquals(0, phaser.getPhase());
+        assertEquals(0, phaser.arrive());
+        assertEquals(1, phaser.getPhase());
+
+        // and both parties participate in the following phases
+        assertEquals(1, phaser.arrive());
+        assertEquals(1, phaser.getPhase());
+        assertEquals(1, phaser.arrive());
+        assertEquals(2, phaser.getPhase());
+    }
+
+    @Test
+    public void registrations_beyond_the_tree_of_the_phase_are_counted() {
+        BatchingPhaser phaser = new BatchingPhaser(3, 2);
+        for (int i = 0; i < 4; ++i) {
+            assertEquals(0, phaser.register());
+        }
+        for (int i = 0; i < 6; ++i) {
+            assertEquals(0, phaser.arrive());
+            assertEquals(0, phaser.getPhase());
+        }
+        assertEquals(0, phaser.arrive());
+        assertEquals(1, phaser.getPhase());
+
+        // the next phase has a tree for all the 7 parties
+        for (int i = 0; i < 6; ++i) {
+            assertEquals(1, phaser.arrive());
+            assertEquals(1, phaser.getPhase());
+        }
+        assertEquals(1, phaser.arrive());
+        assertEquals(2, phaser.getPhase());
+    }
+
+    @Test
+    public void deregistered_party_does_not_participate_in_the_following_phases() {
+        BatchingPhaser phaser = new BatchingPhaser(2);
+        assertEquals(0, phaser.arriveAndDeregister());
+        assertEquals(0, phaser.getPhase());
+        assertEquals(0, phaser.arrive());
+        assertEquals(1, phaser.getPhase());
+        assertEquals(1, phaser.arrive());
+        assertEquals(2, phaser.getPhase());
+    }
+
+    @Test
+    public void phaser_terminates_when_all_parties_deregister() throws InterruptedException {
+        BatchingPhaser phaser = new BatchingPhaser(1);
+        assertEquals(0, phaser.register());
+        assertEquals(0, phaser.arriveAndDeregister());
+        assertFalse(phaser.isTerminated());
+        assertEquals(0, phaser.arriveAndDeregister());
+        assertTrue(phaser.isTerminated());
+
+        expect(IllegalStateException.class, phaser::register);
+        expect(IllegalStateException.class, phaser::arrive);
+        // there is nothing to wait for
+        assertTrue(phaser.awaitAdvance(phaser.getPhase(), Long.MAX_VALUE, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void phaser_without_parties_advances_after_registrations() {
+        BatchingPhaser phaser = new BatchingPhaser(0);
+        assertFalse(phaser.isTerminated());
+        expect(IllegalStateException.class, phaser::arrive);
+        assertEquals(0, phaser.register());
+        assertEquals(0, phaser.register());
+        assertEquals(0, phaser.arrive());
+        assertEquals(0, phaser.getPhase());
+        assertEquals(0, phaser.arrive());
+        assertEquals(1, phaser.getPhase());
+    }
+
+    @Test
+    public void arrivals_racing_with_the_advance_count_on_the_next_phase() throws InterruptedException {
+        BatchingPhaser phaser = new BatchingPhaser(2);
+        TestHelper helper = new TestHelper(TEST_DURATION);
+        // a party that never waits may arrive while the previous phase is advancing
+        helper.createAndStart(isDone -> {
+            while (!isDone.get()) {
+                phaser.arrive();
+            }
+        });
+        helper.createAndStart(isDone -> {
+            while (!isDone.get()) {
+                // with a timeout, since the other party may end first
+                phaser.arriveAndAwaitAdvance(100, TimeUnit.MILLISECONDS);
+            }
+        });
+        helper.join();
+        assertTrue(phaser.getPhase() > 0);
+    }
+
+    @Test
+    public void waiting_parties_always_observe_the_next_phase() throws InterruptedException {
+        int nOfParties = 8;
+        BatchingPhaser phaser = new BatchingPhaser(nOfParties, 2);
+        TestHelper helper = new TestHelper(TEST_DURATION);
+        helper.createAndStartMultiple(nOfParties, isDone -> {
+            int phase = 0;
+            // all the parties do the same number of phases, so that none stays waiting
+            while (phase < 1000) {
+                assertEquals(phase, phaser.arrive());
+                assertTrue(phaser.awaitAdvance(phase, Long.MAX_VALUE, TimeUnit.MILLISECONDS));
+                phase += 1;
+                assertTrue(phaser.getPhase() >= phase);
+            }
+            // leaving, so that the phaser terminates
+            phaser.arriveAndDeregister();
+        });
+        helper.join();
+        assertTrue(phaser.isTerminated());
+    }
+}
@@ -0,0 +1,65 @@
+package pt.isel.pc.sketches.synchronizers;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static pt.isel.pc.TestUtils.expect;
+
+public class CombiningTreeTests {
+
+    private static final int FAN_IN = 3;
+
+    @Test
+    public void only_the_last_arrival_is_detected_for_any_number_of_parties() {
+        // including party counts that aren't a multiple of the fan-in, on the leaves and on the upper levels
+        for (int nOfParties = 1; nOfParties <= 4 * FAN_IN * FAN_IN; ++nOfParties) {
+            CombiningTree tree = new CombiningTree(nOfParties, FAN_IN);
+            // more than once, so that reset is also checked
+            for (int round = 0; round < 2; ++round) {
+                for (int i = 0; i < nOfParties - 1; ++i) {
+                    assertFalse(tree.arrive());
+                }
+                assertTrue(tree.arrive());
+                assertEquals(CombiningTree.FULL, tree.tryArrive());
+                expect(IllegalStateException.class, tree::arrive);
+                tree.reset();
+            }
+        }
+    }
+
+    @Test
+    public void only_one_concurrent_arrival_is_the_last() throws InterruptedException {
+        int nOfParties = 4 * FAN_IN * FAN_IN + 1;
+        CombiningTree tree = new CombiningTree(nOfParties, FAN_IN);
+        AtomicInteger nOfLast = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < nOfParties; ++i) {
+            Thread th = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (tree.arrive()) {
+                    nOfLast.incrementAndGet();
+                }
+            });
+            th.start();
+            threads.add(th);
+        }
+        start.countDown();
+        for (Thread th : threads) {
+            th.join();
+        }
+        assertEquals(1, nOfLast.get());
+        assertEquals(CombiningTree.FULL, tree.tryArrive());
+    }
+}
@@ -0,0 +1,151 @@
+package pt.isel.pc.sketches.synchronizers;
+
+import org.junit.Test;
+import pt.isel.pc.TestHelper;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+public class KeyedReadersWriterLockTests {
+
+    private static final Duration TEST_DURATION = Duration.ofSeconds(3);
+    private static final int N_OF_THREADS = 8;
+    private static final int N_OF_KEYS = 4;
+
+    private static Thread startWrite(KeyedReadersWriterLock<String> locks, String key, long timeout,
+                                     CompletableFuture<Boolean> result) {
+        Thread th = new Thread(() -> {
+            try {
+                result.complete(locks.startWrite(key, timeout, TimeUnit.MILLISECONDS));
+            } catch (InterruptedException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        th.start();
+        return th;
+    }
+
+    // writers exclude both writers and readers of the same key
+    private static void assertWritersAreSerialized(KeyedReadersWriterLock<String> locks)
+      throws InterruptedException {
+        AtomicInteger[] writersInside = new AtomicInteger[N_OF_KEYS];
+        AtomicInteger[] readersInside = new AtomicInteger[N_OF_KEYS];
+        for (int i = 0; i < N_OF_KEYS; ++i) {
+            writersInside[i] = new AtomicInteger();
+            readersInside[i] = new AtomicInteger();
+        }
+        TestHelper helper = new TestHelper(TEST_DURATION);
+        helper.createAndStartMultiple(N_OF_THREADS, isDone -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            while (!isDone.get()) {
+                int i = random.nextInt(N_OF_KEYS);
+                String key = "key-" + i;
+                if (random.nextBoolean()) {
+                    assertTrue(locks.startWrite(key, Long.MAX_VALUE, TimeUnit.MILLISECONDS));
+                    assertEquals(1, writersInside[i].incrementAndGet());
+                    assertEquals(0, readersInside[i].get());
+                    Thread.yield();
+                    writersInside[i].decrementAndGet();
+                    locks.endWrite(key);
+                } else {
+                    assertTrue(locks.startRead(key, Long.MAX_VALUE, TimeUnit.MILLISECONDS));
+                    readersInside[i].incrementAndGet();
+                    assertEquals(0, writersInside[i].get());
+                    Thread.yield();
+                    readersInside[i].decrementAndGet();
+                    locks.endRead(key);
+                }
+            }
+        });
+        helper.join();
+    }
+
+    @Test
+    public void exact_mode_removes_the_entries_of_keys_no_longer_in_use() throws InterruptedException {
+        KeyedReadersWriterLock<String> locks = KeyedReadersWriterLock.exact();
+        assertTrue(locks.startRead("a", 0, TimeUnit.MILLISECONDS));
+        assertTrue(locks.startRead("a", 0, TimeUnit.MILLISECONDS));
+        assertTrue(locks.startWrite("b", 0, TimeUnit.MILLISECONDS));
+        assertEquals(2, locks.size());
+
+        locks.endRead("a");
+        // still in use by the other reader
+        assertEquals(2, locks.size());
+        locks.endRead("a");
+        locks.endWrite("b");
+        assertEquals(0, locks.size());
+    }
+
+    @Test
+    public void exact_mode_reuses_the_locks_of_removed_entries() {
+        KeyedReadersWriterLock<String> locks = KeyedReadersWriterLock.exact(ReadersWriterLockPolicy.PHASE_FAIR, 2);
+        ReadersWriterLock2 first = locks.retain("a");
+        ReadersWriterLock2 second = locks.retain("b");
+        ReadersWriterLock2 third = locks.retain("c");
+        locks.release("a");
+        locks.release("b");
+        locks.release("c");
+
+        // the pool only keeps two locks
+        Set<ReadersWriterLock2> reused = new HashSet<>(Arrays.asList(locks.retain("d"), locks.retain("e")));
+        assertEquals(new HashSet<>(Arrays.asList(first, second)), reused);
+        assertFalse(reused.contains(locks.retain("f")));
+        assertNotSame(third, locks.get("f"));
+        for (String key : Arrays.asList("d", "e", "f")) {
+            locks.release(key);
+        }
+        assertEquals(0, locks.size());
+    }
+
+    @Test
+    public void failed_starts_release_their_reference_to_the_key() throws Exception {
+        KeyedReadersWriterLock<String> locks = KeyedReadersWriterLock.exact();
+        assertTrue(locks.startWrite("a", 0, TimeUnit.MILLISECONDS));
+
+        // without waiting, after a timeout, and after an interrupt
+        assertFalse(locks.startRead("a", 0, TimeUnit.MILLISECONDS));
+        assertFalse(locks.startWrite("a", 0, TimeUnit.MILLISECONDS));
+        assertFalse(locks.startRead("a", 100, TimeUnit.MILLISECONDS));
+        assertFalse(locks.startWrite("a", 100, TimeUnit.MILLISECONDS));
+        CompletableFuture<Boolean> interrupted = new CompletableFuture<>();
+        Thread th = startWrite(locks, "a", Long.MAX_VALUE, interrupted);
+        Thread.sleep(100);
+        th.interrupt();
+        try {
+            interrupted.get(1, TimeUnit.SECONDS);
+            throw new AssertionError("an InterruptedException was expected");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof InterruptedException);
+        }
+        th.join();
+        assertEquals(1, locks.size());
+
+        // only the writer still references the key
+        locks.endWrite("a");
+        assertEquals(0, locks.size());
+    }
+
+    @Test
+    public void writers_on_the_same_key_are_serialized_in_striped_mode() throws InterruptedException {
+        assertWritersAreSerialized(KeyedReadersWriterLock.striped(2));
+    }
+
+    @Test
+    public void writers_on_the_same_key_are_serialized_in_exact_mode() throws InterruptedException {
+        KeyedReadersWriterLock<String> locks = KeyedReadersWriterLock.exact();
+        assertWritersAreSerialized(locks);
+        assertEquals(0, locks.size());
+    }
+}
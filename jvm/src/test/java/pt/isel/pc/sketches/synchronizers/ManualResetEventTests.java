@@ -0,0 +1,93 @@
+package pt.isel.pc.sketches.synchronizers;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static pt.isel.pc.TestUtils.expect;
+
+public class ManualResetEventTests {
+
+    private static final int N_OF_THREADS = 8;
+    private static final int N_OF_REPETITIONS = 1000;
+
+    // Runs the action on a new thread, completing the returned future with its result
+    private static CompletableFuture<Boolean> startThread(Callable<Boolean> action) {
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        Thread th = new Thread(() -> {
+            try {
+                result.complete(action.call());
+            } catch (Exception | AssertionError e) {
+                result.completeExceptionally(e);
+            }
+        });
+        th.start();
+        return result;
+    }
+
+    @Test
+    public void await_only_succeeds_while_the_event_is_set() throws InterruptedException {
+        ManualResetEvent event = new ManualResetEvent(false);
+        assertFalse(event.await(0, TimeUnit.MILLISECONDS));
+        assertFalse(event.await(50, TimeUnit.MILLISECONDS));
+        event.set();
+        assertTrue(event.await(0, TimeUnit.MILLISECONDS));
+        assertTrue(event.await(Long.MAX_VALUE, TimeUnit.MILLISECONDS));
+        event.reset();
+        assertFalse(event.await(0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void set_releases_all_the_waiting_threads() throws Exception {
+        ManualResetEvent event = new ManualResetEvent(false);
+        List<CompletableFuture<Boolean>> waiters = new ArrayList<>();
+        for (int i = 0; i < N_OF_THREADS; ++i) {
+            waiters.add(startThread(() -> event.await(Long.MAX_VALUE, TimeUnit.MILLISECONDS)));
+        }
+        // so that the threads are waiting
+        Thread.sleep(100);
+        for (CompletableFuture<Boolean> waiter : waiters) {
+            assertFalse(waiter.isDone());
+        }
+
+        event.set();
+        // a reset right after the set doesn't affect the released threads
+        event.reset();
+        for (CompletableFuture<Boolean> waiter : waiters) {
+            assertTrue(waiter.get(1, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void no_set_is_missed_by_threads_that_start_waiting_concurrently() throws Exception {
+        for (int i = 0; i < N_OF_REPETITIONS; ++i) {
+            ManualResetEvent event = new ManualResetEvent(false);
+            List<CompletableFuture<Boolean>> waiters = new ArrayList<>();
+            for (int j = 0; j < 2; ++j) {
+                waiters.add(startThread(() -> event.await(Long.MAX_VALUE, TimeUnit.MILLISECONDS)));
+            }
+            // races with the waiters checking the state and adding themselves
+            event.set();
+            for (CompletableFuture<Boolean> waiter : waiters) {
+                assertTrue(waiter.get(1, TimeUnit.SECONDS));
+            }
+        }
+    }
+
+    @Test
+    public void interrupted_waiter_gives_up() throws Exception {
+        ManualResetEvent event = new ManualResetEvent(false);
+        Thread.currentThread().interrupt();
+        expect(InterruptedException.class, () -> event.await(Long.MAX_VALUE, TimeUnit.MILLISECONDS));
+        // a set after the interrupted waiter gave up still releases the other waiters
+        CompletableFuture<Boolean> waiter = startThread(() -> event.await(Long.MAX_VALUE, TimeUnit.MILLISECONDS));
+        event.set();
+        assertTrue(waiter.get(1, TimeUnit.SECONDS));
+    }
+}
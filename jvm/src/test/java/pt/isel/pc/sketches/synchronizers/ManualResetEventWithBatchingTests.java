@@ -0,0 +1,191 @@
+package pt.isel.pc.sketches.synchronizers;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static pt.isel.pc.TestUtils.expect;
+
+public class ManualResetEventWithBatchingTests {
+
+    private static final int N_OF_THREADS = 8;
+    private static final int N_OF_REPETITIONS = 1000;
+
+    // Runs the action on a new thread, completing the returned future with its result
+    private static CompletableFuture<Boolean> startThread(Callable<Boolean> action) {
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        Thread th = new Thread(() -> {
+            try {
+                result.complete(action.call());
+            } catch (Exception | AssertionError e) {
+                result.completeExceptionally(e);
+            }
+        });
+        th.start();
+        return result;
+    }
+
+    @Test
+    public void await_only_succeeds_while_the_event_is_set() throws InterruptedException {
+        ManualResetEventWithBatching event = new ManualResetEventWithBatching(false);
+        assertFalse(event.await(0, TimeUnit.MILLISECONDS));
+        assertFalse(event.await(50, TimeUnit.MILLISECONDS));
+        event.set();
+        assertTrue(event.await(0, TimeUnit.MILLISECONDS));
+        assertTrue(event.await(Long.MAX_VALUE, TimeUnit.MILLISECONDS));
+        event.reset();
+        assertFalse(event.await(0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void set_releases_all_the_waiting_threads() throws Exception {
+        ManualResetEventWithBatching event = new ManualResetEventWithBatching(false);
+        List<CompletableFuture<Boolean>> waiters = new ArrayList<>();
+        for (int i = 0; i < N_OF_THREADS; ++i) {
+            waiters.add(startThread(() -> event.await(Long.MAX_VALUE, TimeUnit.MILLISECONDS)));
+        }
+        // so that the threads are waiting
+        Thread.sleep(100);
+        for (CompletableFuture<Boolean> waiter : waiters) {
+            assertFalse(waiter.isDone());
+        }
+
+        event.set();
+        // a reset right after the set doesn't affect the released threads
+        event.reset();
+        for (CompletableFuture<Boolean> waiter : waiters) {
+            assertTrue(waiter.get(1, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void no_set_is_missed_by_threads_that_start_waiting_concurrently() throws Exception {
+        for (int i = 0; i < N_OF_REPETITIONS; ++i) {
+            ManualResetEventWithBatching event = new ManualResetEventWithBatching(false);
+            List<CompletableFuture<Boolean>> waiters = new ArrayList<>();
+            for (int j = 0; j < 2; ++j) {
+                waiters.add(startThread(() -> event.await(Long.MAX_VALUE, TimeUnit.MILLISECONDS)));
+            }
+            // races with the waiters checking the state and adding themselves
+            event.set();
+            for (CompletableFuture<Boolean> waiter : waiters) {
+                assertTrue(waiter.get(1, TimeUnit.SECONDS));
+            }
+        }
+    }
+
+    @Test
+    public void interrupted_waiter_gives_up() throws Exception {
+        ManualResetEventWithBatching event = new ManualResetEventWithBatching(false);
+        Thread.currentThread().interrupt();
+        expect(InterruptedException.class, () -> event.await(Long.MAX_VALUE, TimeUnit.MILLISECONDS));
+        // a set after the interrupted waiter gave up still releases the other waiters
+        CompletableFuture<Boolean> waiter = startThread(() -> event.await(Long.MAX_VALUE, TimeUnit.MILLISECONDS));
+        event.set();
+        assertTrue(waiter.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void await_async_completes_immediately_if_the_event_is_set_or_there_is_no_timeout() throws Exception {
+        ManualResetEventWithBatching event = new ManualResetEventWithBatching(false);
+        CompletableFuture<Boolean> future = event.awaitAsync(0, TimeUnit.MILLISECONDS);
+        assertTrue(future.isDone());
+        assertFalse(future.get());
+        event.set();
+        future = event.awaitAsync(0, TimeUnit.MILLISECONDS);
+        assertTrue(future.isDone());
+        assertTrue(future.get());
+    }
+
+    @Test
+    public void set_completes_the_whole_batch_of_synchronous_and_asynchronous_waiters() throws Exception {
+        ManualResetEventWithBatching event = new ManualResetEventWithBatching(false);
+        List<CompletableFuture<Boolean>> waiters = new ArrayList<>();
+        for (int i = 0; i < N_OF_THREADS; ++i) {
+            waiters.add(event.awaitAsync(Long.MAX_VALUE, TimeUnit.MILLISECONDS));
+            waiters.add(startThread(() -> event.await(Long.MAX_VALUE, TimeUnit.MILLISECONDS)));
+        }
+        // so that the threads are waiting
+        Thread.sleep(100);
+        for (CompletableFuture<Boolean> waiter : waiters) {
+            assertFalse(waiter.isDone());
+        }
+
+        event.set();
+        for (CompletableFuture<Boolean> waiter : waiters) {
+            assertTrue(waiter.get(1, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void reset_does_not_affect_completed_futures() throws Exception {
+        ManualResetEventWithBatching event = new ManualResetEventWithBatching(false);
+        CompletableFuture<Boolean> first = event.awaitAsync(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        event.set();
+        event.reset();
+        assertTrue(first.get(0, TimeUnit.MILLISECONDS));
+
+        // the waiters after the reset belong to a new batch
+        CompletableFuture<Boolean> second = event.awaitAsync(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        assertFalse(second.isDone());
+        event.set();
+        assertTrue(second.get(1, TimeUnit.SECONDS));
+        assertTrue(first.get(0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void await_async_completes_with_false_when_the_timeout_expires() throws Exception {
+        ManualResetEventWithBatching event = new ManualResetEventWithBatching(false);
+        CompletableFuture<Boolean> timedOut = event.awaitAsync(50, TimeUnit.MILLISECONDS);
+        CompletableFuture<Boolean> waiting = event.awaitAsync(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        assertFalse(timedOut.get(1, TimeUnit.SECONDS));
+        assertFalse(waiting.isDone());
+
+        // the timed out waiter was removed from the batch, and the others are still released
+        event.set();
+        assertFalse(timedOut.get());
+        assertTrue(waiting.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void cancelled_waiter_is_not_completed_by_set() throws Exception {
+        ManualResetEventWithBatching event = new ManualResetEventWithBatching(false);
+        CompletableFuture<Boolean> cancelled = event.awaitAsync(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        CompletableFuture<Boolean> waiting = event.awaitAsync(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        assertTrue(cancelled.cancel(true));
+        event.set();
+        assertTrue(cancelled.isCancelled());
+        assertTrue(waiting.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void each_future_is_completed_by_either_the_set_or_the_timeout() throws Exception {
+        for (int i = 0; i < N_OF_REPETITIONS; ++i) {
+            ManualResetEventWithBatching event = new ManualResetEventWithBatching(false);
+            CompletableFuture<Boolean> future = event.awaitAsync(i % 3, TimeUnit.MILLISECONDS);
+            if (i % 2 == 0) {
+                Thread.yield();
+            }
+            // races with the timeout, and whichever completes the future first decides the result
+            event.set();
+            Boolean result = future.get(1, TimeUnit.SECONDS);
+            assertTrue(i % 3 != 0 || !result);
+        }
+    }
+
+    @Test
+    public void continuations_of_timed_out_futures_do_not_run_on_the_timer_wheel() throws Exception {
+        ManualResetEventWithBatching event = new ManualResetEventWithBatching(false);
+        CompletableFuture<Thread> continuationThread = event.awaitAsync(10, TimeUnit.MILLISECONDS)
+          .thenApply(result -> Thread.currentThread());
+        Thread thread = continuationThread.get(1, TimeUnit.SECONDS);
+        assertNotEquals("shared-timer-wheel", thread.getName());
+    }
+}
@@ -0,0 +1,68 @@
+package pt.isel.pc.sketches.synchronizers;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static pt.isel.pc.TestUtils.expect;
+
+public class ReaderIndicatorTests {
+
+    private static final int N_OF_STRIPES = 4;
+    private static final int N_OF_THREADS = 16;
+
+    @Test
+    public void number_of_stripes_must_be_positive() {
+        expect(IllegalArgumentException.class, () -> new ReaderIndicator(0));
+    }
+
+    @Test
+    public void is_empty_only_after_all_readers_depart() throws InterruptedException {
+        ReaderIndicator readers = new ReaderIndicator(N_OF_STRIPES);
+        assertTrue(readers.isEmpty());
+        // more threads than stripes, so that readers arrive on different stripes and share some of them
+        CountDownLatch arrived = new CountDownLatch(N_OF_THREADS);
+        CountDownLatch depart = new CountDownLatch(1);
+        Thread[] threads = new Thread[N_OF_THREADS];
+        for (int i = 0; i < N_OF_THREADS; ++i) {
+            threads[i] = new Thread(() -> {
+                readers.arrive();
+                arrived.countDown();
+                try {
+                    depart.await();
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+                readers.depart();
+            });
+            threads[i].start();
+        }
+        arrived.await();
+        assertFalse(readers.isEmpty());
+
+        depart.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(readers.isEmpty());
+    }
+
+    @Test
+    public void readers_added_as_a_batch_can_depart_on_their_own_stripes() throws InterruptedException {
+        ReaderIndicator readers = new ReaderIndicator(N_OF_STRIPES);
+        // the granting thread adds the whole batch on its stripe
+        readers.add(N_OF_THREADS);
+        Thread[] threads = new Thread[N_OF_THREADS];
+        for (int i = 0; i < N_OF_THREADS; ++i) {
+            threads[i] = new Thread(readers::depart);
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        // the stripes of the departing threads became negative, but the sum is zero
+        assertTrue(readers.isEmpty());
+    }
+}
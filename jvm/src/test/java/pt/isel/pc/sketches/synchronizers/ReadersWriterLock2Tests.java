@@ -0,0 +1,368 @@
+package pt.isel.pc.sketches.synchronizers;
+
+import org.junit.Test;
+import pt.isel.pc.TestHelper;
+import pt.isel.pc.utils.SynchronizerMetrics;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ReadersWriterLock2Tests {
+
+    private static final Duration TEST_DURATION = Duration.ofSeconds(3);
+    private static final int N_OF_THREADS = 8;
+    private static final int N_OF_STRIPES = 4;
+
+    private static void assertReadersAndWritersExcludeEachOther(ReadersWriterLock2 lock)
+      throws InterruptedException {
+        AtomicInteger writersInside = new AtomicInteger();
+        AtomicInteger readersInside = new AtomicInteger();
+        TestHelper helper = new TestHelper(TEST_DURATION);
+        helper.createAndStartMultiple(N_OF_THREADS, isDone -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            while (!isDone.get()) {
+                int choice = random.nextInt(8);
+                if (choice < 2) {
+                    assertTrue(lock.startWrite(Long.MAX_VALUE, TimeUnit.MILLISECONDS));
+                    assertEquals(1, writersInside.incrementAndGet());
+                    assertEquals(0, readersInside.get());
+                    Thread.yield();
+                    writersInside.decrementAndGet();
+                    lock.endWrite();
+                } else if (choice == 2) {
+                    // upgrades and then downgrades, so that it is checked both as a writer and as a reader
+                    assertTrue(lock.startUpgradeableRead(Long.MAX_VALUE, TimeUnit.MILLISECONDS));
+                    assertTrue(lock.upgrade(Long.MAX_VALUE, TimeUnit.MILLISECONDS));
+                    assertEquals(1, writersInside.incrementAndGet());
+                    assertEquals(0, readersInside.get());
+                    Thread.yield();
+                    writersInside.decrementAndGet();
+                    lock.downgrade();
+                    readersInside.incrementAndGet();
+                    assertEquals(0, writersInside.get());
+                    Thread.yield();
+                    readersInside.decrementAndGet();
+                    lock.endRead();
+                } else {
+                    assertTrue(lock.startRead(Long.MAX_VALUE, TimeUnit.MILLISECONDS));
+                    readersInside.incrementAndGet();
+                    assertEquals(0, writersInside.get());
+                    Thread.yield();
+                    readersInside.decrementAndGet();
+                    lock.endRead();
+                }
+            }
+        });
+        helper.join();
+    }
+
+    // Runs the action on a new thread, completing the returned future with its result
+    private static CompletableFuture<Boolean> startThread(Callable<Boolean> action) {
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        new Thread(() -> {
+            try {
+                result.complete(action.call());
+            } catch (Exception | AssertionError e) {
+                result.completeExceptionally(e);
+            }
+        }).start();
+        return result;
+    }
+
+    // The lock is free if a writer can start without waiting
+    private static void assertIsFree(ReadersWriterLock2 lock) throws InterruptedException {
+        assertTrue(lock.startWrite(0, TimeUnit.MILLISECONDS));
+        lock.endWrite();
+    }
+
+    @Test
+    public void readers_and_writers_exclude_each_other_with_striped_readers() throws InterruptedException {
+        assertReadersAndWritersExcludeEachOther(new ReadersWriterLock2(N_OF_STRIPES));
+    }
+
+    @Test
+    public void writer_waits_for_the_readers_of_all_the_stripes() throws InterruptedException {
+        ReadersWriterLock2 lock = new ReadersWriterLock2(N_OF_STRIPES);
+        CountDownLatch started = new CountDownLatch(N_OF_THREADS);
+        CountDownLatch end = new CountDownLatch(1);
+        Thread[] readers = new Thread[N_OF_THREADS];
+        for (int i = 0; i < N_OF_THREADS; ++i) {
+            readers[i] = new Thread(() -> {
+                try {
+                    if (lock.startRead(0, TimeUnit.MILLISECONDS)) {
+                        started.countDown();
+                        end.await();
+                        lock.endRead();
+                    }
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+            });
+            readers[i].start();
+        }
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        assertFalse(lock.startWrite(0, TimeUnit.MILLISECONDS));
+
+        end.countDown();
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        assertTrue(lock.startWrite(0, TimeUnit.MILLISECONDS));
+        lock.endWrite();
+    }
+
+    @Test
+    public void validate_succeeds_if_there_are_only_readers() throws InterruptedException {
+        ReadersWriterLock2 lock = new ReadersWriterLock2();
+        long stamp = lock.tryOptimisticRead();
+        assertNotEquals(0, stamp);
+        assertTrue(lock.startRead(0, TimeUnit.MILLISECONDS));
+        lock.endRead();
+        assertTrue(lock.validate(stamp));
+    }
+
+    @Test
+    public void validate_fails_across_a_write() throws InterruptedException {
+        ReadersWriterLock2 lock = new ReadersWriterLock2();
+        long stamp = lock.tryOptimisticRead();
+        assertTrue(lock.startWrite(0, TimeUnit.MILLISECONDS));
+        // no stamp is obtained while there is an active writer
+        assertEquals(0, lock.tryOptimisticRead());
+        assertFalse(lock.validate(0));
+        assertFalse(lock.validate(stamp));
+        lock.endWrite();
+        assertFalse(lock.validate(stamp));
+        long next = lock.tryOptimisticRead();
+        assertNotEquals(0, next);
+        assertTrue(lock.validate(next));
+    }
+
+    @Test
+    public void validated_optimistic_reads_are_consistent() throws InterruptedException {
+        ReadersWriterLock2 lock = new ReadersWriterLock2();
+        // the writer keeps both values equal, so a reader that observes them different overlapped a write
+        int[] values = new int[2];
+        TestHelper helper = new TestHelper(TEST_DURATION);
+        helper.createAndStart(isDone -> {
+            while (!isDone.get()) {
+                assertTrue(lock.startWrite(Long.MAX_VALUE, TimeUnit.MILLISECONDS));
+                values[0] += 1;
+                Thread.yield();
+                values[1] += 1;
+                lock.endWrite();
+            }
+        });
+        helper.createAndStartMultiple(N_OF_THREADS - 1, isDone -> {
+            while (!isDone.get()) {
+                long stamp = lock.tryOptimisticRead();
+                int first = values[0];
+                Thread.yield();
+                int second = values[1];
+                if (lock.validate(stamp)) {
+                    assertEquals(first, second);
+                }
+            }
+        });
+        helper.join();
+    }
+
+    @Test
+    public void upgrade_of_the_only_reader_does_not_wait() throws InterruptedException {
+        ReadersWriterLock2 lock = new ReadersWriterLock2();
+        assertTrue(lock.startUpgradeableRead(0, TimeUnit.MILLISECONDS));
+        assertTrue(lock.upgrade(0, TimeUnit.MILLISECONDS));
+        assertFalse(lock.startRead(0, TimeUnit.MILLISECONDS));
+        lock.endWrite();
+        assertIsFree(lock);
+    }
+
+    @Test
+    public void no_writer_writes_between_the_upgradeable_read_and_the_upgrade() throws Exception {
+        ReadersWriterLock2 lock = new ReadersWriterLock2();
+        AtomicBoolean writerIsInside = new AtomicBoolean(false);
+        assertTrue(lock.startRead(0, TimeUnit.MILLISECONDS));
+        CountDownLatch isUpgrader = new CountDownLatch(1);
+        CountDownLatch endWrite = new CountDownLatch(1);
+        CompletableFuture<Boolean> upgrader = startThread(() -> {
+            assertTrue(lock.startUpgradeableRead(0, TimeUnit.MILLISECONDS));
+            isUpgrader.countDown();
+            assertTrue(lock.upgrade(Long.MAX_VALUE, TimeUnit.MILLISECONDS));
+            boolean observedWriter = writerIsInside.get();
+            endWrite.await();
+            lock.endWrite();
+            return !observedWriter;
+        });
+        assertTrue(isUpgrader.await(1, TimeUnit.SECONDS));
+        CompletableFuture<Boolean> writer = startThread(() -> {
+            assertTrue(lock.startWrite(Long.MAX_VALUE, TimeUnit.MILLISECONDS));
+            writerIsInside.set(true);
+            lock.endWrite();
+            return true;
+        });
+        // so that both the upgrader and the writer are waiting for the reader
+        Thread.sleep(100);
+        assertFalse(upgrader.isDone());
+        assertFalse(writer.isDone());
+
+        lock.endRead();
+        Thread.sleep(100);
+        // the writer waits for the upgrader's write
+        assertFalse(writer.isDone());
+        endWrite.countDown();
+        assertTrue(upgrader.get(1, TimeUnit.SECONDS));
+        assertTrue(writer.get(1, TimeUnit.SECONDS));
+        assertIsFree(lock);
+    }
+
+    @Test
+    public void second_upgrader_is_refused_while_the_first_is_reading() throws Exception {
+        ReadersWriterLock2 lock = new ReadersWriterLock2();
+        assertTrue(lock.startUpgradeableRead(0, TimeUnit.MILLISECONDS));
+        assertFalse(startThread(() -> lock.startUpgradeableRead(0, TimeUnit.MILLISECONDS)).get());
+        assertFalse(startThread(() -> lock.startUpgradeableRead(50, TimeUnit.MILLISECONDS)).get());
+        // plain readers are not affected
+        assertTrue(lock.startRead(0, TimeUnit.MILLISECONDS));
+        lock.endRead();
+
+        // a failed upgrade keeps the thread as the upgrader and as a reader
+        assertTrue(lock.startRead(0, TimeUnit.MILLISECONDS));
+        assertFalse(lock.upgrade(50, TimeUnit.MILLISECONDS));
+        assertFalse(startThread(() -> lock.startUpgradeableRead(0, TimeUnit.MILLISECONDS)).get());
+        assertFalse(lock.startWrite(0, TimeUnit.MILLISECONDS));
+        lock.endRead();
+
+        lock.endUpgradeableRead();
+        CompletableFuture<Boolean> second = startThread(() -> {
+            boolean started = lock.startUpgradeableRead(0, TimeUnit.MILLISECONDS);
+            if (started) {
+                lock.endUpgradeableRead();
+            }
+            return started;
+        });
+        assertTrue(second.get());
+        assertIsFree(lock);
+    }
+
+    @Test
+    public void downgrade_releases_the_waiting_readers_and_keeps_the_writers_out() throws Exception {
+        ReadersWriterLock2 lock = new ReadersWriterLock2();
+        assertTrue(lock.startWrite(0, TimeUnit.MILLISECONDS));
+        CountDownLatch endRead = new CountDownLatch(1);
+        List<CompletableFuture<Boolean>> readers = new ArrayList<>();
+        for (int i = 0; i < N_OF_THREADS; ++i) {
+            readers.add(startThread(() -> {
+                assertTrue(lock.startRead(Long.MAX_VALUE, TimeUnit.MILLISECONDS));
+                endRead.await();
+                lock.endRead();
+                return true;
+            }));
+        }
+        // so that the readers are waiting
+        Thread.sleep(100);
+        for (CompletableFuture<Boolean> reader : readers) {
+            assertFalse(reader.isDone());
+        }
+
+        lock.downgrade();
+        // the former writer is now a reader, as are the ones that were waiting
+        assertFalse(lock.startWrite(0, TimeUnit.MILLISECONDS));
+        assertTrue(lock.startRead(0, TimeUnit.MILLISECONDS));
+        lock.endRead();
+        endRead.countDown();
+        for (CompletableFuture<Boolean> reader : readers) {
+            assertTrue(reader.get(1, TimeUnit.SECONDS));
+        }
+        assertFalse(lock.startWrite(0, TimeUnit.MILLISECONDS));
+        lock.endRead();
+        assertIsFree(lock);
+    }
+
+    @Test
+    public void downgrade_invalidates_the_stamps_obtained_before_the_write() throws InterruptedException {
+        ReadersWriterLock2 lock = new ReadersWriterLock2();
+        long stamp = lock.tryOptimisticRead();
+        assertTrue(lock.startWrite(0, TimeUnit.MILLISECONDS));
+        lock.downgrade();
+        assertFalse(lock.validate(stamp));
+        long next = lock.tryOptimisticRead();
+        assertNotEquals(0, next);
+        lock.endRead();
+        assertTrue(lock.validate(next));
+    }
+
+    @Test
+    public void readers_and_writers_exclude_each_other_with_all_the_policies() throws InterruptedException {
+        for (ReadersWriterLockPolicy policy : ReadersWriterLockPolicy.values()) {
+            assertReadersAndWritersExcludeEachOther(new ReadersWriterLock2(N_OF_STRIPES, policy, SynchronizerMetrics.disabled()));
+        }
+    }
+
+    @Test
+    public void new_readers_only_enter_past_a_waiting_writer_when_readers_are_preferred() throws Exception {
+        for (ReadersWriterLockPolicy policy : ReadersWriterLockPolicy.values()) {
+            ReadersWriterLock2 lock = new ReadersWriterLock2(policy);
+            assertTrue(lock.startRead(0, TimeUnit.MILLISECONDS));
+            CompletableFuture<Boolean> writer = startThread(() -> {
+                boolean started = lock.startWrite(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+                lock.endWrite();
+                return started;
+            });
+            // so that the writer is waiting
+            Thread.sleep(100);
+            boolean readerEntered = lock.startRead(0, TimeUnit.MILLISECONDS);
+            assertEquals(policy == ReadersWriterLockPolicy.READER_PREFERRING, readerEntered);
+            if (readerEntered) {
+                lock.endRead();
+            }
+            assertFalse(writer.isDone());
+            lock.endRead();
+            assertTrue(writer.get(1, TimeUnit.SECONDS));
+            assertIsFree(lock);
+        }
+    }
+
+    @Test
+    public void waiting_writers_only_go_before_waiting_readers_when_writers_are_preferred() throws Exception {
+        for (ReadersWriterLockPolicy policy : ReadersWriterLockPolicy.values()) {
+            ReadersWriterLock2 lock = new ReadersWriterLock2(policy);
+            assertTrue(lock.startWrite(0, TimeUnit.MILLISECONDS));
+            // the first to enter after the write records which one it is
+            AtomicInteger order = new AtomicInteger();
+            AtomicInteger readerOrder = new AtomicInteger();
+            AtomicInteger writerOrder = new AtomicInteger();
+            CompletableFuture<Boolean> writer = startThread(() -> {
+                boolean started = lock.startWrite(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+                writerOrder.set(order.incrementAndGet());
+                lock.endWrite();
+                return started;
+            });
+            Thread.sleep(100);
+            CompletableFuture<Boolean> reader = startThread(() -> {
+                boolean started = lock.startRead(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+                readerOrder.set(order.incrementAndGet());
+                lock.endRead();
+                return started;
+            });
+            // so that both are waiting
+            Thread.sleep(100);
+            lock.endWrite();
+            assertTrue(writer.get(1, TimeUnit.SECONDS));
+            assertTrue(reader.get(1, TimeUnit.SECONDS));
+            assertEquals(policy == ReadersWriterLockPolicy.WRITER_PREFERRING, writerOrder.get() < readerOrder.get());
+            assertIsFree(lock);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package pt.isel.pc.sketches.synchronizers;
+
+import pt.isel.pc.Benchmark;
+import pt.isel.pc.utils.SynchronizerMetrics;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+// Compares the readers-writer lock policies, for both lock implementations, across read/write mixes.
+// Usage: ReadersWriterLockBenchmark [nOfThreads] [durationInSeconds]
+// The writer tail latency shows the writer starvation of the reader-preferring policy,
+// and the reader tail latency the reader starvation of the writer-preferring policy.
+public class ReadersWriterLockBenchmark {
+
+    private static final int READ = 0;
+    private static final int WRITE = 1;
+    private static final double[] READ_RATIOS = {0.5, 0.9, 0.99};
+    // number of values read or written inside the lock, to have a critical section with some length
+    private static final int N_OF_VALUES = 64;
+
+    private interface RwLock {
+        void startRead() throws InterruptedException;
+
+        void endRead();
+
+        void startWrite() throws InterruptedException;
+
+        void endWrite();
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int nOfThreads = args.length > 0 ? Integer.parseInt(args[0]) : 2 * Runtime.getRuntime().availableProcessors();
+        Duration duration = Duration.ofSeconds(args.length > 1 ? Long.parseLong(args[1]) : 5);
+        Benchmark benchmark = new Benchmark(Duration.ofSeconds(1), duration, "read", "write");
+
+        for (double readRatio : READ_RATIOS) {
+            for (ReadersWriterLockPolicy policy : ReadersWriterLockPolicy.values()) {
+                ReadersWriterLock lock = new ReadersWriterLock(policy);
+                run(benchmark, nOfThreads, readRatio, "ReadersWriterLock " + policy, new RwLock() {
+                    public void startRead() throws InterruptedException {
+                        lock.startRead(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+                    }
+
+                    public void endRead() {
+                        lock.endRead();
+                    }
+
+                    public void startWrite() throws InterruptedException {
+                        lock.startWrite(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+                    }
+
+                    public void endWrite() {
+                        lock.endWrite();
+                    }
+                });
+
+                ReadersWriterLock2 lock2 = new ReadersWriterLock2(
+                  Runtime.getRuntime().availableProcessors(), policy, SynchronizerMetrics.disabled());
+                run(benchmark, nOfThreads, readRatio, "ReadersWriterLock2 " + policy, new RwLock() {
+                    public void startRead() throws InterruptedException {
+                        lock2.startRead(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+                    }
+
+                    public void endRead() {
+                        lock2.endRead();
+                    }
+
+                    public void startWrite() throws InterruptedException {
+                        lock2.startWrite(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+                    }
+
+                    public void endWrite() {
+                        lock2.endWrite();
+                    }
+                });
+            }
+        }
+    }
+
+    private static void run(Benchmark benchmark, int nOfThreads, double readRatio, String name, RwLock lock)
+      throws InterruptedException {
+        long[] values = new long[N_OF_VALUES];
+        Benchmark.Result result = benchmark.run(nOfThreads, random -> {
+            if (random.nextDouble() < readRatio) {
+                lock.startRead();
+                // writers always write the same value in all positions
+                boolean isConsistent = true;
+                for (long value : values) {
+                    isConsistent &= value == values[0];
+                }
+                lock.endRead();
+                if (!isConsistent) {
+                    throw new IllegalStateException("inconsistent read");
+                }
+                return READ;
+            } else {
+                lock.startWrite();
+                long next = values[0] + 1;
+                for (int i = 0; i < values.length; ++i) {
+                    values[i] = next;
+                }
+                lock.endWrite();
+                return WRITE;
+            }
+        });
+        System.out.printf("%s, %d%% reads, %d threads: %s%n", name, Math.round(readRatio * 100), nOfThreads, result);
+    }
+}
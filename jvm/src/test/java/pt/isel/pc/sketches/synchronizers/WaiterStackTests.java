@@ -0,0 +1,53 @@
+package pt.isel.pc.sketches.synchronizers;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class WaiterStackTests {
+
+    @Test
+    public void push_fails_after_the_stack_is_closed() {
+        WaiterStack stack = new WaiterStack();
+        // a thread that never starts, so that unparking it has no effect
+        Thread waiter = new Thread(() -> { });
+        assertNotNull(stack.push(waiter));
+        stack.closeAndWakeAll();
+        assertNull(stack.push(waiter));
+        // closing again has no effect
+        stack.closeAndWakeAll();
+        assertNull(stack.push(waiter));
+    }
+
+    @Test
+    public void close_wakes_all_the_pushed_waiters() throws InterruptedException {
+        int nOfThreads = 8;
+        WaiterStack stack = new WaiterStack();
+        AtomicBoolean isClosed = new AtomicBoolean(false);
+        Thread[] threads = new Thread[nOfThreads];
+        for (int i = 0; i < nOfThreads; ++i) {
+            threads[i] = new Thread(() -> {
+                if (stack.push(Thread.currentThread()) == null) {
+                    return;
+                }
+                while (!isClosed.get()) {
+                    LockSupport.park();
+                }
+            });
+            threads[i].start();
+        }
+        Thread.sleep(100);
+        isClosed.set(true);
+        stack.closeAndWakeAll();
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(1));
+            assertFalse(thread.isAlive());
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package pt.isel.pc.utils;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveSpinWaitTests {
+
+    @Test
+    public void spin_ends_when_the_remaining_time_elapses_on_the_spin_wait_clock() {
+        VirtualClock clock = new VirtualClock();
+        AdaptiveSpinWait spinWait = new AdaptiveSpinWait(clock, 1, TimeUnit.MILLISECONDS);
+        AtomicInteger nOfChecks = new AtomicInteger();
+        // each check advances the clock by one microsecond
+        boolean isDone = spinWait.spinUntil(() -> {
+            nOfChecks.incrementAndGet();
+            clock.advance(1, TimeUnit.MICROSECONDS);
+            return false;
+        }, TimeUnit.MICROSECONDS.toNanos(10));
+        assertFalse(isDone);
+        // bounded by the remaining time, and not by the whole spin budget
+        assertTrue(nOfChecks.get() <= 11);
+    }
+}
@@ -0,0 +1,143 @@
+package pt.isel.pc.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static pt.isel.pc.TestUtils.expect;
+
+public class IntrusiveLinkedListTests {
+
+    private static class Item extends IntrusiveLinkedList.Node {
+        final int value;
+
+        Item(int value) {
+            this.value = value;
+        }
+    }
+
+    // Checks the list contents, in order, iterating with getHead and getNext
+    private static void assertContents(IntrusiveLinkedList<Item> list, Item... expected) {
+        if (expected.length == 0) {
+            assertTrue(list.isEmpty());
+            assertFalse(list.isNotEmpty());
+            return;
+        }
+        assertTrue(list.isNotEmpty());
+        Item item = list.getHead();
+        assertTrue(list.isHeadNode(expected[0]));
+        for (int i = 0; i < expected.length; ++i) {
+            assertSame(expected[i], item);
+            assertTrue(item.isLinked());
+            item = list.getNext(item);
+        }
+        assertNull(item);
+    }
+
+    private static Item[] pushAll(IntrusiveLinkedList<Item> list, int n) {
+        Item[] items = new Item[n];
+        for (int i = 0; i < n; ++i) {
+            items[i] = new Item(i);
+            list.push(items[i]);
+        }
+        return items;
+    }
+
+    @Test
+    public void empty_list_has_no_head() {
+        IntrusiveLinkedList<Item> list = new IntrusiveLinkedList<>();
+        assertContents(list);
+        expect(IllegalStateException.class, list::getHead);
+        expect(IllegalStateException.class, list::pull);
+        assertFalse(list.isHeadNode(new Item(0)));
+    }
+
+    @Test
+    public void pull_returns_the_items_in_push_order() {
+        IntrusiveLinkedList<Item> list = new IntrusiveLinkedList<>();
+        Item[] items = pushAll(list, 3);
+        assertContents(list, items);
+        for (Item item : items) {
+            assertTrue(list.isHeadNode(item));
+            Item pulled = list.pull();
+            assertSame(item, pulled);
+            assertFalse(pulled.isLinked());
+        }
+        assertContents(list);
+    }
+
+    @Test
+    public void remove_at_the_head_in_the_middle_and_at_the_tail() {
+        for (int position = 0; position < 3; ++position) {
+            IntrusiveLinkedList<Item> list = new IntrusiveLinkedList<>();
+            Item[] items = pushAll(list, 3);
+            Item removed = items[position];
+            list.remove(removed);
+            assertFalse(removed.isLinked());
+            assertFalse(list.isHeadNode(removed));
+            switch (position) {
+                case 0:
+                    assertContents(list, items[1], items[2]);
+                    break;
+                case 1:
+                    assertContents(list, items[0], items[2]);
+                    break;
+                default:
+                    assertContents(list, items[0], items[1]);
+                    break;
+            }
+        }
+    }
+
+    @Test
+    public void remove_of_the_only_item_empties_the_list() {
+        IntrusiveLinkedList<Item> list = new IntrusiveLinkedList<>();
+        Item item = new Item(0);
+        list.push(item);
+        assertContents(list, item);
+        list.remove(item);
+        assertContents(list);
+    }
+
+    @Test
+    public void removed_item_can_be_pushed_again() {
+        IntrusiveLinkedList<Item> list = new IntrusiveLinkedList<>();
+        Item[] items = pushAll(list, 3);
+        // the reused item goes to the tail, as a new one would
+        list.remove(items[0]);
+        list.push(items[0]);
+        assertContents(list, items[1], items[2], items[0]);
+        list.remove(items[2]);
+        list.push(items[2]);
+        assertContents(list, items[1], items[0], items[2]);
+
+        // and also to another list
+        IntrusiveLinkedList<Item> other = new IntrusiveLinkedList<>();
+        assertSame(items[1], list.pull());
+        other.push(items[1]);
+        assertContents(list, items[0], items[2]);
+        assertContents(other, items[1]);
+        assertEquals(1, other.pull().value);
+    }
+
+    @Test
+    public void linked_item_cannot_be_pushed() {
+        IntrusiveLinkedList<Item> list = new IntrusiveLinkedList<>();
+        IntrusiveLinkedList<Item> other = new IntrusiveLinkedList<>();
+        Item item = new Item(0);
+        list.push(item);
+        expect(IllegalStateException.class, () -> {
+            list.push(item);
+            return null;
+        });
+        expect(IllegalStateException.class, () -> {
+            other.push(item);
+            return null;
+        });
+        assertContents(list, item);
+        assertContents(other);
+    }
+}
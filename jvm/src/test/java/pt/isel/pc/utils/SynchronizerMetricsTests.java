@@ -0,0 +1,68 @@
+package pt.isel.pc.utils;
+
+import org.junit.Test;
+import pt.isel.pc.examples.synchronizers.UnarySemaphoreKS;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SynchronizerMetricsTests {
+
+    @Test
+    public void metrics_count_fast_path_timeouts_and_hand_offs() throws InterruptedException {
+        SynchronizerMetrics metrics = new SynchronizerMetrics();
+        UnarySemaphoreKS sem = new UnarySemaphoreKS(1, null, metrics);
+
+        assertTrue(sem.acquire(0, TimeUnit.MILLISECONDS));
+        assertFalse(sem.acquire(10, TimeUnit.MILLISECONDS));
+        Thread th = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                // ignore
+            }
+            sem.release();
+        });
+        th.start();
+        assertTrue(sem.acquire(1, TimeUnit.SECONDS));
+        th.join();
+
+        assertEquals(1, metrics.getFastPathCount());
+        assertEquals(2, metrics.getSlowPathCount());
+        assertEquals(1, metrics.getTimeoutCount());
+        assertEquals(1, metrics.getHandOffCount());
+        assertEquals(0, metrics.getInterruptCount());
+        assertEquals(0, metrics.getQueueLength());
+        assertEquals(2, Arrays.stream(metrics.getWaitTimeHistogram()).sum());
+    }
+
+    @Test
+    public void disabled_metrics_do_not_count() throws InterruptedException {
+        SynchronizerMetrics metrics = SynchronizerMetrics.disabled();
+        UnarySemaphoreKS sem = new UnarySemaphoreKS(1, null, metrics);
+        assertTrue(sem.acquire(0, TimeUnit.MILLISECONDS));
+        assertFalse(sem.acquire(1, TimeUnit.MILLISECONDS));
+        assertEquals(0, metrics.getFastPathCount());
+        assertEquals(0, metrics.getSlowPathCount());
+    }
+
+    @Test
+    public void metrics_are_exposed_via_jmx() throws Exception {
+        SynchronizerMetrics metrics = new SynchronizerMetrics().register("test-semaphore");
+        try {
+            metrics.onFastPath();
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("pt.isel.pc:type=Synchronizer,name=" + ObjectName.quote("test-semaphore"));
+            assertEquals(1L, server.getAttribute(name, "FastPathCount"));
+        } finally {
+            metrics.unregister();
+        }
+    }
+}
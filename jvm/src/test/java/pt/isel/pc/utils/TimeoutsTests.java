@@ -0,0 +1,35 @@
+package pt.isel.pc.utils;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TimeoutsTests {
+
+    @Test
+    public void remaining_time_is_measured_in_nanoseconds() {
+        VirtualClock clock = new VirtualClock();
+        long deadline = Timeouts.start(clock, 1500, TimeUnit.MICROSECONDS);
+        assertEquals(1_500_000, Timeouts.remaining(clock, deadline));
+
+        clock.advance(1_499_999, TimeUnit.NANOSECONDS);
+        assertFalse(Timeouts.isTimeout(Timeouts.remaining(clock, deadline)));
+
+        clock.advance(1, TimeUnit.NANOSECONDS);
+        assertTrue(Timeouts.isTimeout(Timeouts.remaining(clock, deadline)));
+    }
+
+    @Test
+    public void infinite_timeouts_never_expire() {
+        VirtualClock clock = new VirtualClock();
+        clock.advance(1, TimeUnit.DAYS);
+        // the deadline overflows, but the remaining time is still correct
+        long deadline = Timeouts.start(clock, Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        clock.advance(365, TimeUnit.DAYS);
+        assertFalse(Timeouts.isTimeout(Timeouts.remaining(clock, deadline)));
+    }
+}
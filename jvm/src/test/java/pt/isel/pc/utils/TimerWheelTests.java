@@ -0,0 +1,86 @@
+package pt.isel.pc.utils;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TimerWheelTests {
+
+    @Test
+    public void timeouts_expire_after_the_delay() throws InterruptedException {
+        TimerWheel wheel = new TimerWheel("test-wheel", 1, TimeUnit.MILLISECONDS, 8);
+        try {
+            int nOfTimeouts = 100;
+            CountDownLatch latch = new CountDownLatch(nOfTimeouts);
+            AtomicInteger early = new AtomicInteger();
+            for (int i = 0; i < nOfTimeouts; ++i) {
+                // delays larger than a wheel revolution require multiple rounds
+                long delay = i;
+                long start = System.nanoTime();
+                wheel.schedule(() -> {
+                    if (System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(delay)) {
+                        early.incrementAndGet();
+                    }
+                    latch.countDown();
+                }, delay, TimeUnit.MILLISECONDS);
+            }
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+            assertEquals(0, early.get());
+        } finally {
+            wheel.stop();
+        }
+    }
+
+    @Test
+    public void cancelled_timeouts_do_not_expire() throws InterruptedException {
+        TimerWheel wheel = new TimerWheel("test-wheel", 1, TimeUnit.MILLISECONDS, 8);
+        try {
+            AtomicInteger expired = new AtomicInteger();
+            TimerWheel.Timeout timeout = wheel.schedule(expired::incrementAndGet, 50, TimeUnit.MILLISECONDS);
+            assertTrue(timeout.cancel());
+            assertTrue(timeout.isCancelled());
+            Thread.sleep(100);
+            assertEquals(0, expired.get());
+            assertFalse(timeout.isExpired());
+
+            TimerWheel.Timeout other = wheel.schedule(expired::incrementAndGet, 10, TimeUnit.MILLISECONDS);
+            Thread.sleep(100);
+            assertTrue(other.isExpired());
+            assertFalse(other.cancel());
+            assertEquals(1, expired.get());
+        } finally {
+            wheel.stop();
+        }
+    }
+
+    @Test
+    public void tasks_scheduled_with_an_executor_run_on_it() throws Exception {
+        TimerWheel wheel = new TimerWheel("test-wheel", 1, TimeUnit.MILLISECONDS, 8);
+        ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "test-executor"));
+        try {
+            CompletableFuture<String> threadName = new CompletableFuture<>();
+            wheel.schedule(() -> threadName.complete(Thread.currentThread().getName()),
+              10, TimeUnit.MILLISECONDS, executor);
+            assertEquals("test-executor", threadName.get(1, TimeUnit.SECONDS));
+
+            // a rejected task doesn't stop the worker thread
+            executor.shutdown();
+            wheel.schedule(() -> threadName.complete("rejected"), 10, TimeUnit.MILLISECONDS, executor);
+            CountDownLatch latch = new CountDownLatch(1);
+            wheel.schedule(latch::countDown, 20, TimeUnit.MILLISECONDS);
+            assertTrue(latch.await(1, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+            wheel.stop();
+        }
+    }
+}